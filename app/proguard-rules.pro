@@ -18,4 +18,10 @@
 
 # If you keep the line number information, uncomment this to
 # hide the original source file name.
-#-renamesourcefileattribute SourceFile
\ No newline at end of file
+#-renamesourcefileattribute SourceFile
+
+# Gson: every bean is read by the hand-written adapters in BeanAdapterFactory,
+# so the beans themselves may be renamed and only the adapters are kept.
+-keepattributes Signature
+-keep class * extends com.google.gson.TypeAdapter
+-keep class * implements com.google.gson.TypeAdapterFactory
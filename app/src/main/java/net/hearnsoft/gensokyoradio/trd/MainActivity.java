@@ -3,10 +3,8 @@ package net.hearnsoft.gensokyoradio.trd;
 import android.Manifest;
 import android.app.ActionBar;
 import android.content.ComponentName;
-import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
-import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Build;
@@ -17,63 +15,71 @@ import android.os.Looper;
 import android.os.Message;
 import android.util.Log;
 import android.view.Gravity;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.ViewGroup;
 import android.widget.FrameLayout;
 import android.widget.LinearLayout;
 import android.widget.Toast;
 
-import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.content.ContextCompat;
 import androidx.core.content.res.ResourcesCompat;
 
 import com.bumptech.glide.Glide;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 
-import net.hearnsoft.gensokyoradio.trd.beans.NowPlayingBean;
 import net.hearnsoft.gensokyoradio.trd.beans.SongDataBean;
+import net.hearnsoft.gensokyoradio.trd.beans.misc.SongTimes;
 import net.hearnsoft.gensokyoradio.trd.databinding.ActivityMainBinding;
 import net.hearnsoft.gensokyoradio.trd.databinding.DialogNoticeBinding;
+import net.hearnsoft.gensokyoradio.trd.model.HistoryEntry;
+import net.hearnsoft.gensokyoradio.trd.model.NowPlayingDispatcher;
+import net.hearnsoft.gensokyoradio.trd.model.NowPlayingRepository;
+import net.hearnsoft.gensokyoradio.trd.model.NowPlayingSnapshot;
 import net.hearnsoft.gensokyoradio.trd.model.SongDataModel;
+import net.hearnsoft.gensokyoradio.trd.model.SongHistory;
+import net.hearnsoft.gensokyoradio.trd.player.BufferProfile;
+import net.hearnsoft.gensokyoradio.trd.player.PlaybackMetrics;
 import net.hearnsoft.gensokyoradio.trd.service.GRStreamPlayerService;
 import net.hearnsoft.gensokyoradio.trd.service.WebSocketService;
-import net.hearnsoft.gensokyoradio.trd.service.WsServiceInterface;
-import net.hearnsoft.gensokyoradio.trd.utils.Constants;
+import net.hearnsoft.gensokyoradio.trd.utils.ProgressTicker;
+import net.hearnsoft.gensokyoradio.trd.utils.ServerClock;
+import net.hearnsoft.gensokyoradio.trd.utils.TimeFormat;
 import net.hearnsoft.gensokyoradio.trd.utils.ViewModelUtils;
+import net.hearnsoft.gensokyoradio.trd.widgets.AudioVisualizer;
+import net.hearnsoft.gensokyoradio.trd.widgets.VisualizerTextureView;
 import net.hearnsoft.gensokyoradio.trd.widgets.VisualizerView;
 
 import java.io.IOException;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.io.StringWriter;
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
-import okhttp3.Call;
-import okhttp3.Callback;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
-
-
-public class MainActivity extends AppCompatActivity implements WsServiceInterface {
+public class MainActivity extends AppCompatActivity {
     private static final String TAG = MainActivity.class.getSimpleName();
+    private static final String KEY_VISUALIZER_RENDER_THREAD = "visualizer_render_thread";
+    private static final int RECENT_TRACKS_SHOWN = 50;
+    private static final int REWIND_STEP_SECONDS = 30;
     private final ExecutorService signalThreadPool = Executors.newSingleThreadExecutor();
     private ActivityMainBinding binding;
     private SongDataModel songDataModel;
     private Intent WsIntent;
     private Intent PlayerIntent;
-    private Timer timer;
-    private SharedPreferences sharedPreferences;
     private boolean isBound = false;
-    private boolean isUiPaused = false;
     private boolean isPlaying = false;
-    private boolean isUpdateProgress = false;
     private boolean visualizerUsable = false;
-    private VisualizerView visualizerView;
+    private AudioVisualizer visualizerView;
     private SongDataBean dataBean;
+    private NowPlayingSnapshot currentSnapshot;
+    private final ServerClock serverClock = new ServerClock();
+    private final ProgressTicker progressTicker = new ProgressTicker(this::onProgress);
     private GRStreamPlayerService playerService;
     private ServiceConnection connection = new ServiceConnection() {
         @Override
@@ -81,11 +87,29 @@ public class MainActivity extends AppCompatActivity implements WsServiceInterfac
             isBound = true;
             GRStreamPlayerService.ServiceBinder playerBinder = (GRStreamPlayerService.ServiceBinder) service;
             playerService = playerBinder.getService();
+            if (visualizerView != null) {
+                visualizerView.setAudioTap(playerService.getPcmTap());
+            }
+            binding.topAppbar.getMenu().findItem(R.id.action_stream_metadata_only)
+                    .setChecked(playerService.isStreamMetadataOnly());
+            updateTimeShiftMenu();
+            binding.topAppbar.getMenu().findItem(R.id.action_record)
+                    .setChecked(playerService.isRecording());
+            binding.topAppbar.getMenu().findItem(getBufferProfileItemId(playerService.getBufferProfile()))
+                    .setChecked(true);
+            binding.topAppbar.getMenu().findItem(getIdleReleaseItemId(playerService.getIdleReleaseTimeoutMs()))
+                    .setChecked(true);
+            // Prime the stream selector with the available levels
+            // 预先为串流选择器提供可用的码率档位
+            getNowPlaying();
         }
 
         @Override
         public void onServiceDisconnected(ComponentName name) {
             isBound = false;
+            if (visualizerView != null) {
+                visualizerView.setAudioTap(null);
+            }
         }
     };
 
@@ -108,28 +132,27 @@ public class MainActivity extends AppCompatActivity implements WsServiceInterfac
         super.onCreate(savedInstanceState);
         //Debug.startMethodTracing("app_trace");
         binding = ActivityMainBinding.inflate(getLayoutInflater());
-        if (requestPermissions()) {
-            initVisualizer();
-        }
+        requestPermissions();
+        initVisualizer();
         setContentView(binding.getRoot());
-        WebSocketService.setCallback(this);
-        sharedPreferences = getSharedPreferences("ws", Context.MODE_PRIVATE);
         binding.play.setEnabled(false);
         // 获取全局ViewModel
         songDataModel = ViewModelUtils.getViewModel(getApplication(), SongDataModel.class);
         binding.songInfoBtn.setOnClickListener(v -> {
+            // The song being heard was fetched before, open the dialog right away
+            // 正在收听的歌曲已获取过，直接打开对话框
+            NowPlayingSnapshot snapshot = currentSnapshot;
+            SongDataBean cached = snapshot != null
+                    ? NowPlayingRepository.getInstance().peek(snapshot.getSongId()) : null;
+            if (cached != null) {
+                showSongInfo(cached);
+                return;
+            }
             CompletableFuture<Boolean> future = getNowPlaying();
             Toast.makeText(this, R.string.fetch_song_data_toast, Toast.LENGTH_SHORT).show();
             future.thenAccept(isOK -> {
                 if (isOK) {
-                    Log.d(TAG, "onCreate: " + dataBean.getSongInfo().getTitle());
-                    String info = getString(R.string.song_info, dataBean.getSongInfo().getTitle(),
-                            dataBean.getSongInfo().getArtist(), dataBean.getSongInfo().getAlbum(),
-                            dataBean.getSongInfo().getYear(), dataBean.getSongInfo().getCircle());
-                    Message message = Message.obtain();
-                    message.what = 1;
-                    message.obj = info;
-                    handler.sendMessage(message);
+                    showSongInfo(dataBean);
                 }
             });
         });
@@ -143,6 +166,9 @@ public class MainActivity extends AppCompatActivity implements WsServiceInterfac
                 binding.play.setIcon(ResourcesCompat.getDrawable(getResources(), R.drawable.ic_pause, getTheme()));
             }
         });
+        // Only delivered while started, paused UI gets the latest snapshot on resume
+        // 仅在界面可见时回调，暂停期间的更新会在恢复时合并为最新一次
+        NowPlayingDispatcher.getInstance().getNowPlaying().observe(this, this::onNowPlayingChanged);
         songDataModel.getBufferingState().observe(this, bufferingState -> {
             switch (bufferingState) {
                 case 0:
@@ -154,51 +180,231 @@ public class MainActivity extends AppCompatActivity implements WsServiceInterfac
                 case 2:
                     binding.bufferState.setText("READY");
                     break;
+                case 3:
+                    binding.bufferState.setText("RECONNECTING");
+                    break;
+            }
+        });
+        binding.topAppbar.inflateMenu(R.menu.main_menu);
+        binding.topAppbar.getMenu().findItem(R.id.action_visualizer_render_thread)
+                .setChecked(isVisualizerOnRenderThread());
+        binding.topAppbar.setOnMenuItemClickListener(item -> {
+            if (item.getItemId() == R.id.action_debug_stats) {
+                showDebugStatsDialog();
+                return true;
+            } else if (item.getItemId() == R.id.action_recent_tracks) {
+                showRecentTracksDialog();
+                return true;
+            } else if (item.getItemId() == R.id.action_visualizer_render_thread) {
+                item.setChecked(!item.isChecked());
+                setVisualizerOnRenderThread(item.isChecked());
+                return true;
+            } else if (getBufferProfile(item.getItemId()) != null) {
+                if (playerService != null) {
+                    item.setChecked(true);
+                    playerService.setBufferProfile(getBufferProfile(item.getItemId()));
+                }
+                return true;
+            } else if (getIdleReleaseTimeoutMs(item.getItemId()) > 0) {
+                if (playerService != null) {
+                    item.setChecked(true);
+                    playerService.setIdleReleaseTimeoutMs(getIdleReleaseTimeoutMs(item.getItemId()));
+                }
+                return true;
+            } else if (item.getItemId() == R.id.action_record) {
+                if (playerService != null) {
+                    // The recorder stops by itself on disk errors, so ask it rather than the menu
+                    // 录制器在磁盘出错时会自行停止，因此以录制器状态为准而非菜单
+                    if (playerService.isRecording()) {
+                        playerService.stopRecording();
+                        Toast.makeText(this, R.string.record_stopped_toast, Toast.LENGTH_SHORT).show();
+                    } else {
+                        playerService.startRecording();
+                        Toast.makeText(this, R.string.record_started_toast, Toast.LENGTH_SHORT).show();
+                    }
+                    item.setChecked(playerService.isRecording());
+                }
+                return true;
+            } else if (item.getItemId() == R.id.action_timeshift) {
+                if (playerService != null) {
+                    playerService.setTimeShiftMinutes(playerService.isTimeShiftEnabled()
+                            ? 0 : GRStreamPlayerService.TIMESHIFT_MINUTES);
+                    updateTimeShiftMenu();
+                }
+                return true;
+            } else if (item.getItemId() == R.id.action_rewind) {
+                if (playerService != null) {
+                    long availableMs = playerService.getTimeShiftAvailableMs();
+                    long behindMs = Math.min(availableMs,
+                            playerService.getTimeShiftBehindMs() + REWIND_STEP_SECONDS * 1000L);
+                    playerService.rewind(REWIND_STEP_SECONDS);
+                    Toast.makeText(this, getString(R.string.timeshift_rewind_toast,
+                            TimeFormat.format((int) (behindMs / 1000)),
+                            TimeFormat.format((int) (availableMs / 1000))), Toast.LENGTH_SHORT).show();
+                    updateRewindMenu();
+                }
+                return true;
+            } else if (item.getItemId() == R.id.action_go_live) {
+                if (playerService != null) {
+                    playerService.goLive();
+                }
+                return true;
+            } else if (item.getItemId() == R.id.action_stream_metadata_only) {
+                if (playerService != null) {
+                    item.setChecked(!item.isChecked());
+                    playerService.setStreamMetadataOnly(item.isChecked());
+                }
+                return true;
             }
+            return false;
         });
         showNoticeDialog();
         startSocketService();
         //Debug.stopMethodTracing();
     }
 
-    private boolean requestPermissions() {
+    /**
+     * Profile behind a buffering menu item
+     * 缓冲菜单项对应的配置
+     * @return null if the item is not a buffering profile
+     */
+    @Nullable
+    private static BufferProfile getBufferProfile(int itemId) {
+        if (itemId == R.id.buffer_profile_auto) {
+            return BufferProfile.AUTO;
+        } else if (itemId == R.id.buffer_profile_low_latency) {
+            return BufferProfile.LOW_LATENCY;
+        } else if (itemId == R.id.buffer_profile_balanced) {
+            return BufferProfile.BALANCED;
+        } else if (itemId == R.id.buffer_profile_resilient) {
+            return BufferProfile.RESILIENT;
+        }
+        return null;
+    }
+
+    private static int getBufferProfileItemId(BufferProfile profile) {
+        switch (profile) {
+            case LOW_LATENCY:
+                return R.id.buffer_profile_low_latency;
+            case BALANCED:
+                return R.id.buffer_profile_balanced;
+            case RESILIENT:
+                return R.id.buffer_profile_resilient;
+            default:
+                return R.id.buffer_profile_auto;
+        }
+    }
+
+    /**
+     * Idle release timeout behind a menu item
+     * 菜单项对应的闲置释放超时
+     * @return milliseconds, or -1 if the item is not an idle release option
+     */
+    private static long getIdleReleaseTimeoutMs(int itemId) {
+        if (itemId == R.id.idle_release_1_min) {
+            return TimeUnit.MINUTES.toMillis(1);
+        } else if (itemId == R.id.idle_release_5_min) {
+            return TimeUnit.MINUTES.toMillis(5);
+        } else if (itemId == R.id.idle_release_15_min) {
+            return TimeUnit.MINUTES.toMillis(15);
+        }
+        return -1;
+    }
+
+    private static int getIdleReleaseItemId(long timeoutMs) {
+        if (timeoutMs <= TimeUnit.MINUTES.toMillis(1)) {
+            return R.id.idle_release_1_min;
+        } else if (timeoutMs <= TimeUnit.MINUTES.toMillis(5)) {
+            return R.id.idle_release_5_min;
+        }
+        return R.id.idle_release_15_min;
+    }
+
+    /**
+     * Show the rewind controls only while the time-shift buffer exists
+     * 仅在时移缓冲存在时显示回退控制
+     */
+    private void updateTimeShiftMenu() {
+        boolean enabled = playerService != null && playerService.isTimeShiftEnabled();
+        Menu menu = binding.topAppbar.getMenu();
+        menu.findItem(R.id.action_timeshift).setChecked(enabled);
+        menu.findItem(R.id.action_rewind).setVisible(enabled);
+        menu.findItem(R.id.action_go_live).setVisible(enabled);
+        // The time-shift pump carries no ICY titles to fall back on
+        // 时移写入端不携带 ICY 标题，无法作为数据源
+        menu.findItem(R.id.action_stream_metadata_only).setEnabled(!enabled);
+        updateRewindMenu();
+    }
+
+    /**
+     * Only offer rewinding while the buffer reaches further back than the current position
+     * 仅当缓冲比当前位置更早时才允许回退
+     */
+    private void updateRewindMenu() {
+        MenuItem rewind = binding.topAppbar.getMenu().findItem(R.id.action_rewind);
+        if (playerService == null || !rewind.isVisible()) {
+            return;
+        }
+        long headroomMs = playerService.getTimeShiftAvailableMs() - playerService.getTimeShiftBehindMs();
+        rewind.setEnabled(headroomMs >= 1000);
+    }
+
+    private void requestPermissions() {
         if (Build.VERSION.SDK_INT >= 33) {
             if (checkSelfPermission(Manifest.permission.POST_NOTIFICATIONS) != PackageManager.PERMISSION_GRANTED ||
-                    checkSelfPermission(Manifest.permission.RECORD_AUDIO ) != PackageManager.PERMISSION_GRANTED ||
                     checkSelfPermission(Manifest.permission.READ_PHONE_STATE) != PackageManager.PERMISSION_GRANTED) {
-                requestPermissions(new String[]{Manifest.permission.POST_NOTIFICATIONS,Manifest.permission.RECORD_AUDIO,
+                requestPermissions(new String[]{Manifest.permission.POST_NOTIFICATIONS,
                                     Manifest.permission.READ_PHONE_STATE}, 1);
-                return false;
-            } else {
-                return true;
             }
         } else {
-            if (checkSelfPermission(Manifest.permission.RECORD_AUDIO ) != PackageManager.PERMISSION_GRANTED ||
-                    checkSelfPermission(Manifest.permission.READ_PHONE_STATE) != PackageManager.PERMISSION_GRANTED) {
-                requestPermissions(new String[]{Manifest.permission.RECORD_AUDIO,
-                        Manifest.permission.READ_PHONE_STATE}, 1);
-                return false;
-            } else {
-                return true;
+            if (checkSelfPermission(Manifest.permission.READ_PHONE_STATE) != PackageManager.PERMISSION_GRANTED) {
+                requestPermissions(new String[]{Manifest.permission.READ_PHONE_STATE}, 1);
             }
         }
     }
 
     private void initVisualizer() {
-        if (checkSelfPermission(Manifest.permission.RECORD_AUDIO ) == PackageManager.PERMISSION_GRANTED) {
+        // Fed from the player's own PCM, no audio capture permission needed
+        // 数据来自播放器自身的 PCM，无需录音权限
+        if (isVisualizerOnRenderThread()) {
+            visualizerView = new VisualizerTextureView(this);
+        } else {
             visualizerView = new VisualizerView(this);
-            FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT);
-            params.gravity = Gravity.BOTTOM;
-            binding.container.addView(visualizerView, 0, params);
-            visualizerUsable = true;
-            visualizerView.initialize(this);
-            visualizerView.setPlaying(true);
-            visualizerView.setVisible(true);
-            visualizerView.setColor(ContextCompat.getColor(this, R.color.system_accent));
-            visualizerView.setPowerSaveMode(false);
+        }
+        FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT);
+        params.gravity = Gravity.BOTTOM;
+        binding.container.addView(visualizerView.asView(), 0, params);
+        visualizerUsable = true;
+        visualizerView.initialize(this);
+        visualizerView.setPlaying(true);
+        visualizerView.setVisible(true);
+        visualizerView.setColor(ContextCompat.getColor(this, R.color.system_accent));
+        visualizerView.setPowerSaveMode(false);
+        if (playerService != null) {
+            visualizerView.setAudioTap(playerService.getPcmTap());
         }
     }
 
+    private boolean isVisualizerOnRenderThread() {
+        return getSharedPreferences("player", MODE_PRIVATE).getBoolean(KEY_VISUALIZER_RENDER_THREAD, false);
+    }
+
+    /**
+     * Swap the visualizer for the UI thread or the render thread implementation
+     * 在 UI 线程实现与独立渲染线程实现之间切换可视化组件
+     */
+    private void setVisualizerOnRenderThread(boolean renderThread) {
+        getSharedPreferences("player", MODE_PRIVATE).edit()
+                .putBoolean(KEY_VISUALIZER_RENDER_THREAD, renderThread)
+                .apply();
+        if (visualizerView != null) {
+            visualizerView.setAudioTap(null);
+            visualizerView.setPlaying(false);
+            binding.container.removeView(visualizerView.asView());
+        }
+        initVisualizer();
+    }
+
     private void startSocketService(){
         signalThreadPool.submit(() -> {
             if (!isBound && WsIntent == null) {
@@ -233,87 +439,145 @@ public class MainActivity extends AppCompatActivity implements WsServiceInterfac
         });
     }
 
-    @Override
-    public void beanReceived(NowPlayingBean bean) {
-        Log.d(TAG, "beanReceived: " + bean.getSongId() + " " + bean.getTitle());
-        runOnUiThread(() -> {
-            binding.title.setText(bean.getTitle());
-            binding.artist.setText(bean.getArtist() + " - " + bean.getAlbum());
-            Glide.with(this).load(bean.getAlbumArt()).placeholder(R.drawable.ic_album).into(binding.cover);
-            showProgress(bean.getPlayed()+1, bean.getDuration(), bean.getRemaining()-1);
-            Toast.makeText(MainActivity.this, "WebSocket Client ID: " +
-                    sharedPreferences.getInt("clientId",0), Toast.LENGTH_SHORT).show();
-            binding.play.setEnabled(true);
-        });
+    /**
+     * Recent songs from the in-memory history, no network or disk access
+     * 取自内存历史的最近歌曲，不访问网络与磁盘
+     */
+    private void showRecentTracksDialog() {
+        List<HistoryEntry> entries = SongHistory.getInstance(this).getRecent(RECENT_TRACKS_SHOWN);
+        MaterialAlertDialogBuilder builder = new MaterialAlertDialogBuilder(this)
+                .setTitle(R.string.recent_tracks_title)
+                .setPositiveButton(android.R.string.ok, (dialog, which) -> dialog.dismiss());
+        if (entries.isEmpty()) {
+            builder.setMessage(R.string.recent_tracks_empty);
+        } else {
+            DateFormat timeFormat = android.text.format.DateFormat.getTimeFormat(this);
+            CharSequence[] items = new CharSequence[entries.size()];
+            for (int i = 0; i < entries.size(); i++) {
+                HistoryEntry entry = entries.get(i);
+                items[i] = getString(R.string.recent_tracks_item,
+                        timeFormat.format(new Date(entry.getAiredAt())), entry.getTitle(),
+                        entry.getArtist() != null ? entry.getArtist() : "");
+            }
+            builder.setItems(items, null);
+        }
+        builder.show();
     }
 
-    private void showProgress(int played, int duration, int remaining) {
-        if (isUpdateProgress && timer != null) {
-            timer.cancel();
+    private void showDebugStatsDialog() {
+        if (playerService == null) {
+            Toast.makeText(this, R.string.debug_stats_unavailable, Toast.LENGTH_SHORT).show();
+            return;
         }
-        isUpdateProgress = true;
-        Log.d(TAG, "showProgress: " + played + " " + duration + " " + remaining);
-        binding.seekBar.setMax(duration);
-        binding.totalTime.post(() -> {
-            binding.totalTime.setText(formatTime(duration));
-        });
+        PlaybackMetrics metrics = playerService.getPlaybackMetrics();
+        String message = getString(R.string.debug_stats_message,
+                metrics.getPlaybackStarts(), metrics.getTimeToFirstAudioP50Ms(),
+                metrics.getTimeToFirstAudioP90Ms(), metrics.getRebufferCount(),
+                metrics.getTotalStallMs(), metrics.getBitrateP50Kbps(), metrics.getBytesLoaded(),
+                metrics.getDecoderInitMeanMs(), metrics.getPlayerErrors(), metrics.getLoadErrors(),
+                metrics.getResumeLatencyP50Ms(), metrics.getRecoveryCount(),
+                metrics.getTotalRecoveryMs(), metrics.getRecoveryMaxMs());
+        if (visualizerView != null) {
+            message += "\n" + getString(R.string.debug_stats_visualizer,
+                    visualizerView.getRenderedFrames(), visualizerView.getSkippedFrames(),
+                    Math.round(visualizerView.getFrameRate()));
+        }
+        new MaterialAlertDialogBuilder(this)
+                .setTitle(R.string.debug_stats_title)
+                .setMessage(message)
+                .setNeutralButton(R.string.debug_stats_export, (dialog, which) -> exportMetrics(metrics))
+                .setPositiveButton(android.R.string.ok, (dialog, which) -> dialog.dismiss())
+                .show();
+    }
 
-        timer = new Timer();
-        timer.schedule(new TimerTask() {
-            int playedSec = played;
-            @Override
-            public void run() {
-                if (playedSec == duration) {
-                    timer.cancel();
-                    isUpdateProgress = false;
-                } else {
-                    playedSec++;
-                    binding.seekBar.setProgress(playedSec);
-                    binding.playedTime.post(() -> {
-                        binding.playedTime.setText(formatTime(playedSec));
-                    });
-                }
-            }
-        }, 0, 1000);
+    private void exportMetrics(PlaybackMetrics metrics) {
+        StringWriter json = new StringWriter();
+        try {
+            metrics.writeJson(json);
+        } catch (IOException e) {
+            Log.e(TAG, "export metrics failed: " + e);
+            return;
+        }
+        Intent intent = new Intent(Intent.ACTION_SEND)
+                .setType("application/json")
+                .putExtra(Intent.EXTRA_SUBJECT, getString(R.string.debug_stats_title))
+                .putExtra(Intent.EXTRA_TEXT, json.toString());
+        startActivity(Intent.createChooser(intent, getString(R.string.debug_stats_export)));
     }
 
-    public String formatTime(int seconds) {
-        int minutes = seconds / 60;       // 分钟数
-        int remainingSeconds = seconds % 60;    // 余下秒数
+    private void showSongInfo(SongDataBean data) {
+        Log.d(TAG, "showSongInfo: " + data.getSongInfo().getTitle());
+        String info = getString(R.string.song_info, data.getSongInfo().getTitle(),
+                data.getSongInfo().getArtist(), data.getSongInfo().getAlbum(),
+                data.getSongInfo().getYear(), data.getSongInfo().getCircle());
+        Message message = Message.obtain();
+        message.what = 1;
+        message.obj = info;
+        handler.sendMessage(message);
+    }
 
-        String minutesStr;
-        if (minutes < 10) {
-            minutesStr = "0" + minutes;
-        } else {
-            minutesStr = String.valueOf(minutes);
-        }
+    private void onNowPlayingChanged(NowPlayingSnapshot snapshot) {
+        Log.d(TAG, "onNowPlayingChanged: " + snapshot.getSongId() + " " + snapshot.getTitle());
+        binding.title.setText(snapshot.getTitle());
+        // ICY titles carry no album
+        // ICY 标题不含专辑信息
+        binding.artist.setText(snapshot.getAlbum() != null
+                ? snapshot.getArtist() + " - " + snapshot.getAlbum() : snapshot.getArtist());
+        Glide.with(this).load(snapshot.getAlbumArt()).placeholder(R.drawable.ic_album).into(binding.cover);
+        // Anchor at the moment the song became audible, the ticker derives position from it
+        // 以歌曲实际开始播放的时刻为锚点，进度由计时器据此推算
+        long songStart = snapshot.getReceivedAt() + snapshot.getPresentationDelayMs()
+                - snapshot.getPlayed() * 1000L;
+        currentSnapshot = snapshot;
+        showProgress(songStart, snapshot.getDuration());
+        applyServerSongStart();
+        binding.play.setEnabled(true);
+    }
 
-        String secondsStr;
-        if (remainingSeconds < 10) {
-            secondsStr = "0" + remainingSeconds;
-        } else {
-            secondsStr = String.valueOf(remainingSeconds);
+    /**
+     * Re-anchor on SONGSTART/SONGEND once the server clock is known and the API agrees on the song
+     * 在服务器时钟已知且 API 返回同一首歌时，改用 SONGSTART/SONGEND 作为锚点
+     */
+    private void applyServerSongStart() {
+        SongDataBean data = dataBean;
+        NowPlayingSnapshot snapshot = currentSnapshot;
+        if (data == null || snapshot == null || data.getSongData() == null || data.getSongTimes() == null
+                || data.getSongData().getSongID() != snapshot.getSongId() || !serverClock.isSynced()) {
+            return;
         }
+        SongTimes times = data.getSongTimes();
+        long songStart = serverClock.toElapsed(times.getSongStart() * 1000L) + snapshot.getPresentationDelayMs();
+        showProgress(songStart, times.getSongEnd() - times.getSongStart());
+    }
+
+    private void showProgress(long songStart, int duration) {
+        Log.d(TAG, "showProgress: " + duration + "s from " + songStart);
+        binding.seekBar.setMax(duration);
+        binding.totalTime.setText(TimeFormat.format(duration));
+        progressTicker.setSong(songStart, duration);
+    }
 
-        return minutesStr + ":" + secondsStr;
+    private void onProgress(int position, int duration) {
+        binding.seekBar.setProgress(position);
+        binding.playedTime.setText(TimeFormat.format(position));
+        updateRewindMenu();
     }
 
     @Override
     protected void onStart() {
         super.onStart();
+        progressTicker.start();
+        if (playerService != null) {
+            // Bring back a WebSocket that could not be restarted from the background
+            // 恢复在后台无法重新启动的 WebSocket
+            playerService.refreshWebSocketPolicy();
+        }
     }
 
     @Override
     protected void onResume() {
         super.onResume();
         Log.d("MainActivity", "onResume: ");
-        if (isUiPaused && Boolean.TRUE.equals(songDataModel.getIsUpdatedInfo().getValue())) {
-            binding.title.setText(songDataModel.getTitle().getValue());
-            binding.artist.setText(songDataModel.getArtist().getValue() + " - " + songDataModel.getAlbum().getValue());
-            Glide.with(this).load(songDataModel.getCoverUrl().getValue()).placeholder(R.drawable.ic_album).into(binding.cover);
-            isUiPaused = false;
-            songDataModel.getIsUpdatedInfo().postValue(false);
-        }
         if (visualizerUsable && visualizerView != null) {
             visualizerView.setPlaying(true);
             visualizerView.setVisible(true);
@@ -325,7 +589,6 @@ public class MainActivity extends AppCompatActivity implements WsServiceInterfac
     protected void onPause() {
         super.onPause();
         Log.d("MainActivity", "onPause: ");
-        isUiPaused = true;
         if (visualizerUsable && visualizerView != null) {
             visualizerView.setPlaying(false);
             visualizerView.setVisible(false);
@@ -336,6 +599,7 @@ public class MainActivity extends AppCompatActivity implements WsServiceInterfac
     @Override
     protected void onStop() {
         super.onStop();
+        progressTicker.stop();
     }
 
     @Override
@@ -345,42 +609,32 @@ public class MainActivity extends AppCompatActivity implements WsServiceInterfac
         stopService(WsIntent);
         stopService(PlayerIntent);
         unbindService(connection);
-        timer.cancel();
     }
 
+    /**
+     * Fetch now playing data through the repository, concurrent calls share one request
+     * 通过仓库获取正在播放数据，并发调用共享同一个请求
+     */
     private CompletableFuture<Boolean> getNowPlaying() {
-        CompletableFuture<Boolean> future = new CompletableFuture<>();
-        OkHttpClient client = new OkHttpClient();
-        Request request = new Request.Builder()
-                .url(Constants.NOW_PLAYING_JSON)
-                .build();
-        client.newCall(request).enqueue(new Callback() {
-            @Override
-            public void onFailure(@NonNull Call call, @NonNull IOException e) {
-                Log.e(TAG, "fetch json data failed. reason: " + e);
-                future.complete(false);
+        return NowPlayingRepository.getInstance().get().handle((result, error) -> {
+            if (error != null) {
+                Log.e(TAG, "fetch json data failed. reason: " + error);
+                return false;
             }
-
-            @Override
-            public void onResponse(@NonNull Call call, @NonNull Response response) {
-                try {
-                    String body = response.body().string();
-                    Gson gson = new GsonBuilder()
-                            .disableHtmlEscaping()
-                            .setLenient()
-                            .serializeNulls()
-                            .setPrettyPrinting()
-                            .enableComplexMapKeySerialization()
-                            .create();
-                    dataBean = gson.fromJson(body, SongDataBean.class);
-                    future.complete(true);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    future.complete(false);
-                }
+            SongDataBean data = result.getData();
+            if (result.getServerDateMs() >= 0) {
+                serverClock.onDateHeader(result.getServerDateMs(), result.getSentAt(), result.getReceivedAt());
+            }
+            if (result.isFromNetwork() && data.getServerInfo() != null) {
+                serverClock.onServerTimeAtLeast(data.getServerInfo().getLastUpdate() * 1000L, result.getReceivedAt());
+            }
+            dataBean = data;
+            if (playerService != null && data.getServerInfo() != null) {
+                playerService.updateStreamLevels(data.getServerInfo().getStreams());
             }
+            runOnUiThread(MainActivity.this::applyServerSongStart);
+            return true;
         });
-        return future;
     }
 
-}
\ No newline at end of file
+}
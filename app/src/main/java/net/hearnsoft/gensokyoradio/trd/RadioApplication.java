@@ -3,6 +3,9 @@ package net.hearnsoft.gensokyoradio.trd;
 import android.app.Application;
 import android.util.Log;
 
+import net.hearnsoft.gensokyoradio.trd.model.NowPlayingDispatcher;
+import net.hearnsoft.gensokyoradio.trd.model.SongHistory;
+
 public class RadioApplication extends Application {
 
     private static final String TAG = RadioApplication.class.getSimpleName();
@@ -11,5 +14,19 @@ public class RadioApplication extends Application {
     public void onCreate() {
         super.onCreate();
         Log.d(TAG, "Init application.");
+        // Every song that goes on air is kept, whichever source reported it
+        // 记录每一首播出的歌曲，无论来自哪个数据源
+        NowPlayingDispatcher.getInstance().getLiveNowPlaying()
+                .observeForever(SongHistory.getInstance(this)::record);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            // The process may be killed from here on, don't lose the pending batch
+            // 此后进程可能被终止，避免丢失待写入的批次
+            SongHistory.getInstance(this).flush();
+        }
     }
 }
@@ -0,0 +1,202 @@
+package net.hearnsoft.gensokyoradio.trd.audio;
+
+/**
+ * Windowed radix-2 real FFT that folds the spectrum into log-spaced bands
+ * 加窗的基 2 实数 FFT，并将频谱汇总为对数间隔的频带
+ * <p>
+ * All tables and work arrays are allocated up front, {@link #analyze} never
+ * allocates. The real input is packed into a complex FFT of half the size and
+ * split afterwards. Not thread safe, use one instance per analysis thread.
+ */
+public class FftAnalyzer {
+
+    // Reported for silent bands
+    // 静音频带的输出值
+    public static final float FLOOR_DB = -100f;
+
+    private final int size;
+    private final int half;
+    private final float[] window;
+    // Turns bin power into dBFS, a full scale sine reads 0 dB
+    // 将频点功率换算为 dBFS，满幅正弦波为 0 dB
+    private final float powerScale;
+    private final int[] bitReverse;
+    private final float[] cos;
+    private final float[] sin;
+    private final float[] re;
+    private final float[] im;
+    private final float[] power;
+    private final int bandCount;
+    private final float minHz;
+    private final float maxHz;
+    private final int[] bandStart;
+    private final int[] bandEnd;
+    private int sampleRate = 0;
+
+    /**
+     * @param size samples per analysis, a power of two of at least 4
+     * @param bandCount number of output bands
+     * @param minHz lower edge of the first band
+     * @param maxHz upper edge of the last band, capped at Nyquist
+     */
+    public FftAnalyzer(int size, int bandCount, float minHz, float maxHz) {
+        if (size < 4 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("size must be a power of two >= 4: " + size);
+        }
+        this.size = size;
+        this.half = size / 2;
+        this.bandCount = bandCount;
+        this.minHz = minHz;
+        this.maxHz = maxHz;
+
+        window = new float[size];
+        double windowSum = 0;
+        for (int i = 0; i < size; i++) {
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / size));
+            windowSum += window[i];
+        }
+        powerScale = (float) ((2 / windowSum) * (2 / windowSum));
+
+        int bits = Integer.numberOfTrailingZeros(half);
+        bitReverse = new int[half];
+        for (int i = 0; i < half; i++) {
+            bitReverse[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+        cos = new float[half];
+        sin = new float[half];
+        for (int k = 0; k < half; k++) {
+            cos[k] = (float) Math.cos(2 * Math.PI * k / size);
+            sin[k] = (float) Math.sin(2 * Math.PI * k / size);
+        }
+        re = new float[half];
+        im = new float[half];
+        power = new float[half + 1];
+        bandStart = new int[bandCount];
+        bandEnd = new int[bandCount];
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getBandCount() {
+        return bandCount;
+    }
+
+    /**
+     * Map the bands onto FFT bins for the given sample rate, cheap if unchanged
+     * 按采样率将频带映射到 FFT 频点，采样率不变时不做任何事
+     */
+    public void setSampleRate(int sampleRate) {
+        if (sampleRate == this.sampleRate) {
+            return;
+        }
+        this.sampleRate = sampleRate;
+        double top = Math.min(maxHz, sampleRate / 2f);
+        double ratio = top / minHz;
+        double binHz = (double) sampleRate / size;
+        for (int band = 0; band < bandCount; band++) {
+            double low = minHz * Math.pow(ratio, (double) band / bandCount);
+            double high = minHz * Math.pow(ratio, (double) (band + 1) / bandCount);
+            // Narrow low bands may share a bin with their neighbours
+            // 较窄的低频带可能与相邻频带共用一个频点
+            int start = Math.min(Math.max((int) (low / binHz), 1), half);
+            int end = Math.min(Math.max((int) (high / binHz), start + 1), half + 1);
+            bandStart[band] = start;
+            bandEnd[band] = end;
+        }
+    }
+
+    /**
+     * Lower edge of a band in Hz, after snapping to bins
+     * 频带对齐到频点后的下边界频率
+     */
+    public float getBandLowHz(int band) {
+        return bandStart[band] * (float) sampleRate / size;
+    }
+
+    /**
+     * Upper edge of a band in Hz, after snapping to bins
+     * 频带对齐到频点后的上边界频率
+     */
+    public float getBandHighHz(int band) {
+        return bandEnd[band] * (float) sampleRate / size;
+    }
+
+    /**
+     * Peak level of every band in dBFS
+     * 计算每个频带的峰值电平（dBFS）
+     * @param samples mono input of {@link #getSize()} samples, oldest first
+     * @param bandsDb receives {@link #getBandCount()} values, at least {@link #FLOOR_DB}
+     */
+    public void analyze(float[] samples, float[] bandsDb) {
+        if (sampleRate == 0) {
+            throw new IllegalStateException("sample rate not set");
+        }
+        // Even samples go to the real part, odd samples to the imaginary part
+        // 偶数采样放入实部，奇数采样放入虚部
+        for (int n = 0; n < half; n++) {
+            int target = bitReverse[n];
+            re[target] = samples[2 * n] * window[2 * n];
+            im[target] = samples[2 * n + 1] * window[2 * n + 1];
+        }
+        transform();
+        split();
+        for (int band = 0; band < bandCount; band++) {
+            float peak = 0;
+            for (int bin = bandStart[band]; bin < bandEnd[band]; bin++) {
+                peak = Math.max(peak, power[bin]);
+            }
+            float db = peak > 0 ? (float) (10 * Math.log10(peak * powerScale)) : FLOOR_DB;
+            bandsDb[band] = Math.max(db, FLOOR_DB);
+        }
+    }
+
+    /**
+     * In-place iterative complex FFT of the half-size bit-reversed input
+     * 对位反转后的半长输入做原地迭代复数 FFT
+     */
+    private void transform() {
+        for (int length = 2; length <= half; length <<= 1) {
+            int span = length / 2;
+            int step = size / length;
+            for (int i = 0; i < half; i += length) {
+                for (int j = 0; j < span; j++) {
+                    float wr = cos[j * step];
+                    float wi = -sin[j * step];
+                    int a = i + j;
+                    int b = a + span;
+                    float tr = re[b] * wr - im[b] * wi;
+                    float ti = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+
+    /**
+     * Recover the power spectrum of the real input from the packed transform
+     * 从打包的变换结果中还原实数输入的功率谱
+     */
+    private void split() {
+        float dc = re[0] + im[0];
+        float nyquist = re[0] - im[0];
+        power[0] = dc * dc;
+        power[half] = nyquist * nyquist;
+        for (int k = 1; k < half; k++) {
+            int m = half - k;
+            float evenRe = (re[k] + re[m]) / 2;
+            float evenIm = (im[k] - im[m]) / 2;
+            float oddRe = (im[k] + im[m]) / 2;
+            float oddIm = (re[m] - re[k]) / 2;
+            float wr = cos[k];
+            float wi = -sin[k];
+            float xr = evenRe + wr * oddRe - wi * oddIm;
+            float xi = evenIm + wr * oddIm + wi * oddRe;
+            power[k] = xr * xr + xi * xi;
+        }
+    }
+}
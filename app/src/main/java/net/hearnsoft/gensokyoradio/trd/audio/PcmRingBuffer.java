@@ -0,0 +1,123 @@
+package net.hearnsoft.gensokyoradio.trd.audio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Lock-free ring of mono float samples with a single writer
+ * 单写入方的无锁单声道浮点采样环形缓冲
+ * <p>
+ * The audio thread downmixes decoded PCM into the ring and publishes it by
+ * bumping a volatile position. Readers copy a window without locking and
+ * discard it if the writer overwrote that region during the copy.
+ */
+public class PcmRingBuffer {
+
+    private final float[] samples;
+    private final int mask;
+    // End of published samples
+    // 已发布采样的末尾
+    private volatile long writePosition = 0;
+    // End of the region the writer may be overwriting, ahead of writePosition while copying
+    // 写入方可能正在覆盖的区域末尾，写入期间领先于 writePosition
+    private volatile long writeLimit = 0;
+    private volatile int sampleRate = 0;
+
+    /**
+     * @param capacity number of samples kept, must be a power of two
+     */
+    public PcmRingBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        samples = new float[capacity];
+        mask = capacity - 1;
+    }
+
+    public int getCapacity() {
+        return samples.length;
+    }
+
+    /**
+     * Total number of samples written so far
+     * 迄今写入的采样总数
+     */
+    public long getWritePosition() {
+        return writePosition;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Append interleaved 16-bit PCM, the buffer's position is left untouched
+     * 追加交错的 16 位 PCM，不改变缓冲区的读取位置
+     */
+    public void writePcm16(ByteBuffer buffer, int channelCount) {
+        int frames = buffer.remaining() / (2 * channelCount);
+        long position = beginWrite(frames);
+        float scale = 1f / (32768f * channelCount);
+        int index = buffer.position();
+        for (int frame = 0; frame < frames; frame++) {
+            int sum = 0;
+            for (int channel = 0; channel < channelCount; channel++) {
+                sum += buffer.getShort(index);
+                index += 2;
+            }
+            samples[(int) (position++ & mask)] = sum * scale;
+        }
+        writePosition = position;
+    }
+
+    /**
+     * Append interleaved float PCM, the buffer's position is left untouched
+     * 追加交错的浮点 PCM，不改变缓冲区的读取位置
+     */
+    public void writeFloat(ByteBuffer buffer, int channelCount) {
+        int frames = buffer.remaining() / (4 * channelCount);
+        long position = beginWrite(frames);
+        float scale = 1f / channelCount;
+        int index = buffer.position();
+        for (int frame = 0; frame < frames; frame++) {
+            float sum = 0;
+            for (int channel = 0; channel < channelCount; channel++) {
+                sum += buffer.getFloat(index);
+                index += 4;
+            }
+            samples[(int) (position++ & mask)] = sum * scale;
+        }
+        writePosition = position;
+    }
+
+    private long beginWrite(int frames) {
+        long position = writePosition;
+        writeLimit = position + frames;
+        return position;
+    }
+
+    /**
+     * Copy the newest target.length samples, ending delay samples before the write position
+     * 复制最新的 target.length 个采样，结束于写入位置之前 delay 个采样处
+     * @param delay samples to skip at the live end, e.g. to match the output latency
+     * @return false if not enough audio was written yet or the writer overwrote the window
+     */
+    public boolean readLatest(float[] target, int delay) {
+        if (target.length + delay > samples.length) {
+            throw new IllegalArgumentException("window larger than the ring");
+        }
+        long start = writePosition - delay - target.length;
+        if (start < 0) {
+            return false;
+        }
+        for (int i = 0; i < target.length; i++) {
+            target[i] = samples[(int) ((start + i) & mask)];
+        }
+        // The writer may have lapped us during the copy
+        // 拷贝期间写入方可能已覆盖该区域
+        return start >= writeLimit - samples.length;
+    }
+}
@@ -0,0 +1,66 @@
+package net.hearnsoft.gensokyoradio.trd.audio;
+
+import androidx.annotation.NonNull;
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.exoplayer.audio.TeeAudioProcessor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Copies the decoded PCM reaching the audio sink into a PcmRingBuffer
+ * 将送入音频输出的已解码 PCM 复制到 PcmRingBuffer
+ * <p>
+ * Called on the playback thread. Copying is skipped while nobody displays
+ * the spectrum, so the tap costs nothing in the background.
+ */
+@UnstableApi
+public class PcmTap implements TeeAudioProcessor.AudioBufferSink {
+
+    private final PcmRingBuffer ringBuffer;
+    private int channelCount = 0;
+    private int encoding = C.ENCODING_INVALID;
+    private volatile boolean enabled = false;
+
+    public PcmTap(int capacity) {
+        ringBuffer = new PcmRingBuffer(capacity);
+    }
+
+    public PcmRingBuffer getRingBuffer() {
+        return ringBuffer;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void flush(int sampleRateHz, int channelCount, @C.PcmEncoding int encoding) {
+        this.channelCount = channelCount;
+        this.encoding = encoding;
+        ringBuffer.setSampleRate(sampleRateHz);
+    }
+
+    @Override
+    public void handleBuffer(@NonNull ByteBuffer buffer) {
+        if (!enabled || channelCount <= 0) {
+            return;
+        }
+        // The read-only view handed to us is big endian by default
+        // 传入的只读视图默认是大端序
+        buffer.order(ByteOrder.nativeOrder());
+        switch (encoding) {
+            case C.ENCODING_PCM_16BIT:
+                ringBuffer.writePcm16(buffer, channelCount);
+                break;
+            case C.ENCODING_PCM_FLOAT:
+                ringBuffer.writeFloat(buffer, channelCount);
+                break;
+            default:
+                // Decoders for this stream only produce the two encodings above
+                // 本串流的解码器只会输出以上两种编码
+                break;
+        }
+    }
+}
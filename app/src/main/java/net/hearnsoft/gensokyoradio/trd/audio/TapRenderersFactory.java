@@ -0,0 +1,35 @@
+package net.hearnsoft.gensokyoradio.trd.audio;
+
+import android.content.Context;
+
+import androidx.media3.common.audio.AudioProcessor;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.exoplayer.DefaultRenderersFactory;
+import androidx.media3.exoplayer.audio.AudioSink;
+import androidx.media3.exoplayer.audio.DefaultAudioSink;
+import androidx.media3.exoplayer.audio.TeeAudioProcessor;
+
+/**
+ * Default renderers with a PcmTap in front of the audio output
+ * 在音频输出前插入 PcmTap 的默认渲染器
+ */
+@UnstableApi
+public class TapRenderersFactory extends DefaultRenderersFactory {
+
+    private final PcmTap tap;
+
+    public TapRenderersFactory(Context context, PcmTap tap) {
+        super(context);
+        this.tap = tap;
+    }
+
+    @Override
+    protected AudioSink buildAudioSink(Context context, boolean enableFloatOutput,
+                                       boolean enableAudioTrackPlaybackParams) {
+        return new DefaultAudioSink.Builder(context)
+                .setEnableFloatOutput(enableFloatOutput)
+                .setEnableAudioTrackPlaybackParams(enableAudioTrackPlaybackParams)
+                .setAudioProcessors(new AudioProcessor[]{new TeeAudioProcessor(tap)})
+                .build();
+    }
+}
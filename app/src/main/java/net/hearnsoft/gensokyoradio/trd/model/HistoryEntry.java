@@ -0,0 +1,78 @@
+package net.hearnsoft.gensokyoradio.trd.model;
+
+/**
+ * One song that went on air, as kept in the history
+ * 播出过的一首歌曲，即历史记录中的一条
+ */
+public final class HistoryEntry {
+
+    private final int songId;
+    private final String title;
+    private final String artist;
+    private final String album;
+    private final String circle;
+    private final String year;
+    private final String albumArt;
+    private final long airedAt;
+
+    /**
+     * @param songId 0 if only known by its ICY title
+     * @param airedAt wall clock time the song started, in milliseconds
+     */
+    public HistoryEntry(int songId, String title, String artist, String album, String circle,
+                        String year, String albumArt, long airedAt) {
+        this.songId = songId;
+        this.title = title;
+        this.artist = artist;
+        this.album = album;
+        this.circle = circle;
+        this.year = year;
+        this.albumArt = albumArt;
+        this.airedAt = airedAt;
+    }
+
+    /**
+     * @param nowWallMs {@link System#currentTimeMillis()}
+     * @param nowElapsedMs elapsedRealtime sampled together with nowWallMs
+     */
+    public static HistoryEntry from(NowPlayingSnapshot snapshot, long nowWallMs, long nowElapsedMs) {
+        // Persist wall clock time, elapsedRealtime restarts with the device
+        // 持久化墙上时间，elapsedRealtime 会随设备重启归零
+        long startedElapsed = snapshot.getReceivedAt() - snapshot.getPlayed() * 1000L;
+        return new HistoryEntry(snapshot.getSongId(), snapshot.getTitle(), snapshot.getArtist(),
+                snapshot.getAlbum(), snapshot.getCircle(), snapshot.getYear(), snapshot.getAlbumArt(),
+                nowWallMs - (nowElapsedMs - startedElapsed));
+    }
+
+    public int getSongId() {
+        return songId;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getArtist() {
+        return artist;
+    }
+
+    public String getAlbum() {
+        return album;
+    }
+
+    public String getCircle() {
+        return circle;
+    }
+
+    public String getYear() {
+        return year;
+    }
+
+    public String getAlbumArt() {
+        return albumArt;
+    }
+
+    public long getAiredAt() {
+        return airedAt;
+    }
+}
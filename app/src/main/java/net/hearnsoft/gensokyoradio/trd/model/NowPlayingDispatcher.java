@@ -0,0 +1,163 @@
+package net.hearnsoft.gensokyoradio.trd.model;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Application scoped now playing dispatcher
+ * 应用级的正在播放分发器
+ * <p>
+ * Producers publish complete snapshots from any thread, tagged with their
+ * {@link NowPlayingSource}; a lower ranked source only replaces the current
+ * song once it is overdue. Subscribers observe
+ * {@link #getNowPlaying()} with a lifecycle (or observeForever + removeObserver
+ * for services), so paused subscribers are skipped and only receive the latest
+ * snapshot once active again. Updates for the song already published are dropped.
+ * <p>
+ * The WebSocket reports songs at the live edge, but the listener hears them
+ * only after the player's buffer has drained. {@link #getNowPlaying()} is
+ * therefore delayed by the presentation delay sampled from the player when
+ * the snapshot arrives, while {@link #getLiveNowPlaying()} is not delayed.
+ */
+public class NowPlayingDispatcher {
+
+    private static volatile NowPlayingDispatcher instance;
+
+    private final AtomicReference<NowPlayingSnapshot> latest = new AtomicReference<>();
+    // Guarded by this
+    // 由 this 保护
+    private NowPlayingSource latestSource;
+    private final EnumSet<NowPlayingSource> inactiveSources = EnumSet.noneOf(NowPlayingSource.class);
+    private long publishedSequence = 0;
+    // Main thread only, sequence of the snapshot on screen; an older one with a longer delay is dropped
+    // 仅在主线程访问，当前呈现快照的序号；延迟更长的旧快照会被丢弃
+    private long presentedSequence = 0;
+    private final MutableLiveData<NowPlayingSnapshot> nowPlaying = new MutableLiveData<>();
+    private final MutableLiveData<NowPlayingSnapshot> liveNowPlaying = new MutableLiveData<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private volatile LongSupplier presentationDelaySupplier;
+
+    public static NowPlayingDispatcher getInstance() {
+        if (instance == null) {
+            synchronized (NowPlayingDispatcher.class) {
+                if (instance == null) {
+                    instance = new NowPlayingDispatcher();
+                }
+            }
+        }
+        return instance;
+    }
+
+    private NowPlayingDispatcher() {
+    }
+
+    /**
+     * Publish a new snapshot, can be called from any thread
+     * 发布新的快照，可在任意线程调用
+     * @return false if the snapshot was dropped as a duplicate of the current song,
+     * or because a higher ranked source still vouches for the current song
+     */
+    public boolean publish(NowPlayingSnapshot snapshot, NowPlayingSource source) {
+        long sequence;
+        synchronized (this) {
+            NowPlayingSnapshot previous = latest.get();
+            if (snapshot.isSameSong(previous)) {
+                // Remember the better source, so lower ranked repeats keep being ignored
+                // 记录更可信的来源，使低优先级来源的重复推送继续被忽略
+                if (latestSource == null || source.outranks(latestSource)) {
+                    latestSource = source;
+                }
+                return false;
+            }
+            if (!source.mayReplace(previous, latestSource,
+                    latestSource == null || !inactiveSources.contains(latestSource), SystemClock.elapsedRealtime())) {
+                return false;
+            }
+            latest.set(snapshot);
+            latestSource = source;
+            sequence = ++publishedSequence;
+        }
+        // postValue conflates, observers only see the newest snapshot
+        // postValue 会合并更新，观察者只会收到最新的快照
+        liveNowPlaying.postValue(snapshot);
+        handler.post(() -> schedulePresentation(snapshot, sequence, source.isLiveEdge()));
+        return true;
+    }
+
+    /**
+     * Mark a source as stopped on purpose, so its last song yields to lower ranked sources once over
+     * 将来源标记为主动停止，其最后一首歌结束后即让位于低优先级来源
+     */
+    public synchronized void setSourceActive(NowPlayingSource source, boolean active) {
+        if (active) {
+            inactiveSources.remove(source);
+        } else {
+            inactiveSources.add(source);
+        }
+    }
+
+    /**
+     * Sample the delay on the main thread and present the snapshot once the audio catches up
+     * 在主线程采样延迟，待音频追上后再呈现快照
+     */
+    private void schedulePresentation(NowPlayingSnapshot snapshot, long sequence, boolean liveEdge) {
+        LongSupplier supplier = presentationDelaySupplier;
+        // Sources reported at playback time are already in step with the audio
+        // 在播放时上报的来源已与音频同步
+        long delay = liveEdge && supplier != null ? Math.max(0, supplier.getAsLong()) : 0;
+        NowPlayingSnapshot delayed = snapshot.withPresentationDelay(delay);
+        long waited = SystemClock.elapsedRealtime() - snapshot.getReceivedAt();
+        handler.postAtTime(() -> present(delayed, sequence),
+                SystemClock.uptimeMillis() + Math.max(0, delay - waited));
+    }
+
+    private void present(NowPlayingSnapshot snapshot, long sequence) {
+        if (sequence <= presentedSequence) {
+            // A newer snapshot with a shorter delay is already on screen
+            // 延迟更短的新快照已经呈现
+            return;
+        }
+        presentedSequence = sequence;
+        nowPlaying.setValue(snapshot);
+    }
+
+    /**
+     * Set where the presentation delay comes from, called on the main thread; null for none
+     * 设置呈现延迟的来源，在主线程调用；传入 null 表示无延迟
+     */
+    public void setPresentationDelaySupplier(LongSupplier supplier) {
+        presentationDelaySupplier = supplier;
+    }
+
+    /**
+     * Now playing as the listener hears it, delayed by the player's buffer
+     * 听众实际听到的正在播放信息，按播放器缓冲延迟
+     */
+    public LiveData<NowPlayingSnapshot> getNowPlaying() {
+        return nowPlaying;
+    }
+
+    /**
+     * Now playing at the live edge, as soon as the WebSocket reports it;
+     * ICY titles are only known once heard, so they arrive here late
+     * 直播位置的正在播放信息，WebSocket 报告后立即发布；ICY 标题在播放时才可知，因此会延后到达
+     */
+    public LiveData<NowPlayingSnapshot> getLiveNowPlaying() {
+        return liveNowPlaying;
+    }
+
+    /**
+     * Latest published snapshot, may be null before the first song arrives
+     */
+    public NowPlayingSnapshot getLatest() {
+        return latest.get();
+    }
+}
@@ -0,0 +1,143 @@
+package net.hearnsoft.gensokyoradio.trd.model;
+
+import net.hearnsoft.gensokyoradio.trd.utils.Backoff;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Fallback now playing source that polls the API while the WebSocket is down
+ * WebSocket 断开期间轮询 API 的正在播放备用数据源
+ * <p>
+ * Instead of a fixed interval, each poll is scheduled for just after the
+ * current song ends, so a healthy stream costs about one request per song.
+ * If the server has not moved on yet, or the request fails, it retries with
+ * backoff. Snapshots go through the same dispatcher as the WebSocket's, which
+ * drops the duplicate when the socket comes back with the same song.
+ */
+public class NowPlayingPoller {
+
+    // The API switches songs a little after SONGEND
+    // API 会在 SONGEND 之后稍晚才切换歌曲
+    static final long SONG_END_GRACE_MS = 3 * 1000;
+    static final long MIN_DELAY_MS = 5 * 1000;
+    static final long MAX_DELAY_MS = 10 * 60 * 1000;
+
+    private final NowPlayingRepository repository;
+    private final ScheduledExecutorService executor;
+    private final Consumer<NowPlayingSnapshot> sink;
+    private final LongSupplier clock;
+    private final Backoff retryBackoff = new Backoff(MIN_DELAY_MS, 60 * 1000);
+    // Only touched on the executor
+    // 仅在 executor 上访问
+    private boolean running = false;
+    private int generation = 0;
+    private ScheduledFuture<?> pending;
+
+    /**
+     * @param executor single thread executor the poller schedules itself on
+     * @param sink receives every polled snapshot, usually {@link NowPlayingDispatcher#publish}
+     * @param clock the clock the repository reports its times on
+     */
+    public NowPlayingPoller(NowPlayingRepository repository, ScheduledExecutorService executor,
+                            Consumer<NowPlayingSnapshot> sink, LongSupplier clock) {
+        this.repository = repository;
+        this.executor = executor;
+        this.sink = sink;
+        this.clock = clock;
+    }
+
+    /**
+     * Start polling, a fresh cached response is published right away
+     * 开始轮询，若缓存仍有效则立即发布
+     */
+    public void start() {
+        executor.execute(() -> {
+            if (running) {
+                return;
+            }
+            running = true;
+            generation++;
+            retryBackoff.reset();
+            poll(false);
+        });
+    }
+
+    /**
+     * Stop polling, a request in flight is ignored when it completes
+     * 停止轮询，进行中的请求完成后会被忽略
+     */
+    public void stop() {
+        executor.execute(() -> {
+            running = false;
+            generation++;
+            cancelPending();
+        });
+    }
+
+    /**
+     * Poll immediately if running, e.g. when the network came back
+     * 若正在轮询则立即请求一次，例如网络恢复时
+     */
+    public void pollNow() {
+        executor.execute(() -> {
+            if (running) {
+                generation++;
+                cancelPending();
+                poll(true);
+            }
+        });
+    }
+
+    /**
+     * Delay until just after the song ends, or -1 if it should have ended already
+     * 距歌曲结束稍后的延迟，若歌曲应已结束则返回 -1
+     */
+    static long nextPollDelayMs(long dataReceivedAt, int remainingSec, long now) {
+        long delay = dataReceivedAt + remainingSec * 1000L + SONG_END_GRACE_MS - now;
+        if (delay < MIN_DELAY_MS) {
+            return -1;
+        }
+        return Math.min(delay, MAX_DELAY_MS);
+    }
+
+    private void poll(boolean revalidate) {
+        int current = generation;
+        repository.get(revalidate).whenComplete((result, error) ->
+                executor.execute(() -> onResult(current, result, error)));
+    }
+
+    private void onResult(int polled, NowPlayingRepository.Result result, Throwable error) {
+        if (!running || polled != generation) {
+            return;
+        }
+        NowPlayingSnapshot snapshot = error == null
+                ? NowPlayingSnapshot.from(result.getData(), result.getDataReceivedAt()) : null;
+        long delay = -1;
+        if (snapshot != null) {
+            sink.accept(snapshot);
+            delay = nextPollDelayMs(result.getDataReceivedAt(), snapshot.getRemaining(), clock.getAsLong());
+        }
+        if (delay < 0) {
+            // Failed, or the server still reports a song that should be over
+            // 请求失败，或服务器仍在报告本应结束的歌曲
+            delay = retryBackoff.nextDelayMs();
+        } else {
+            retryBackoff.reset();
+        }
+        pending = executor.schedule(() -> {
+            pending = null;
+            poll(true);
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelPending() {
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+    }
+}
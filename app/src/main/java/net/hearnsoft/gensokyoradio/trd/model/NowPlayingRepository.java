@@ -0,0 +1,287 @@
+package net.hearnsoft.gensokyoradio.trd.model;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import net.hearnsoft.gensokyoradio.trd.beans.SongDataBean;
+import net.hearnsoft.gensokyoradio.trd.beans.misc.SongData;
+import net.hearnsoft.gensokyoradio.trd.beans.misc.SongTimes;
+import net.hearnsoft.gensokyoradio.trd.utils.Constants;
+import net.hearnsoft.gensokyoradio.trd.utils.GsonUtils;
+import net.hearnsoft.gensokyoradio.trd.utils.HttpClientHolder;
+import net.hearnsoft.gensokyoradio.trd.utils.LimitedInputStream;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongSupplier;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Application scoped cache in front of the now playing API
+ * 位于正在播放 API 前的应用级缓存
+ * <p>
+ * The latest response is served from memory until the song it describes ends,
+ * as told by SONGTIMES.REMAINING. After that it is revalidated with the
+ * ETag / Last-Modified the server sent, so an unchanged song costs a 304.
+ * Concurrent callers share one request. Responses are also kept per SONGID
+ * so the info of a song that is still on air never needs the network.
+ */
+public class NowPlayingRepository {
+
+    // Floor for the TTL, so a song about to end is not refetched in a loop
+    // TTL 下限，避免歌曲即将结束时反复请求
+    static final long MIN_TTL_MS = 5 * 1000;
+    // Ceiling for the TTL, REMAINING can be bogus between songs
+    // TTL 上限，切歌间隙 REMAINING 可能不可信
+    static final long MAX_TTL_MS = 10 * 60 * 1000;
+    private static final int SONG_CACHE_SIZE = 16;
+    // The response is a few KiB, anything far beyond is not ours to parse
+    // 正常响应只有几 KiB，远超此值的内容不予解析
+    static final long MAX_RESPONSE_BYTES = 256 * 1024;
+
+    private static volatile NowPlayingRepository instance;
+
+    /**
+     * One answer from the repository
+     * 仓库返回的一次结果
+     */
+    public static class Result {
+        private final SongDataBean data;
+        private final long dataReceivedAt;
+        private final boolean fromNetwork;
+        private final long sentAt;
+        private final long receivedAt;
+        private final long serverDateMs;
+
+        Result(SongDataBean data, long dataReceivedAt, boolean fromNetwork, long sentAt, long receivedAt,
+               long serverDateMs) {
+            this.data = data;
+            this.dataReceivedAt = dataReceivedAt;
+            this.fromNetwork = fromNetwork;
+            this.sentAt = sentAt;
+            this.receivedAt = receivedAt;
+            this.serverDateMs = serverDateMs;
+        }
+
+        public SongDataBean getData() {
+            return data;
+        }
+
+        /**
+         * @return true if a request was made, also for a 304 that reused the cached body
+         */
+        public boolean isFromNetwork() {
+            return fromNetwork;
+        }
+
+        public long getSentAt() {
+            return sentAt;
+        }
+
+        /**
+         * When the body was received, SONGTIMES.PLAYED and REMAINING are relative to this
+         * 响应体的接收时刻，SONGTIMES.PLAYED 与 REMAINING 均相对于此时刻
+         */
+        public long getDataReceivedAt() {
+            return dataReceivedAt;
+        }
+
+        public long getReceivedAt() {
+            return receivedAt;
+        }
+
+        /**
+         * @return the response's Date header, or -1 if absent or served from cache
+         */
+        public long getServerDateMs() {
+            return serverDateMs;
+        }
+    }
+
+    private static class Entry {
+        final SongDataBean data;
+        final String etag;
+        final String lastModified;
+        final long receivedAt;
+        final long songEndsAt;
+        long expiresAt;
+
+        Entry(SongDataBean data, String etag, String lastModified, long receivedAt, long songEndsAt,
+              long expiresAt) {
+            this.data = data;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.receivedAt = receivedAt;
+            this.songEndsAt = songEndsAt;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final OkHttpClient client;
+    private final String url;
+    private final LongSupplier clock;
+    private final Map<Integer, SongDataBean> songs = new LinkedHashMap<Integer, SongDataBean>(SONG_CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, SongDataBean> eldest) {
+            return size() > SONG_CACHE_SIZE;
+        }
+    };
+    private Entry latest;
+    private CompletableFuture<Result> inFlight;
+
+    public static NowPlayingRepository getInstance() {
+        if (instance == null) {
+            synchronized (NowPlayingRepository.class) {
+                if (instance == null) {
+                    instance = new NowPlayingRepository(HttpClientHolder.get(),
+                            Constants.NOW_PLAYING_JSON, SystemClock::elapsedRealtime);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @param clock monotonic milliseconds, results report their times on this clock
+     */
+    NowPlayingRepository(OkHttpClient client, String url, LongSupplier clock) {
+        this.client = client;
+        this.url = url;
+        this.clock = clock;
+    }
+
+    /**
+     * Cached data for the given song, without touching the network
+     * 不访问网络，返回指定歌曲的缓存数据
+     * @return null if that song was never fetched or was evicted
+     */
+    @Nullable
+    public synchronized SongDataBean peek(int songId) {
+        return songs.get(songId);
+    }
+
+    /**
+     * Latest now playing data, from memory while fresh
+     * 获取最新的正在播放数据，未过期时直接取自内存
+     * <p>
+     * The future completes on an OkHttp thread, or right away on a cache hit.
+     * It fails with an IOException if the request or parsing failed.
+     */
+    public CompletableFuture<Result> get() {
+        return get(false);
+    }
+
+    /**
+     * @param revalidate ask the server even if the cached data has not expired yet
+     */
+    public synchronized CompletableFuture<Result> get(boolean revalidate) {
+        long now = clock.getAsLong();
+        if (!revalidate && latest != null && now < latest.expiresAt) {
+            return CompletableFuture.completedFuture(
+                    new Result(latest.data, latest.receivedAt, false, now, now, -1));
+        }
+        if (inFlight != null) {
+            return inFlight;
+        }
+        CompletableFuture<Result> future = new CompletableFuture<>();
+        inFlight = future;
+        Request.Builder builder = new Request.Builder().url(url);
+        if (latest != null) {
+            if (latest.etag != null) {
+                builder.header("If-None-Match", latest.etag);
+            }
+            if (latest.lastModified != null) {
+                builder.header("If-Modified-Since", latest.lastModified);
+            }
+        }
+        long sentAt = now;
+        client.newCall(builder.build()).enqueue(new Callback() {
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                complete(future, null, e);
+            }
+
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                try (Response closing = response) {
+                    complete(future, parse(closing, sentAt), null);
+                } catch (IOException | RuntimeException e) {
+                    complete(future, null, e instanceof IOException ? (IOException) e : new IOException(e));
+                }
+            }
+        });
+        return future;
+    }
+
+    private Result parse(Response response, long sentAt) throws IOException {
+        long receivedAt = clock.getAsLong();
+        Date date = response.headers().getDate("Date");
+        long serverDateMs = date != null ? date.getTime() : -1;
+        if (response.code() == 304) {
+            synchronized (this) {
+                if (latest == null) {
+                    throw new IOException("304 without a cached response");
+                }
+                // Same song still on air, trust the original end time while it lies ahead
+                // 仍是同一首歌，只要原结束时间还未到就沿用它
+                latest.expiresAt = Math.max(receivedAt + MIN_TTL_MS, Math.min(latest.songEndsAt, receivedAt + MAX_TTL_MS));
+                return new Result(latest.data, latest.receivedAt, true, sentAt, receivedAt, serverDateMs);
+            }
+        }
+        ResponseBody body = response.body();
+        if (!response.isSuccessful() || body == null) {
+            throw new IOException("HTTP " + response.code());
+        }
+        if (body.contentLength() > MAX_RESPONSE_BYTES) {
+            throw new IOException("response too large: " + body.contentLength());
+        }
+        // Decode from the byte stream, the caller closes the response
+        // 直接从字节流解码，由调用方关闭响应
+        SongDataBean data = GsonUtils.fromStream(
+                new LimitedInputStream(body.byteStream(), MAX_RESPONSE_BYTES), SongDataBean.class);
+        if (data == null) {
+            throw new IOException("empty response");
+        }
+        long remainingMs = remainingMs(data);
+        long songEndsAt = receivedAt + remainingMs;
+        long ttl = Math.max(MIN_TTL_MS, Math.min(remainingMs, MAX_TTL_MS));
+        synchronized (this) {
+            latest = new Entry(data, response.header("ETag"), response.header("Last-Modified"),
+                    receivedAt, songEndsAt, receivedAt + ttl);
+            SongData songData = data.getSongData();
+            if (songData != null && songData.getSongID() > 0) {
+                songs.put(songData.getSongID(), data);
+            }
+        }
+        return new Result(data, receivedAt, true, sentAt, receivedAt, serverDateMs);
+    }
+
+    private static long remainingMs(SongDataBean data) {
+        SongTimes times = data.getSongTimes();
+        return times != null ? Math.max(0, times.getRemaining()) * 1000L : 0;
+    }
+
+    private void complete(CompletableFuture<Result> future, Result result, IOException error) {
+        synchronized (this) {
+            if (inFlight == future) {
+                inFlight = null;
+            }
+        }
+        if (error != null) {
+            future.completeExceptionally(error);
+        } else {
+            future.complete(result);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package net.hearnsoft.gensokyoradio.trd.model;
+
+import net.hearnsoft.gensokyoradio.trd.beans.NowPlayingBean;
+import net.hearnsoft.gensokyoradio.trd.beans.SongDataBean;
+import net.hearnsoft.gensokyoradio.trd.beans.misc.Misc;
+import net.hearnsoft.gensokyoradio.trd.beans.misc.SongData;
+import net.hearnsoft.gensokyoradio.trd.beans.misc.SongInfo;
+import net.hearnsoft.gensokyoradio.trd.beans.misc.SongTimes;
+import net.hearnsoft.gensokyoradio.trd.utils.Constants;
+
+import java.util.Objects;
+
+/**
+ * Immutable now playing state, published atomically as a whole
+ * 不可变的正在播放快照，整体原子发布，避免界面出现新旧数据混杂
+ */
+public final class NowPlayingSnapshot {
+
+    private final int songId;
+    private final String title;
+    private final String artist;
+    private final String album;
+    private final String circle;
+    private final String year;
+    private final String albumArt;
+    private final int duration;
+    private final int played;
+    private final int remaining;
+    private final long receivedAt;
+    private final long presentationDelayMs;
+
+    public NowPlayingSnapshot(int songId, String title, String artist, String album, String circle,
+                              String year, String albumArt, int duration, int played, int remaining,
+                              long receivedAt) {
+        this(songId, title, artist, album, circle, year, albumArt, duration, played, remaining,
+                receivedAt, 0);
+    }
+
+    private NowPlayingSnapshot(int songId, String title, String artist, String album, String circle,
+                               String year, String albumArt, int duration, int played, int remaining,
+                               long receivedAt, long presentationDelayMs) {
+        this.songId = songId;
+        this.title = title;
+        this.artist = artist;
+        this.album = album;
+        this.circle = circle;
+        this.year = year;
+        this.albumArt = albumArt;
+        this.duration = duration;
+        this.played = played;
+        this.remaining = remaining;
+        this.receivedAt = receivedAt;
+        this.presentationDelayMs = presentationDelayMs;
+    }
+
+    /**
+     * @param bean decoded WebSocket bean
+     * @param receivedAt {@link android.os.SystemClock#elapsedRealtime()} when the bean arrived
+     */
+    public static NowPlayingSnapshot from(NowPlayingBean bean, long receivedAt) {
+        return new NowPlayingSnapshot(bean.getSongId(), bean.getTitle(), bean.getArtist(),
+                bean.getAlbum(), bean.getCircle(), bean.getYear(), bean.getAlbumArt(),
+                bean.getDuration(), bean.getPlayed(), bean.getRemaining(), receivedAt);
+    }
+
+    /**
+     * @param data decoded now playing API response
+     * @param receivedAt {@link android.os.SystemClock#elapsedRealtime()} when the response arrived
+     * @return null if the response does not describe a song
+     */
+    public static NowPlayingSnapshot from(SongDataBean data, long receivedAt) {
+        SongInfo info = data.getSongInfo();
+        SongTimes times = data.getSongTimes();
+        SongData songData = data.getSongData();
+        if (info == null || times == null || songData == null) {
+            return null;
+        }
+        Misc misc = data.getMisc();
+        String albumArt = misc != null ? misc.getAlbumArt() : null;
+        // The API only gives the file name, the WebSocket gives the full URL
+        // API 只返回文件名，而 WebSocket 返回完整 URL
+        if (albumArt != null && !albumArt.isEmpty() && !albumArt.startsWith("http")) {
+            albumArt = Constants.ALBUM_ART_URL + albumArt;
+        }
+        return new NowPlayingSnapshot(songData.getSongID(), info.getTitle(), info.getArtist(),
+                info.getAlbum(), info.getCircle(), info.getYear(), albumArt,
+                times.getDuration(), times.getPlayed(), times.getRemaining(), receivedAt);
+    }
+
+    /**
+     * @param streamTitle ICY StreamTitle, usually "Artist - Title"
+     * @param receivedAt {@link android.os.SystemClock#elapsedRealtime()} when the player reported it
+     * @return null for an empty title
+     */
+    public static NowPlayingSnapshot fromStreamTitle(String streamTitle, long receivedAt) {
+        if (streamTitle == null || streamTitle.trim().isEmpty()) {
+            return null;
+        }
+        String artist = null;
+        String title = streamTitle.trim();
+        int separator = title.indexOf(" - ");
+        if (separator > 0) {
+            artist = title.substring(0, separator).trim();
+            title = title.substring(separator + 3).trim();
+        }
+        // No song ID or timing in-band, the song is identified by its title
+        // 串流内没有歌曲 ID 与时长，以标题识别歌曲
+        return new NowPlayingSnapshot(0, title, artist, null, null, null, null,
+                0, 0, 0, receivedAt);
+    }
+
+    /**
+     * Copy that is presented this long after it was received, to line up with audible playback
+     * 返回在接收后延迟指定时长呈现的副本，使其与实际听到的音频对齐
+     */
+    public NowPlayingSnapshot withPresentationDelay(long delayMs) {
+        return new NowPlayingSnapshot(songId, title, artist, album, circle, year, albumArt,
+                duration, played, remaining, receivedAt, delayMs);
+    }
+
+    public boolean isSameSong(NowPlayingSnapshot other) {
+        if (other == null) {
+            return false;
+        }
+        if (songId != 0 || other.songId != 0) {
+            return songId == other.songId;
+        }
+        return title != null && title.equals(other.title) && Objects.equals(artist, other.artist);
+    }
+
+    public int getSongId() {
+        return songId;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getArtist() {
+        return artist;
+    }
+
+    public String getAlbum() {
+        return album;
+    }
+
+    public String getCircle() {
+        return circle;
+    }
+
+    public String getYear() {
+        return year;
+    }
+
+    public String getAlbumArt() {
+        return albumArt;
+    }
+
+    public int getDuration() {
+        return duration;
+    }
+
+    public int getPlayed() {
+        return played;
+    }
+
+    public int getRemaining() {
+        return remaining;
+    }
+
+    public long getReceivedAt() {
+        return receivedAt;
+    }
+
+    /**
+     * How far audible playback trailed the live stream when this snapshot was presented
+     * 呈现此快照时，实际播放落后直播的时长
+     */
+    public long getPresentationDelayMs() {
+        return presentationDelayMs;
+    }
+}
@@ -0,0 +1,74 @@
+package net.hearnsoft.gensokyoradio.trd.model;
+
+/**
+ * Where a now playing snapshot came from, in decreasing order of trust
+ * 正在播放快照的来源，按可信度从高到低排列
+ * <p>
+ * A source may replace the current song if it ranks at least as high as the
+ * source that published it, or if that song should have ended by now. So the
+ * stream's own ICY titles only take over once the richer feeds have gone quiet.
+ * A source that was switched off on purpose gets no grace period, its last
+ * song gives way as soon as it has ended.
+ */
+public enum NowPlayingSource {
+
+    /**
+     * Pushed by the WebSocket at the live edge
+     * WebSocket 在直播位置推送
+     */
+    WEBSOCKET(2, true),
+    /**
+     * Polled from the now playing API at the live edge
+     * 在直播位置从正在播放 API 轮询
+     */
+    API(1, true),
+    /**
+     * ICY StreamTitle, reported by the player when the audio is heard, title and artist only
+     * ICY StreamTitle，由播放器在音频播放时上报，仅含标题与艺术家
+     */
+    ICY(0, false);
+
+    // How long past its announced end a song still counts as current
+    // 歌曲在其预告结束时间之后仍视为当前歌曲的时长
+    // Also covers the player's buffer, which the live edge sources are ahead by
+    // 同时涵盖播放器缓冲，直播位置来源会领先这段时长
+    static final long STALE_GRACE_MS = 30 * 1000;
+
+    private final int priority;
+    private final boolean liveEdge;
+
+    NowPlayingSource(int priority, boolean liveEdge) {
+        this.priority = priority;
+        this.liveEdge = liveEdge;
+    }
+
+    /**
+     * Whether snapshots arrive ahead of the audio and must wait for the player's buffer
+     * 快照是否早于音频到达，需要等待播放器缓冲
+     */
+    public boolean isLiveEdge() {
+        return liveEdge;
+    }
+
+    public boolean outranks(NowPlayingSource other) {
+        return priority > other.priority;
+    }
+
+    /**
+     * @param current snapshot on air, may be null
+     * @param currentSource source that published it
+     * @param currentSourceActive false if that source was stopped and will not report the next song
+     * @param now elapsedRealtime
+     */
+    public boolean mayReplace(NowPlayingSnapshot current, NowPlayingSource currentSource,
+                              boolean currentSourceActive, long now) {
+        if (current == null || currentSource == null || !currentSource.outranks(this)) {
+            return true;
+        }
+        long endsAt = current.getReceivedAt() + current.getPresentationDelayMs()
+                + current.getRemaining() * 1000L;
+        // Nobody else will announce the next song, don't sit out the grace period
+        // 没有其他来源会报告下一首歌，无需等待宽限期
+        return currentSourceActive ? now > endsAt + STALE_GRACE_MS : now >= endsAt;
+    }
+}
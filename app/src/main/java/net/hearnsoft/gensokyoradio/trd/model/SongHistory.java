@@ -0,0 +1,130 @@
+package net.hearnsoft.gensokyoradio.trd.model;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Application scoped history of the songs that went on air
+ * 应用级的播出歌曲历史
+ * <p>
+ * Songs are appended to an in-memory list of the most recent ones, so the UI
+ * and the media session read them instantly, and written to SQLite in batches
+ * by {@link SongHistoryWriter}. The database is pruned by row count and age on
+ * every flush.
+ */
+public class SongHistory {
+
+    private static final int MAX_ROWS = 5000;
+    private static final long MAX_AGE_MS = TimeUnit.DAYS.toMillis(90);
+    private static final int RECENT_SIZE = 50;
+    private static final long FLUSH_DELAY_MS = 10 * 1000;
+    private static final int MAX_BATCH = 8;
+    // Same airing reported twice, e.g. after a reconnect
+    // 同一次播出被重复上报，例如重连之后
+    private static final long SAME_AIRING_MS = 60 * 1000;
+
+    private static volatile SongHistory instance;
+
+    private final SongHistoryDatabase database;
+    private final SongHistoryWriter writer;
+    // Newest first, guarded by itself
+    // 最新的在前，以自身为锁
+    private final ArrayDeque<HistoryEntry> recent = new ArrayDeque<>();
+
+    public static SongHistory getInstance(Context context) {
+        if (instance == null) {
+            synchronized (SongHistory.class) {
+                if (instance == null) {
+                    instance = new SongHistory(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private SongHistory(Context context) {
+        database = new SongHistoryDatabase(context, MAX_ROWS, MAX_AGE_MS);
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        writer = new SongHistoryWriter(database, executor, FLUSH_DELAY_MS, MAX_BATCH);
+        // Runs before any flush, so every stored row is older than what gets recorded meanwhile
+        // 先于任何写入执行，因此库中记录都早于期间新记录的歌曲
+        executor.execute(this::loadRecent);
+    }
+
+    /**
+     * Record a song, safe to call from any thread
+     * 记录一首歌曲，可在任意线程调用
+     */
+    public void record(NowPlayingSnapshot snapshot) {
+        HistoryEntry entry = HistoryEntry.from(snapshot, System.currentTimeMillis(), SystemClock.elapsedRealtime());
+        synchronized (recent) {
+            HistoryEntry newest = recent.peekFirst();
+            if (newest != null && isSameAiring(newest, entry)) {
+                return;
+            }
+            recent.addFirst(entry);
+            if (recent.size() > RECENT_SIZE) {
+                recent.removeLast();
+            }
+        }
+        writer.enqueue(entry);
+    }
+
+    /**
+     * Most recent songs, newest first, without touching the database
+     * 最近播出的歌曲，最新的在前，不访问数据库
+     */
+    public List<HistoryEntry> getRecent(int limit) {
+        List<HistoryEntry> entries = new ArrayList<>(Math.min(limit, RECENT_SIZE));
+        synchronized (recent) {
+            Iterator<HistoryEntry> iterator = recent.iterator();
+            while (iterator.hasNext() && entries.size() < limit) {
+                entries.add(iterator.next());
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Write pending songs now, e.g. when the app goes to the background
+     * 立即写入待写的歌曲，例如应用进入后台时
+     */
+    public void flush() {
+        writer.flushNow();
+    }
+
+    private void loadRecent() {
+        List<HistoryEntry> stored = database.queryRecent(RECENT_SIZE);
+        synchronized (recent) {
+            for (HistoryEntry entry : stored) {
+                if (recent.size() >= RECENT_SIZE) {
+                    break;
+                }
+                HistoryEntry oldest = recent.peekLast();
+                if (oldest == null || !isSameAiring(oldest, entry)) {
+                    recent.addLast(entry);
+                }
+            }
+        }
+    }
+
+    private static boolean isSameAiring(HistoryEntry a, HistoryEntry b) {
+        if (a.getSongId() != b.getSongId()) {
+            return false;
+        }
+        if (a.getSongId() == 0) {
+            // ICY titles carry no timing, a repeat of the newest one is the same airing
+            // ICY 标题没有时间信息，与最新一条相同即视为同一次播出
+            return a.getTitle() != null && a.getTitle().equals(b.getTitle());
+        }
+        return Math.abs(a.getAiredAt() - b.getAiredAt()) < SAME_AIRING_MS;
+    }
+}
@@ -0,0 +1,135 @@
+package net.hearnsoft.gensokyoradio.trd.model;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SQLite storage for the song history, only used from the history writer thread
+ * 歌曲历史的 SQLite 存储，仅在历史写入线程使用
+ */
+class SongHistoryDatabase extends SQLiteOpenHelper implements SongHistoryWriter.Store {
+
+    private static final String NAME = "history.db";
+    private static final int VERSION = 1;
+    private static final String TABLE = "history";
+    // Air times of the same airing differ by this much at most between sources and restarts
+    // 同一次播出在不同来源与重启之间的播出时间误差上限
+    private static final long SAME_AIRING_MS = 60 * 1000;
+
+    private final int maxRows;
+    private final long maxAgeMs;
+
+    /**
+     * @param maxRows rows kept after each flush
+     * @param maxAgeMs entries aired longer ago than this are dropped
+     */
+    SongHistoryDatabase(Context context, int maxRows, long maxAgeMs) {
+        super(context, NAME, null, VERSION);
+        this.maxRows = maxRows;
+        this.maxAgeMs = maxAgeMs;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " ("
+                + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "song_id INTEGER NOT NULL, "
+                + "title TEXT, "
+                + "artist TEXT, "
+                + "album TEXT, "
+                + "circle TEXT, "
+                + "year TEXT, "
+                + "album_art TEXT, "
+                + "aired_at INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX idx_history_aired_at ON " + TABLE + " (aired_at)");
+        db.execSQL("CREATE INDEX idx_history_song_id ON " + TABLE + " (song_id, aired_at)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE);
+        onCreate(db);
+    }
+
+    @Override
+    public void insert(List<HistoryEntry> batch) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            SQLiteStatement statement = db.compileStatement("INSERT INTO " + TABLE
+                    + " (song_id, title, artist, album, circle, year, album_art, aired_at)"
+                    + " VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+            SQLiteStatement existing = db.compileStatement("SELECT COUNT(*) FROM " + TABLE
+                    + " WHERE song_id = ? AND aired_at BETWEEN ? AND ?");
+            for (HistoryEntry entry : batch) {
+                if (entry.getSongId() != 0) {
+                    // The socket repeats the current song after every reconnect
+                    // 每次重连后 WebSocket 都会重复推送当前歌曲
+                    existing.bindLong(1, entry.getSongId());
+                    existing.bindLong(2, entry.getAiredAt() - SAME_AIRING_MS);
+                    existing.bindLong(3, entry.getAiredAt() + SAME_AIRING_MS);
+                    if (existing.simpleQueryForLong() > 0) {
+                        continue;
+                    }
+                }
+                statement.clearBindings();
+                statement.bindLong(1, entry.getSongId());
+                bindText(statement, 2, entry.getTitle());
+                bindText(statement, 3, entry.getArtist());
+                bindText(statement, 4, entry.getAlbum());
+                bindText(statement, 5, entry.getCircle());
+                bindText(statement, 6, entry.getYear());
+                bindText(statement, 7, entry.getAlbumArt());
+                statement.bindLong(8, entry.getAiredAt());
+                statement.executeInsert();
+            }
+            statement.close();
+            existing.close();
+            prune(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Newest entries first
+     * 按时间倒序返回最近的记录
+     */
+    List<HistoryEntry> queryRecent(int limit) {
+        List<HistoryEntry> entries = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE,
+                new String[]{"song_id", "title", "artist", "album", "circle", "year", "album_art", "aired_at"},
+                null, null, null, null, "aired_at DESC", String.valueOf(limit))) {
+            while (cursor.moveToNext()) {
+                entries.add(new HistoryEntry(cursor.getInt(0), cursor.getString(1), cursor.getString(2),
+                        cursor.getString(3), cursor.getString(4), cursor.getString(5),
+                        cursor.getString(6), cursor.getLong(7)));
+            }
+        }
+        return entries;
+    }
+
+    private void prune(SQLiteDatabase db) {
+        db.delete(TABLE, "aired_at < ?",
+                new String[]{String.valueOf(System.currentTimeMillis() - maxAgeMs)});
+        // Rows are appended in air order, so the id cut-off keeps the newest maxRows
+        // 记录按播出顺序追加，按 id 截断即可保留最新的 maxRows 条
+        db.execSQL("DELETE FROM " + TABLE + " WHERE _id <= (SELECT _id FROM " + TABLE
+                + " ORDER BY _id DESC LIMIT 1 OFFSET " + maxRows + ")");
+    }
+
+    private static void bindText(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package net.hearnsoft.gensokyoradio.trd.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects history entries and writes them in batches on a background thread
+ * 收集历史记录并在后台线程批量写入
+ * <p>
+ * {@link #enqueue(HistoryEntry)} never blocks, so it is safe on the WebSocket
+ * and main threads. A flush is scheduled after a short delay, or right away
+ * once a full batch is waiting, and hands everything pending to the store in
+ * one call, which the store wraps in a single transaction.
+ */
+public class SongHistoryWriter {
+
+    public interface Store {
+        /**
+         * Insert the batch in one transaction, called on the writer thread
+         * 在一个事务中插入整批记录，在写入线程调用
+         */
+        void insert(List<HistoryEntry> batch);
+    }
+
+    private final Store store;
+    private final ScheduledExecutorService executor;
+    private final long flushDelayMs;
+    private final int maxBatch;
+    private final ConcurrentLinkedQueue<HistoryEntry> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    /**
+     * @param executor single thread executor, also the only thread touching the store
+     */
+    public SongHistoryWriter(Store store, ScheduledExecutorService executor, long flushDelayMs, int maxBatch) {
+        this.store = store;
+        this.executor = executor;
+        this.flushDelayMs = flushDelayMs;
+        this.maxBatch = maxBatch;
+    }
+
+    public void enqueue(HistoryEntry entry) {
+        pending.add(entry);
+        if (pendingCount.incrementAndGet() >= maxBatch) {
+            executor.execute(this::flush);
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            executor.schedule(this::flush, flushDelayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Write everything pending now, e.g. before the process may be killed
+     * 立即写入所有待写记录，例如进程可能被终止之前
+     */
+    public void flushNow() {
+        executor.execute(this::flush);
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+        List<HistoryEntry> batch = new ArrayList<>();
+        HistoryEntry entry;
+        while ((entry = pending.poll()) != null) {
+            batch.add(entry);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        pendingCount.addAndGet(-batch.size());
+        store.insert(batch);
+    }
+}
@@ -0,0 +1,100 @@
+package net.hearnsoft.gensokyoradio.trd.player;
+
+/**
+ * Buffering profiles for the live stream
+ * 直播流的缓冲配置
+ * <p>
+ * Icecast only bursts a few seconds ahead on connect and then delivers in
+ * real time, so the forward buffer mostly grows while recovering from a
+ * stall. The start thresholds decide how fast audio begins, the rebuffer
+ * threshold how much margin we rebuild before resuming after a stall.
+ */
+public enum BufferProfile {
+
+    /**
+     * Pick a profile from the network type
+     * 根据网络类型自动选择
+     */
+    AUTO(0, 0, 0, 0, 0),
+    /**
+     * Small start threshold, for stable Wi-Fi and wired networks
+     * 起播阈值小，适合稳定的 Wi-Fi 与有线网络
+     */
+    LOW_LATENCY(5_000, 15_000, 500, 2_000, 0),
+    BALANCED(15_000, 30_000, 1_500, 4_000, 0),
+    /**
+     * Large buffers and back buffer, for flaky transit connections
+     * 大缓冲与回退缓冲，适合不稳定的通勤网络
+     */
+    RESILIENT(30_000, 120_000, 2_500, 8_000, 60_000);
+
+    private final int minBufferMs;
+    private final int maxBufferMs;
+    private final int bufferForPlaybackMs;
+    private final int bufferForPlaybackAfterRebufferMs;
+    private final int backBufferMs;
+
+    BufferProfile(int minBufferMs, int maxBufferMs, int bufferForPlaybackMs,
+                  int bufferForPlaybackAfterRebufferMs, int backBufferMs) {
+        this.minBufferMs = minBufferMs;
+        this.maxBufferMs = maxBufferMs;
+        this.bufferForPlaybackMs = bufferForPlaybackMs;
+        this.bufferForPlaybackAfterRebufferMs = bufferForPlaybackAfterRebufferMs;
+        this.backBufferMs = backBufferMs;
+    }
+
+    /**
+     * Resolve AUTO to a concrete profile, other profiles are returned as is
+     * 将 AUTO 解析为具体配置，其它配置原样返回
+     * @param networkType as returned by NetworkMonitor.getNetworkType
+     */
+    public BufferProfile resolve(String networkType) {
+        if (this != AUTO) {
+            return this;
+        }
+        switch (networkType) {
+            case "wifi":
+            case "ethernet":
+                return LOW_LATENCY;
+            case "cellular":
+                return RESILIENT;
+            default:
+                return BALANCED;
+        }
+    }
+
+    /**
+     * Parse a stored profile name, falling back to AUTO
+     * 解析保存的配置名称，无法识别时回退为 AUTO
+     */
+    public static BufferProfile fromName(String name) {
+        if (name != null) {
+            for (BufferProfile profile : values()) {
+                if (profile.name().equals(name)) {
+                    return profile;
+                }
+            }
+        }
+        return AUTO;
+    }
+
+    public int getMinBufferMs() {
+        return minBufferMs;
+    }
+
+    public int getMaxBufferMs() {
+        return maxBufferMs;
+    }
+
+    public int getBufferForPlaybackMs() {
+        return bufferForPlaybackMs;
+    }
+
+    public int getBufferForPlaybackAfterRebufferMs() {
+        return bufferForPlaybackAfterRebufferMs;
+    }
+
+    public int getBackBufferMs() {
+        return backBufferMs;
+    }
+}
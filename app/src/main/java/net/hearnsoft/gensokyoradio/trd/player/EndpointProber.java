@@ -0,0 +1,210 @@
+package net.hearnsoft.gensokyoradio.trd.player;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Probes stream endpoints concurrently and ranks them by time to first byte
+ * 并发探测各串流端点，按首字节时间排序
+ */
+public class EndpointProber {
+
+    private static final long PROBE_TIMEOUT_MS = 3 * 1000;
+
+    public static class Result {
+        private final int index;
+        private final String url;
+        private long callStartNs;
+        private long dnsStartNs;
+        private long connectStartNs;
+        private long secureStartNs;
+        private long dnsMs = -1;
+        private long connectMs = -1;
+        private long tlsMs = -1;
+        private long ttfbMs = -1;
+
+        private Result(int index, String url) {
+            this.index = index;
+            this.url = url;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public long getDnsMs() {
+            return dnsMs;
+        }
+
+        public long getConnectMs() {
+            return connectMs;
+        }
+
+        /**
+         * @return TLS handshake time, or -1 for plain HTTP
+         */
+        public long getTlsMs() {
+            return tlsMs;
+        }
+
+        /**
+         * @return time from call start to the first body byte, or -1 if the probe failed
+         */
+        public long getTtfbMs() {
+            return ttfbMs;
+        }
+
+        public boolean isReachable() {
+            return ttfbMs >= 0;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return url + " dns=" + dnsMs + " connect=" + connectMs + " tls=" + tlsMs + " ttfb=" + ttfbMs;
+        }
+    }
+
+    private static class ProbeListener extends EventListener {
+        private final Result result;
+
+        ProbeListener(Result result) {
+            this.result = result;
+        }
+
+        @Override
+        public void callStart(@NonNull Call call) {
+            result.callStartNs = System.nanoTime();
+        }
+
+        @Override
+        public void dnsStart(@NonNull Call call, @NonNull String domainName) {
+            result.dnsStartNs = System.nanoTime();
+        }
+
+        @Override
+        public void dnsEnd(@NonNull Call call, @NonNull String domainName, @NonNull List<InetAddress> inetAddressList) {
+            result.dnsMs = elapsedMs(result.dnsStartNs);
+        }
+
+        @Override
+        public void connectStart(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress, @NonNull Proxy proxy) {
+            result.connectStartNs = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectStart(@NonNull Call call) {
+            result.secureStartNs = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectEnd(@NonNull Call call, Handshake handshake) {
+            result.tlsMs = elapsedMs(result.secureStartNs);
+        }
+
+        @Override
+        public void connectEnd(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress,
+                               @NonNull Proxy proxy, Protocol protocol) {
+            result.connectMs = elapsedMs(result.connectStartNs);
+        }
+    }
+
+    private final OkHttpClient client;
+
+    public EndpointProber(OkHttpClient client) {
+        // Fresh connections only, a pooled connection would hide connect and TLS costs
+        // 仅使用新连接，复用连接池会掩盖建连与 TLS 耗时
+        this.client = client.newBuilder()
+                .connectionPool(new ConnectionPool(0, 1, TimeUnit.SECONDS))
+                .callTimeout(PROBE_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .eventListenerFactory(call -> new ProbeListener(call.request().tag(Result.class)))
+                .build();
+    }
+
+    /**
+     * Probe all endpoints at once
+     * 同时探测所有端点
+     * @return results ordered fastest first, unreachable endpoints last
+     */
+    public CompletableFuture<List<Result>> probe(String[] urls) {
+        CompletableFuture<List<Result>> future = new CompletableFuture<>();
+        List<Result> results = new ArrayList<>(urls.length);
+        AtomicInteger remaining = new AtomicInteger(urls.length);
+        for (int i = 0; i < urls.length; i++) {
+            Result result = new Result(i, urls[i]);
+            results.add(result);
+            Request request = new Request.Builder()
+                    .url(urls[i])
+                    .tag(Result.class, result)
+                    .build();
+            client.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                    finish();
+                }
+
+                @Override
+                public void onResponse(@NonNull Call call, @NonNull Response response) {
+                    // A live stream never ends, read the first byte and hang up
+                    // 直播流不会结束，读到第一个字节即断开
+                    try (ResponseBody body = response.body()) {
+                        if (response.isSuccessful() && body != null && body.source().request(1)) {
+                            result.ttfbMs = elapsedMs(result.callStartNs);
+                        }
+                    } catch (IOException ignored) {
+                    }
+                    finish();
+                }
+
+                private void finish() {
+                    if (remaining.decrementAndGet() == 0) {
+                        future.complete(rank(results));
+                    }
+                }
+            });
+        }
+        if (urls.length == 0) {
+            future.complete(results);
+        }
+        return future;
+    }
+
+    private static List<Result> rank(List<Result> results) {
+        Collections.sort(results, (a, b) -> {
+            if (a.isReachable() != b.isReachable()) {
+                return a.isReachable() ? -1 : 1;
+            }
+            return Long.compare(a.ttfbMs, b.ttfbMs);
+        });
+        return results;
+    }
+
+    private static long elapsedMs(long startNs) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs);
+    }
+}
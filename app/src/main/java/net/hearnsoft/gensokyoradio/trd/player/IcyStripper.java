@@ -0,0 +1,57 @@
+package net.hearnsoft.gensokyoradio.trd.player;
+
+/**
+ * Removes interleaved ICY metadata blocks from a Shoutcast/Icecast stream
+ * 去除 Shoutcast/Icecast 串流中穿插的 ICY 元数据块
+ * <p>
+ * After every metaInt audio bytes the server sends one length byte n followed
+ * by n * 16 bytes of metadata. Only the audio runs are handed to the sink, the
+ * input array is never modified.
+ */
+public class IcyStripper {
+
+    public interface Sink {
+        void write(byte[] data, int offset, int length);
+    }
+
+    private final int metaInt;
+    private int audioRemaining;
+    private int metaRemaining = 0;
+
+    /**
+     * @param metaInt value of the icy-metaint response header, 0 or less if the stream has no metadata
+     */
+    public IcyStripper(int metaInt) {
+        this.metaInt = metaInt;
+        this.audioRemaining = metaInt;
+    }
+
+    public void process(byte[] data, int offset, int length, Sink sink) {
+        if (metaInt <= 0) {
+            sink.write(data, offset, length);
+            return;
+        }
+        int position = offset;
+        int end = offset + length;
+        while (position < end) {
+            if (metaRemaining > 0) {
+                int skip = Math.min(metaRemaining, end - position);
+                position += skip;
+                metaRemaining -= skip;
+                if (metaRemaining == 0) {
+                    audioRemaining = metaInt;
+                }
+            } else if (audioRemaining == 0) {
+                metaRemaining = (data[position++] & 0xff) * 16;
+                if (metaRemaining == 0) {
+                    audioRemaining = metaInt;
+                }
+            } else {
+                int count = Math.min(audioRemaining, end - position);
+                sink.write(data, position, count);
+                position += count;
+                audioRemaining -= count;
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package net.hearnsoft.gensokyoradio.trd.player;
+
+import net.hearnsoft.gensokyoradio.trd.model.NowPlayingSnapshot;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds a minimal ID3v2.3 tag from a now playing snapshot
+ * 根据正在播放快照生成精简的 ID3v2.3 标签
+ */
+public final class Id3TagWriter {
+
+    private Id3TagWriter() {
+    }
+
+    public static byte[] build(NowPlayingSnapshot snapshot) {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream(256);
+        writeTextFrame(frames, "TIT2", snapshot.getTitle());
+        writeTextFrame(frames, "TPE1", snapshot.getArtist());
+        writeTextFrame(frames, "TALB", snapshot.getAlbum());
+        // Circles are the closest thing to an album artist in doujin music
+        // 同人音乐中社团最接近专辑艺术家
+        writeTextFrame(frames, "TPE2", snapshot.getCircle());
+        writeTextFrame(frames, "TYER", snapshot.getYear());
+        int size = frames.size();
+        ByteArrayOutputStream tag = new ByteArrayOutputStream(10 + size);
+        tag.write('I');
+        tag.write('D');
+        tag.write('3');
+        tag.write(3);
+        tag.write(0);
+        tag.write(0);
+        // Tag size is syncsafe, 7 bits per byte
+        // 标签大小为 syncsafe 整数，每字节 7 位
+        tag.write((size >> 21) & 0x7f);
+        tag.write((size >> 14) & 0x7f);
+        tag.write((size >> 7) & 0x7f);
+        tag.write(size & 0x7f);
+        tag.write(frames.toByteArray(), 0, size);
+        return tag.toByteArray();
+    }
+
+    private static void writeTextFrame(ByteArrayOutputStream out, String id, String value) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        // UTF-16 with BOM, ID3v2.3 has no UTF-8 and titles are often Japanese
+        // 使用带 BOM 的 UTF-16，ID3v2.3 不支持 UTF-8，而标题常为日文
+        byte[] text = value.getBytes(StandardCharsets.UTF_16);
+        int size = 1 + text.length + 2;
+        out.write(id.getBytes(StandardCharsets.ISO_8859_1), 0, 4);
+        out.write((size >> 24) & 0xff);
+        out.write((size >> 16) & 0xff);
+        out.write((size >> 8) & 0xff);
+        out.write(size & 0xff);
+        out.write(0);
+        out.write(0);
+        out.write(1);
+        out.write(text, 0, text.length);
+        out.write(0);
+        out.write(0);
+    }
+}
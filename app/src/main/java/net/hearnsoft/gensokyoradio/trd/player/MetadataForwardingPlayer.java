@@ -0,0 +1,289 @@
+package net.hearnsoft.gensokyoradio.trd.player;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.media3.common.AudioAttributes;
+import androidx.media3.common.DeviceInfo;
+import androidx.media3.common.FlagSet;
+import androidx.media3.common.ForwardingPlayer;
+import androidx.media3.common.MediaItem;
+import androidx.media3.common.MediaMetadata;
+import androidx.media3.common.Metadata;
+import androidx.media3.common.PlaybackException;
+import androidx.media3.common.PlaybackParameters;
+import androidx.media3.common.Player;
+import androidx.media3.common.Timeline;
+import androidx.media3.common.TrackSelectionParameters;
+import androidx.media3.common.Tracks;
+import androidx.media3.common.VideoSize;
+import androidx.media3.common.text.Cue;
+import androidx.media3.common.text.CueGroup;
+import androidx.media3.common.util.UnstableApi;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Player wrapper handed to the MediaSession, overrides the media metadata
+ * 交给 MediaSession 的播放器包装，覆盖媒体元数据
+ * <p>
+ * Song changes only swap the metadata seen by the session and the notification,
+ * the playlist of the wrapped player is never touched, so the live stream keeps
+ * playing without rebuffering. Metadata the stream itself reports (e.g. ICY) is
+ * hidden while an override is set.
+ */
+@UnstableApi
+public class MetadataForwardingPlayer extends ForwardingPlayer {
+
+    private final CopyOnWriteArrayList<MetadataListener> listeners = new CopyOnWriteArrayList<>();
+    @Nullable
+    private MediaMetadata metadataOverride;
+
+    public MetadataForwardingPlayer(Player player) {
+        super(player);
+    }
+
+    /**
+     * Replace the metadata shown by the session, must be called on the application looper
+     * 替换会话显示的元数据，必须在应用主线程调用
+     */
+    public void setMetadataOverride(@Nullable MediaMetadata metadata) {
+        metadataOverride = metadata;
+        MediaMetadata current = getMediaMetadata();
+        Events events = new Events(new FlagSet.Builder().add(EVENT_MEDIA_METADATA_CHANGED).build());
+        for (MetadataListener listener : listeners) {
+            listener.delegate.onMediaMetadataChanged(current);
+            listener.delegate.onEvents(this, events);
+        }
+    }
+
+    @NonNull
+    @Override
+    public MediaMetadata getMediaMetadata() {
+        return metadataOverride != null ? metadataOverride : super.getMediaMetadata();
+    }
+
+    @Override
+    public void addListener(@NonNull Listener listener) {
+        MetadataListener wrapper = new MetadataListener(listener);
+        listeners.add(wrapper);
+        super.addListener(wrapper);
+    }
+
+    @Override
+    public void removeListener(@NonNull Listener listener) {
+        for (MetadataListener wrapper : listeners) {
+            if (wrapper.delegate.equals(listener)) {
+                listeners.remove(wrapper);
+                super.removeListener(wrapper);
+            }
+        }
+    }
+
+    /**
+     * Forwards every callback, deprecated ones included, but reports the overridden
+     * metadata and this player as the source of events
+     * 转发所有回调（包括已弃用的），但上报覆盖后的元数据，并以本播放器作为事件来源
+     */
+    @SuppressWarnings("deprecation")
+    private final class MetadataListener implements Listener {
+
+        private final Listener delegate;
+
+        private MetadataListener(Listener delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onMediaMetadataChanged(@NonNull MediaMetadata mediaMetadata) {
+            delegate.onMediaMetadataChanged(getMediaMetadata());
+        }
+
+        @Override
+        public void onEvents(@NonNull Player player, @NonNull Events events) {
+            // Listeners read state back from the player they are given, it must be the wrapper
+            // 监听器会从传入的播放器读取状态，必须传入包装后的播放器
+            delegate.onEvents(MetadataForwardingPlayer.this, events);
+        }
+
+        @Override
+        public void onTimelineChanged(@NonNull Timeline timeline, int reason) {
+            delegate.onTimelineChanged(timeline, reason);
+        }
+
+        @Override
+        public void onMediaItemTransition(@Nullable MediaItem mediaItem, int reason) {
+            delegate.onMediaItemTransition(mediaItem, reason);
+        }
+
+        @Override
+        public void onTracksChanged(@NonNull Tracks tracks) {
+            delegate.onTracksChanged(tracks);
+        }
+
+        @Override
+        public void onPlaylistMetadataChanged(@NonNull MediaMetadata mediaMetadata) {
+            delegate.onPlaylistMetadataChanged(mediaMetadata);
+        }
+
+        @Override
+        public void onIsLoadingChanged(boolean isLoading) {
+            delegate.onIsLoadingChanged(isLoading);
+        }
+
+        @Deprecated
+        @Override
+        public void onLoadingChanged(boolean isLoading) {
+            delegate.onLoadingChanged(isLoading);
+        }
+
+        @Override
+        public void onAvailableCommandsChanged(@NonNull Commands availableCommands) {
+            delegate.onAvailableCommandsChanged(availableCommands);
+        }
+
+        @Override
+        public void onTrackSelectionParametersChanged(@NonNull TrackSelectionParameters parameters) {
+            delegate.onTrackSelectionParametersChanged(parameters);
+        }
+
+        @Deprecated
+        @Override
+        public void onPlayerStateChanged(boolean playWhenReady, int playbackState) {
+            delegate.onPlayerStateChanged(playWhenReady, playbackState);
+        }
+
+        @Override
+        public void onPlaybackStateChanged(int playbackState) {
+            delegate.onPlaybackStateChanged(playbackState);
+        }
+
+        @Override
+        public void onPlayWhenReadyChanged(boolean playWhenReady, int reason) {
+            delegate.onPlayWhenReadyChanged(playWhenReady, reason);
+        }
+
+        @Override
+        public void onPlaybackSuppressionReasonChanged(int playbackSuppressionReason) {
+            delegate.onPlaybackSuppressionReasonChanged(playbackSuppressionReason);
+        }
+
+        @Override
+        public void onIsPlayingChanged(boolean isPlaying) {
+            delegate.onIsPlayingChanged(isPlaying);
+        }
+
+        @Override
+        public void onRepeatModeChanged(int repeatMode) {
+            delegate.onRepeatModeChanged(repeatMode);
+        }
+
+        @Override
+        public void onShuffleModeEnabledChanged(boolean shuffleModeEnabled) {
+            delegate.onShuffleModeEnabledChanged(shuffleModeEnabled);
+        }
+
+        @Override
+        public void onPlayerError(@NonNull PlaybackException error) {
+            delegate.onPlayerError(error);
+        }
+
+        @Override
+        public void onPlayerErrorChanged(@Nullable PlaybackException error) {
+            delegate.onPlayerErrorChanged(error);
+        }
+
+        @Deprecated
+        @Override
+        public void onPositionDiscontinuity(int reason) {
+            delegate.onPositionDiscontinuity(reason);
+        }
+
+        @Override
+        public void onPositionDiscontinuity(@NonNull PositionInfo oldPosition,
+                                            @NonNull PositionInfo newPosition, int reason) {
+            delegate.onPositionDiscontinuity(oldPosition, newPosition, reason);
+        }
+
+        @Override
+        public void onPlaybackParametersChanged(@NonNull PlaybackParameters playbackParameters) {
+            delegate.onPlaybackParametersChanged(playbackParameters);
+        }
+
+        @Override
+        public void onSeekBackIncrementChanged(long seekBackIncrementMs) {
+            delegate.onSeekBackIncrementChanged(seekBackIncrementMs);
+        }
+
+        @Override
+        public void onSeekForwardIncrementChanged(long seekForwardIncrementMs) {
+            delegate.onSeekForwardIncrementChanged(seekForwardIncrementMs);
+        }
+
+        @Override
+        public void onMaxSeekToPreviousPositionChanged(long maxSeekToPreviousPositionMs) {
+            delegate.onMaxSeekToPreviousPositionChanged(maxSeekToPreviousPositionMs);
+        }
+
+        @Override
+        public void onAudioSessionIdChanged(int audioSessionId) {
+            delegate.onAudioSessionIdChanged(audioSessionId);
+        }
+
+        @Override
+        public void onAudioAttributesChanged(@NonNull AudioAttributes audioAttributes) {
+            delegate.onAudioAttributesChanged(audioAttributes);
+        }
+
+        @Override
+        public void onVolumeChanged(float volume) {
+            delegate.onVolumeChanged(volume);
+        }
+
+        @Override
+        public void onSkipSilenceEnabledChanged(boolean skipSilenceEnabled) {
+            delegate.onSkipSilenceEnabledChanged(skipSilenceEnabled);
+        }
+
+        @Override
+        public void onDeviceInfoChanged(@NonNull DeviceInfo deviceInfo) {
+            delegate.onDeviceInfoChanged(deviceInfo);
+        }
+
+        @Override
+        public void onDeviceVolumeChanged(int volume, boolean muted) {
+            delegate.onDeviceVolumeChanged(volume, muted);
+        }
+
+        @Override
+        public void onVideoSizeChanged(@NonNull VideoSize videoSize) {
+            delegate.onVideoSizeChanged(videoSize);
+        }
+
+        @Override
+        public void onSurfaceSizeChanged(int width, int height) {
+            delegate.onSurfaceSizeChanged(width, height);
+        }
+
+        @Override
+        public void onRenderedFirstFrame() {
+            delegate.onRenderedFirstFrame();
+        }
+
+        @Deprecated
+        @Override
+        public void onCues(@NonNull List<Cue> cues) {
+            delegate.onCues(cues);
+        }
+
+        @Override
+        public void onCues(@NonNull CueGroup cueGroup) {
+            delegate.onCues(cueGroup);
+        }
+
+        @Override
+        public void onMetadata(@NonNull Metadata metadata) {
+            delegate.onMetadata(metadata);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package net.hearnsoft.gensokyoradio.trd.player;
+
+import androidx.annotation.NonNull;
+import androidx.media3.common.PlaybackException;
+import androidx.media3.common.Player;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.exoplayer.analytics.AnalyticsListener;
+import androidx.media3.exoplayer.source.LoadEventInfo;
+import androidx.media3.exoplayer.source.MediaLoadData;
+
+import java.io.IOException;
+
+/**
+ * Feeds player analytics events into PlaybackMetrics
+ * 将播放器分析事件写入 PlaybackMetrics
+ * <p>
+ * Bandwidth estimates are not used, they only arrive when a transfer ends; the
+ * service samples throughput itself, see {@link PlaybackMetrics#onThroughputSample}.
+ */
+@UnstableApi
+public class MetricsAnalyticsListener implements AnalyticsListener {
+
+    private final PlaybackMetrics metrics;
+
+    public MetricsAnalyticsListener(PlaybackMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void onPlayWhenReadyChanged(@NonNull EventTime eventTime, boolean playWhenReady, int reason) {
+        metrics.onPlayWhenReadyChanged(playWhenReady, eventTime.realtimeMs);
+    }
+
+    @Override
+    public void onIsPlayingChanged(@NonNull EventTime eventTime, boolean isPlaying) {
+        metrics.onIsPlayingChanged(isPlaying, eventTime.realtimeMs);
+    }
+
+    @Override
+    public void onPlaybackStateChanged(@NonNull EventTime eventTime, int state) {
+        metrics.onPlaybackStateChanged(state == Player.STATE_BUFFERING, state == Player.STATE_READY,
+                eventTime.realtimeMs);
+    }
+
+    @Override
+    public void onAudioDecoderInitialized(@NonNull EventTime eventTime, @NonNull String decoderName,
+                                          long initializedTimestampMs, long initializationDurationMs) {
+        metrics.onDecoderInitialized(initializationDurationMs);
+    }
+
+    @Override
+    public void onPlayerError(@NonNull EventTime eventTime, @NonNull PlaybackException error) {
+        metrics.onPlayerError();
+    }
+
+    @Override
+    public void onLoadError(@NonNull EventTime eventTime, @NonNull LoadEventInfo loadEventInfo,
+                            @NonNull MediaLoadData mediaLoadData, @NonNull IOException error,
+                            boolean wasCanceled) {
+        metrics.onLoadError();
+    }
+}
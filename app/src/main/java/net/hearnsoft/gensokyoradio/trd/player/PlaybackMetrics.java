@@ -0,0 +1,282 @@
+package net.hearnsoft.gensokyoradio.trd.player;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Playback quality-of-experience counters and fixed-size histograms
+ * 播放体验指标：计数器与固定大小的直方图
+ * <p>
+ * Everything is kept in primitive arrays so recording never allocates.
+ * Events arrive from the player's application thread, reads come from the UI.
+ */
+public class PlaybackMetrics {
+
+    /**
+     * Histogram with fixed bucket upper bounds, the last bucket catches everything above
+     * 固定桶上界的直方图，最后一个桶容纳超出上界的所有值
+     */
+    public static class Histogram {
+        private final long[] bounds;
+        private final long[] counts;
+        private long count = 0;
+        private long sum = 0;
+        private long max = 0;
+
+        public Histogram(long... bounds) {
+            this.bounds = bounds;
+            this.counts = new long[bounds.length + 1];
+        }
+
+        void record(long value) {
+            int bucket = 0;
+            while (bucket < bounds.length && value > bounds[bucket]) {
+                bucket++;
+            }
+            counts[bucket]++;
+            count++;
+            sum += value;
+            max = Math.max(max, value);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMean() {
+            return count > 0 ? sum / count : 0;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Upper bound of the bucket holding the given percentile
+         * 给定百分位所在桶的上界
+         * @param percentile 0 to 100
+         */
+        public long getPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(count * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < bounds.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(bounds[i], max);
+                }
+            }
+            return max;
+        }
+
+        void write(JsonWriter writer) throws IOException {
+            writer.beginObject();
+            writer.name("count").value(count);
+            writer.name("mean").value(getMean());
+            writer.name("p50").value(getPercentile(50));
+            writer.name("p90").value(getPercentile(90));
+            writer.name("max").value(max);
+            writer.name("bounds").beginArray();
+            for (long bound : bounds) {
+                writer.value(bound);
+            }
+            writer.endArray();
+            writer.name("counts").beginArray();
+            for (long bucket : counts) {
+                writer.value(bucket);
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+    }
+
+    private final Histogram timeToFirstAudioMs = new Histogram(100, 250, 500, 1000, 2000, 4000, 8000, 16000);
+    private final Histogram resumeLatencyMs = new Histogram(100, 250, 500, 1000, 2000, 4000, 8000, 16000);
+    private final Histogram stallMs = new Histogram(250, 500, 1000, 2000, 4000, 8000, 16000, 32000);
+    private final Histogram recoveryMs = new Histogram(1000, 2000, 4000, 8000, 16000, 32000, 64000, 128000);
+    private final Histogram bitrateKbps = new Histogram(32, 64, 96, 128, 192, 256, 320, 512, 1024);
+    private final Histogram decoderInitMs = new Histogram(5, 10, 25, 50, 100, 250, 500, 1000);
+    private long playbackStarts = 0;
+    private long rebufferCount = 0;
+    private long totalStallMs = 0;
+    private long totalRecoveryMs = 0;
+    private long bytesLoaded = 0;
+    private long playerErrors = 0;
+    private long loadErrors = 0;
+    private boolean playWhenReady = false;
+    private boolean wasReady = false;
+    private long playRequestedAt = -1;
+    private long stallStartedAt = -1;
+
+    public synchronized void onPlayWhenReadyChanged(boolean playWhenReady, long nowMs) {
+        this.playWhenReady = playWhenReady;
+        if (playWhenReady) {
+            playRequestedAt = nowMs;
+        } else {
+            // A pause is not a stall, and a pending start no longer counts
+            // 暂停不算卡顿，未完成的起播也不再计入
+            playRequestedAt = -1;
+            endStall(nowMs);
+        }
+    }
+
+    public synchronized void onIsPlayingChanged(boolean isPlaying, long nowMs) {
+        if (isPlaying && playRequestedAt >= 0) {
+            timeToFirstAudioMs.record(nowMs - playRequestedAt);
+            playbackStarts++;
+            playRequestedAt = -1;
+        }
+    }
+
+    /**
+     * Time from a resume request until audio was playing again
+     * 从请求恢复播放到重新出声的耗时
+     */
+    public synchronized void onResumeLatency(long durationMs) {
+        resumeLatencyMs.record(durationMs);
+    }
+
+    public synchronized void onPlaybackStateChanged(boolean buffering, boolean ready, long nowMs) {
+        if (buffering && wasReady && playWhenReady) {
+            rebufferCount++;
+            stallStartedAt = nowMs;
+        } else if (!buffering) {
+            endStall(nowMs);
+        }
+        wasReady = ready;
+    }
+
+    /**
+     * Automatic recovery finished, from the first error until the player was ready again
+     * 自动恢复完成，从首次出错到播放器重新就绪
+     */
+    public synchronized void onRecovered(long durationMs) {
+        recoveryMs.record(durationMs);
+        totalRecoveryMs += durationMs;
+    }
+
+    /**
+     * Periodic throughput sample, the stream is one endless transfer so it is measured from the bytes
+     * 周期性的吞吐量样本，串流是一个永不结束的传输，因此按字节数测量
+     * @param totalBytes stream bytes received so far
+     * @param bitrate bits per second over the last interval, or -1 if there is no valid sample
+     */
+    public synchronized void onThroughputSample(long totalBytes, long bitrate) {
+        bytesLoaded = Math.max(bytesLoaded, totalBytes);
+        if (bitrate > 0) {
+            bitrateKbps.record(bitrate / 1000);
+        }
+    }
+
+    public synchronized void onDecoderInitialized(long durationMs) {
+        decoderInitMs.record(durationMs);
+    }
+
+    public synchronized void onPlayerError() {
+        playerErrors++;
+    }
+
+    public synchronized void onLoadError() {
+        loadErrors++;
+    }
+
+    private void endStall(long nowMs) {
+        if (stallStartedAt >= 0) {
+            long duration = nowMs - stallStartedAt;
+            stallMs.record(duration);
+            totalStallMs += duration;
+            stallStartedAt = -1;
+        }
+    }
+
+    public synchronized long getTimeToFirstAudioP50Ms() {
+        return timeToFirstAudioMs.getPercentile(50);
+    }
+
+    public synchronized long getTimeToFirstAudioP90Ms() {
+        return timeToFirstAudioMs.getPercentile(90);
+    }
+
+    public synchronized long getResumeLatencyP50Ms() {
+        return resumeLatencyMs.getPercentile(50);
+    }
+
+    public synchronized long getPlaybackStarts() {
+        return playbackStarts;
+    }
+
+    public synchronized long getRebufferCount() {
+        return rebufferCount;
+    }
+
+    public synchronized long getTotalStallMs() {
+        return totalStallMs;
+    }
+
+    public synchronized long getRecoveryCount() {
+        return recoveryMs.getCount();
+    }
+
+    public synchronized long getTotalRecoveryMs() {
+        return totalRecoveryMs;
+    }
+
+    public synchronized long getRecoveryMaxMs() {
+        return recoveryMs.getMax();
+    }
+
+    public synchronized long getBitrateP50Kbps() {
+        return bitrateKbps.getPercentile(50);
+    }
+
+    public synchronized long getBytesLoaded() {
+        return bytesLoaded;
+    }
+
+    public synchronized long getDecoderInitMeanMs() {
+        return decoderInitMs.getMean();
+    }
+
+    public synchronized long getPlayerErrors() {
+        return playerErrors;
+    }
+
+    public synchronized long getLoadErrors() {
+        return loadErrors;
+    }
+
+    /**
+     * Export everything as a single JSON object
+     * 将所有指标导出为一个 JSON 对象
+     */
+    public synchronized void writeJson(Writer out) throws IOException {
+        JsonWriter writer = new JsonWriter(out);
+        writer.setIndent("  ");
+        writer.beginObject();
+        writer.name("playbackStarts").value(playbackStarts);
+        writer.name("rebufferCount").value(rebufferCount);
+        writer.name("totalStallMs").value(totalStallMs);
+        writer.name("totalRecoveryMs").value(totalRecoveryMs);
+        writer.name("bytesLoaded").value(bytesLoaded);
+        writer.name("playerErrors").value(playerErrors);
+        writer.name("loadErrors").value(loadErrors);
+        writer.name("timeToFirstAudioMs");
+        timeToFirstAudioMs.write(writer);
+        writer.name("resumeLatencyMs");
+        resumeLatencyMs.write(writer);
+        writer.name("stallMs");
+        stallMs.write(writer);
+        writer.name("recoveryMs");
+        recoveryMs.write(writer);
+        writer.name("bitrateKbps");
+        bitrateKbps.write(writer);
+        writer.name("decoderInitMs");
+        decoderInitMs.write(writer);
+        writer.endObject();
+        writer.flush();
+    }
+}
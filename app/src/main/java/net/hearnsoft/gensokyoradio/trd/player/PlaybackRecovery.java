@@ -0,0 +1,120 @@
+package net.hearnsoft.gensokyoradio.trd.player;
+
+import androidx.media3.common.PlaybackException;
+
+import net.hearnsoft.gensokyoradio.trd.utils.Backoff;
+
+/**
+ * Decides how to recover from a fatal player error and measures how long recovery takes
+ * 决定如何从播放器致命错误中恢复，并统计恢复耗时
+ * <p>
+ * Transient load errors are already retried inside the player by
+ * {@link StreamLoadErrorHandlingPolicy} while the buffer keeps playing, so an
+ * error that reaches us means the buffer ran dry or the stream is unusable.
+ * Not thread-safe, call it from the main thread only.
+ */
+public class PlaybackRecovery {
+
+    // Give up after this many failed attempts while the network was up
+    // 网络正常时连续失败此次数后放弃
+    private static final int MAX_ATTEMPTS = 10;
+
+    public enum Action {
+        /**
+         * Re-prepare on the same stream after a backoff delay
+         * 退避后在同一串流上重新准备
+         */
+        RETRY,
+        /**
+         * The server rejected us, retry on another mirror
+         * 服务器拒绝了请求，换一个镜像重试
+         */
+        SWITCH_MIRROR,
+        /**
+         * Retrying can't help, stop and leave it to the user
+         * 重试无济于事，停止并交由用户处理
+         */
+        GIVE_UP
+    }
+
+    private final Backoff backoff;
+    private long recoveryStartedAt = -1;
+    private int attempts = 0;
+
+    public PlaybackRecovery() {
+        this(new Backoff(1000, 30 * 1000));
+    }
+
+    public PlaybackRecovery(Backoff backoff) {
+        this.backoff = backoff;
+    }
+
+    /**
+     * @param errorCode {@link PlaybackException#errorCode}
+     * @param networkValidated whether a validated network is available, offline failures don't count
+     */
+    public Action onError(int errorCode, boolean networkValidated, long nowMs) {
+        if (recoveryStartedAt < 0) {
+            recoveryStartedAt = nowMs;
+        }
+        Action action = classify(errorCode);
+        if (action == Action.GIVE_UP) {
+            reset();
+            return action;
+        }
+        if (networkValidated && ++attempts > MAX_ATTEMPTS) {
+            reset();
+            return Action.GIVE_UP;
+        }
+        return networkValidated ? action : Action.RETRY;
+    }
+
+    public long nextRetryDelayMs() {
+        return backoff.nextDelayMs();
+    }
+
+    public boolean isRecovering() {
+        return recoveryStartedAt >= 0;
+    }
+
+    /**
+     * Playback is ready again
+     * 播放已恢复
+     * @return how long the recovery took, or -1 if we were not recovering
+     */
+    public long onRecovered(long nowMs) {
+        if (recoveryStartedAt < 0) {
+            return -1;
+        }
+        long durationMs = nowMs - recoveryStartedAt;
+        reset();
+        return durationMs;
+    }
+
+    public void reset() {
+        recoveryStartedAt = -1;
+        attempts = 0;
+        backoff.reset();
+    }
+
+    static Action classify(int errorCode) {
+        switch (errorCode) {
+            case PlaybackException.ERROR_CODE_IO_BAD_HTTP_STATUS:
+            case PlaybackException.ERROR_CODE_IO_FILE_NOT_FOUND:
+            case PlaybackException.ERROR_CODE_IO_INVALID_HTTP_CONTENT_TYPE:
+            case PlaybackException.ERROR_CODE_IO_CLEARTEXT_NOT_PERMITTED:
+                return Action.SWITCH_MIRROR;
+            case PlaybackException.ERROR_CODE_IO_NO_PERMISSION:
+            case PlaybackException.ERROR_CODE_DECODING_FORMAT_EXCEEDS_CAPABILITIES:
+            case PlaybackException.ERROR_CODE_DECODING_FORMAT_UNSUPPORTED:
+            case PlaybackException.ERROR_CODE_PARSING_CONTAINER_UNSUPPORTED:
+                return Action.GIVE_UP;
+            default:
+                break;
+        }
+        // Network, timeouts, a malformed frame after joining mid-stream, decoder and
+        // audio track hiccups all go away with a fresh connection; DRM never applies
+        // 网络、超时、中途加入导致的帧损坏、解码器与 AudioTrack 故障在重新连接后即可恢复；DRM 错误无法恢复
+        return errorCode >= 6000 ? Action.GIVE_UP : Action.RETRY;
+    }
+}
@@ -0,0 +1,103 @@
+package net.hearnsoft.gensokyoradio.trd.player;
+
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.TransferListener;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Passes the player's upstream through unchanged while teeing the audio to a StreamRecorder
+ * 原样转发播放器的上游数据，同时将音频分流给 StreamRecorder
+ * <p>
+ * The player asks for ICY metadata, so the upstream bytes carry metadata
+ * blocks; they are stripped from the copy using the icy-metaint header.
+ */
+@UnstableApi
+public class RecordingDataSource implements DataSource {
+
+    public static class Factory implements DataSource.Factory {
+        private final DataSource.Factory upstreamFactory;
+        private final StreamRecorder recorder;
+
+        public Factory(DataSource.Factory upstreamFactory, StreamRecorder recorder) {
+            this.upstreamFactory = upstreamFactory;
+            this.recorder = recorder;
+        }
+
+        @NonNull
+        @Override
+        public DataSource createDataSource() {
+            return new RecordingDataSource(upstreamFactory.createDataSource(), recorder);
+        }
+    }
+
+    private final DataSource upstream;
+    private final StreamRecorder recorder;
+    private IcyStripper stripper;
+
+    public RecordingDataSource(DataSource upstream, StreamRecorder recorder) {
+        this.upstream = upstream;
+        this.recorder = recorder;
+    }
+
+    @Override
+    public void addTransferListener(@NonNull TransferListener transferListener) {
+        upstream.addTransferListener(transferListener);
+    }
+
+    @Override
+    public long open(@NonNull DataSpec dataSpec) throws IOException {
+        long length = upstream.open(dataSpec);
+        stripper = new IcyStripper(parseMetaInt(upstream.getResponseHeaders()));
+        recorder.onStreamOpened();
+        return length;
+    }
+
+    @Override
+    public int read(@NonNull byte[] buffer, int offset, int length) throws IOException {
+        int read = upstream.read(buffer, offset, length);
+        if (read > 0 && recorder.isRecording()) {
+            stripper.process(buffer, offset, read, recorder);
+        }
+        return read;
+    }
+
+    @Nullable
+    @Override
+    public Uri getUri() {
+        return upstream.getUri();
+    }
+
+    @NonNull
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+        return upstream.getResponseHeaders();
+    }
+
+    @Override
+    public void close() throws IOException {
+        stripper = null;
+        upstream.close();
+    }
+
+    private static int parseMetaInt(Map<String, List<String>> headers) {
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            if ("icy-metaint".equalsIgnoreCase(entry.getKey()) && !entry.getValue().isEmpty()) {
+                try {
+                    return Integer.parseInt(entry.getValue().get(0).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,40 @@
+package net.hearnsoft.gensokyoradio.trd.player;
+
+import androidx.annotation.NonNull;
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.datasource.HttpDataSource;
+import androidx.media3.exoplayer.upstream.DefaultLoadErrorHandlingPolicy;
+
+/**
+ * Retries stream loads quickly inside the player so short outages are bridged by the buffer
+ * 在播放器内部快速重试串流加载，使短暂中断由缓冲区平滑过渡
+ */
+@UnstableApi
+public class StreamLoadErrorHandlingPolicy extends DefaultLoadErrorHandlingPolicy {
+
+    private static final int MIN_RETRY_COUNT = 6;
+    private static final long BASE_RETRY_DELAY_MS = 500;
+    private static final long MAX_RETRY_DELAY_MS = 4 * 1000;
+
+    public StreamLoadErrorHandlingPolicy() {
+        super(MIN_RETRY_COUNT);
+    }
+
+    @Override
+    public long getRetryDelayMsFor(@NonNull LoadErrorInfo loadErrorInfo) {
+        if (loadErrorInfo.exception instanceof HttpDataSource.InvalidResponseCodeException) {
+            int code = ((HttpDataSource.InvalidResponseCodeException) loadErrorInfo.exception).responseCode;
+            if (code >= 400 && code < 500) {
+                // Full or gone, fail fast so recovery can move to another mirror
+                // 服务器已满或不存在，快速失败以便切换镜像
+                return C.TIME_UNSET;
+            }
+        }
+        long delay = super.getRetryDelayMsFor(loadErrorInfo);
+        if (delay == C.TIME_UNSET) {
+            return delay;
+        }
+        return Math.min(BASE_RETRY_DELAY_MS << Math.min(loadErrorInfo.errorCount - 1, 10), MAX_RETRY_DELAY_MS);
+    }
+}
@@ -0,0 +1,332 @@
+package net.hearnsoft.gensokyoradio.trd.player;
+
+import net.hearnsoft.gensokyoradio.trd.model.NowPlayingSnapshot;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tees the raw stream bytes into one file per song, without re-encoding
+ * 将原始串流字节按歌曲分别写入文件，不重新编码
+ * <p>
+ * The I/O thread only copies into a small pool of direct buffers and never
+ * blocks: if the disk falls behind and the pool runs dry, bytes are dropped
+ * and counted instead of stalling playback. A single writer thread drains
+ * full buffers sequentially through a FileChannel.
+ * <p>
+ * Icecast bursts what it has queued when we connect, so the bytes we receive
+ * lag the live edge that the WebSocket reports. Cuts are pushed back by that
+ * burst, estimated from how much more than one second of audio arrived in the
+ * first second after connecting.
+ */
+public class StreamRecorder implements IcyStripper.Sink {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int POOL_SIZE = 8;
+    private static final long BURST_WINDOW_NS = TimeUnit.SECONDS.toNanos(1);
+
+    public interface Listener {
+        /**
+         * A song file was completed, called on the writer thread
+         * 一首歌的文件已写完，在写入线程调用
+         */
+        void onFileFinished(File file);
+    }
+
+    private static class Command {
+        static final Command STOP = new Command(null, null);
+
+        final ByteBuffer buffer;
+        final NowPlayingSnapshot startSong;
+
+        Command(ByteBuffer buffer, NowPlayingSnapshot startSong) {
+            this.buffer = buffer;
+            this.startSong = startSong;
+        }
+    }
+
+    private final File directory;
+    private final Listener listener;
+    private final ArrayBlockingQueue<ByteBuffer> pool = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final LinkedBlockingQueue<Command> commands = new LinkedBlockingQueue<>();
+    private volatile boolean recording = false;
+    private Thread writer;
+    private ByteBuffer current;
+    private long streamOffset = 0;
+    private long cutOffset = -1;
+    private NowPlayingSnapshot cutSong;
+    private long byteRate = 16_000;
+    private long openedAtNs = 0;
+    private long bytesSinceOpen = 0;
+    private long burstBytes = 0;
+    private long droppedBytes = 0;
+
+    public StreamRecorder(File directory, Listener listener) {
+        this.directory = directory;
+        this.listener = listener;
+        for (int i = 0; i < POOL_SIZE; i++) {
+            pool.add(ByteBuffer.allocateDirect(BUFFER_SIZE));
+        }
+    }
+
+    public boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * Start a new file for the given song and begin recording
+     * 为指定歌曲创建新文件并开始录制
+     * @param song song currently on air, may be null
+     * @param byteRate stream bytes per second, used for cut compensation
+     */
+    public synchronized void start(NowPlayingSnapshot song, long byteRate) {
+        if (recording) {
+            return;
+        }
+        if (writer != null) {
+            // Let the previous session close its file first
+            // 先让上一次录制关闭其文件
+            try {
+                writer.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (writer.isAlive()) {
+                // Still writing the previous session, sharing the queue would mix the files
+                // 仍在写入上一次录制，共用队列会混淆文件内容
+                return;
+            }
+        }
+        // An aborted session may have left bytes behind, they must not open the new file
+        // 中止的录制可能遗留数据，不能写入新文件的开头
+        if (current != null) {
+            recycle(current);
+            current = null;
+        }
+        recycleCommands();
+        this.byteRate = byteRate;
+        cutOffset = -1;
+        droppedBytes = 0;
+        commands.add(new Command(null, song));
+        // Set before the writer runs, so an immediate disk error can clear it
+        // 在写入线程运行前设置，以便立即发生的磁盘错误能将其清除
+        recording = true;
+        writer = new Thread(this::drain, "StreamRecorder");
+        writer.start();
+    }
+
+    /**
+     * Flush what is buffered and close the current file
+     * 写出已缓冲的数据并关闭当前文件
+     */
+    public synchronized void stop() {
+        if (!recording) {
+            return;
+        }
+        recording = false;
+        flushCurrent();
+        commands.add(Command.STOP);
+    }
+
+    /**
+     * A new connection was made, the stream restarts with a fresh burst
+     * 建立了新连接，串流重新开始并带有新的突发数据
+     */
+    public synchronized void onStreamOpened() {
+        openedAtNs = System.nanoTime();
+        bytesSinceOpen = 0;
+    }
+
+    /**
+     * The WebSocket reported a new song, cut once the stream catches up with it
+     * WebSocket 报告了新歌曲，待串流到达该位置时切分文件
+     */
+    public synchronized void onSongChanged(NowPlayingSnapshot song, long byteRate) {
+        this.byteRate = byteRate;
+        if (!recording) {
+            return;
+        }
+        cutOffset = streamOffset + burstBytes;
+        cutSong = song;
+    }
+
+    /**
+     * How many bytes were lost because the disk could not keep up
+     * 因磁盘写入跟不上而丢弃的字节数
+     */
+    public synchronized long getDroppedBytes() {
+        return droppedBytes;
+    }
+
+    /**
+     * Wrap a raw stream so that everything read from it is recorded
+     * 包装原始串流，使读取的数据都被录制
+     */
+    public InputStream tee(InputStream in) {
+        onStreamOpened();
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int value = super.read();
+                if (value >= 0 && recording) {
+                    write(new byte[]{(byte) value}, 0, 1);
+                }
+                return value;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read > 0 && recording) {
+                    write(b, off, read);
+                }
+                return read;
+            }
+        };
+    }
+
+    @Override
+    public synchronized void write(byte[] data, int offset, int length) {
+        if (!recording) {
+            return;
+        }
+        measureBurst(length);
+        if (cutOffset >= 0 && streamOffset + length > cutOffset) {
+            int before = (int) Math.max(0, cutOffset - streamOffset);
+            append(data, offset, before);
+            flushCurrent();
+            commands.add(new Command(null, cutSong));
+            cutOffset = -1;
+            cutSong = null;
+            offset += before;
+            length -= before;
+        }
+        append(data, offset, length);
+    }
+
+    private void measureBurst(int length) {
+        if (openedAtNs == 0 || System.nanoTime() - openedAtNs > BURST_WINDOW_NS) {
+            return;
+        }
+        bytesSinceOpen += length;
+        burstBytes = Math.max(0, bytesSinceOpen - byteRate);
+    }
+
+    private void append(byte[] data, int offset, int length) {
+        streamOffset += length;
+        while (length > 0) {
+            if (current == null) {
+                current = pool.poll();
+                if (current == null) {
+                    droppedBytes += length;
+                    return;
+                }
+            }
+            int count = Math.min(length, current.remaining());
+            current.put(data, offset, count);
+            offset += count;
+            length -= count;
+            if (!current.hasRemaining()) {
+                flushCurrent();
+            }
+        }
+    }
+
+    private void flushCurrent() {
+        if (current != null && current.position() > 0) {
+            current.flip();
+            commands.add(new Command(current, null));
+            current = null;
+        }
+    }
+
+    private void drain() {
+        FileChannel channel = null;
+        File file = null;
+        try {
+            while (true) {
+                Command command = commands.take();
+                if (command == Command.STOP) {
+                    break;
+                }
+                if (command.buffer != null) {
+                    try {
+                        if (channel != null) {
+                            while (command.buffer.hasRemaining()) {
+                                channel.write(command.buffer);
+                            }
+                        }
+                    } finally {
+                        recycle(command.buffer);
+                    }
+                } else {
+                    finish(channel, file);
+                    file = createFile(command.startSong);
+                    channel = new FileOutputStream(file).getChannel();
+                    if (command.startSong != null) {
+                        channel.write(ByteBuffer.wrap(Id3TagWriter.build(command.startSong)));
+                    }
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            // Stop recording on disk errors, playback is unaffected
+            // 磁盘出错时停止录制，不影响播放
+            recording = false;
+        }
+        finish(channel, file);
+        // Return buffers left behind by an aborted session to the pool
+        // 将中止的录制遗留的缓冲区归还到池中
+        recycleCommands();
+    }
+
+    private void recycleCommands() {
+        Command left;
+        while ((left = commands.poll()) != null) {
+            if (left.buffer != null) {
+                recycle(left.buffer);
+            }
+        }
+    }
+
+    private void recycle(ByteBuffer buffer) {
+        buffer.clear();
+        pool.offer(buffer);
+    }
+
+    private void finish(FileChannel channel, File file) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+        if (listener != null) {
+            listener.onFileFinished(file);
+        }
+    }
+
+    private File createFile(NowPlayingSnapshot song) {
+        String time = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ROOT).format(new Date());
+        String name = song != null ? time + " " + song.getArtist() + " - " + song.getTitle() : time;
+        name = name.replaceAll("[\\\\/:*?\"<>|\\p{Cntrl}]", "_");
+        if (name.length() > 120) {
+            name = name.substring(0, 120);
+        }
+        //noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();
+        return new File(directory, name + ".mp3");
+    }
+}
@@ -0,0 +1,247 @@
+package net.hearnsoft.gensokyoradio.trd.player;
+
+import net.hearnsoft.gensokyoradio.trd.beans.misc.StreamLevel;
+import net.hearnsoft.gensokyoradio.trd.beans.misc.Streams;
+
+/**
+ * Picks the stream level and mirror from throughput and rebuffer history
+ * 根据吞吐量与卡顿历史选择串流码率档位与镜像
+ * <p>
+ * A live Icecast stream is delivered at roughly its own bitrate once the
+ * initial burst is over, so the measured throughput mostly tells us whether
+ * we can keep up, not how much headroom there is. Down-switches therefore
+ * react to throughput falling short of the current bitrate or to repeated
+ * rebuffers, while up-switches only happen one step at a time after a long
+ * stable period. All switches are rate limited to avoid flapping.
+ * <p>
+ * Plain Java and not thread-safe, call it from the player thread only.
+ */
+public class StreamSelector {
+
+    // Throughput must cover the bitrate with this margin; a stream that keeps up
+    // arrives at about its own bitrate, so leave room for read jitter
+    // 吞吐量需要覆盖码率的余量；跟得上的串流到达速率约等于其码率，需为读取抖动留出余地
+    private static final float DOWN_MARGIN = 0.9f;
+    private static final float UP_MARGIN = 1.1f;
+    private static final long DOWN_HOLD_MS = 10 * 1000;
+    private static final long UP_HOLD_MS = 5 * 60 * 1000;
+    private static final long MIN_SWITCH_INTERVAL_MS = 30 * 1000;
+    private static final long REBUFFER_WINDOW_MS = 60 * 1000;
+    private static final int REBUFFER_DOWN_THRESHOLD = 2;
+    private static final int MIRROR_ERROR_THRESHOLD = 3;
+    private static final int MAX_LEVELS = 5;
+
+    private final String[] mirrors;
+    // bitrates[i] is the bitrate in kbps of level i + 1, 0 if unavailable
+    // bitrates[i] 为第 i + 1 档的码率（kbps），0 表示不可用
+    private final int[] bitrates = new int[MAX_LEVELS];
+    private final long[] rebufferTimes = new long[REBUFFER_DOWN_THRESHOLD];
+    private int rebufferIndex = 0;
+
+    private int mirror = 0;
+    private int level = 1;
+    private int mirrorErrors = 0;
+    private long lastSwitchAt = Long.MIN_VALUE / 2;
+    private long shortfallSince = -1;
+    private long stableSince = -1;
+
+    public StreamSelector(String[] mirrors) {
+        this.mirrors = mirrors;
+    }
+
+    /**
+     * Update available levels from ServerInfo.STREAMS
+     * 从 ServerInfo.STREAMS 更新可用的码率档位
+     */
+    public void setLevels(Streams streams) {
+        if (streams == null) {
+            return;
+        }
+        setBitrate(1, streams.getLv1());
+        setBitrate(2, streams.getLv2());
+        setBitrate(3, streams.getLv3());
+        setBitrate(4, streams.getLv4());
+        setBitrate(5, streams.getLv5());
+    }
+
+    private void setBitrate(int level, StreamLevel streamLevel) {
+        bitrates[level - 1] = streamLevel != null ? Math.max(streamLevel.getBitRate(), 0) : 0;
+    }
+
+    public String getCurrentUrl() {
+        return mirrors[mirror] + level + "/";
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * @return bitrate of the current level in kbps, or 0 if unknown
+     */
+    public int getBitrate() {
+        return bitrates[level - 1];
+    }
+
+    public int getMirror() {
+        return mirror;
+    }
+
+    /**
+     * Start from the given mirror, e.g. the fastest one found by probing
+     * 从指定镜像开始，例如探测得到的最快镜像
+     */
+    public void setMirror(int mirror) {
+        if (mirror >= 0 && mirror < mirrors.length) {
+            this.mirror = mirror;
+            mirrorErrors = 0;
+        }
+    }
+
+    /**
+     * Move to the next mirror right away, e.g. when the server rejected us
+     * 立即切换到下一个镜像，例如服务器拒绝连接时
+     */
+    public void switchMirror() {
+        setMirror((mirror + 1) % mirrors.length);
+    }
+
+    /**
+     * URL of the current level on every mirror, in mirror order
+     * 当前档位在各镜像上的地址，按镜像顺序排列
+     */
+    public String[] getCandidateUrls() {
+        String[] urls = new String[mirrors.length];
+        for (int i = 0; i < mirrors.length; i++) {
+            urls[i] = mirrors[i] + level + "/";
+        }
+        return urls;
+    }
+
+    /**
+     * Throughput measured over the last sampling interval
+     * 最近一个采样区间内测得的吞吐量
+     * @param bitrateEstimate bits per second
+     */
+    public void onBandwidthSample(long bitrateEstimate, long nowMs) {
+        int current = bitrates[level - 1];
+        if (current <= 0 || bitrateEstimate <= 0) {
+            return;
+        }
+        if (bitrateEstimate < current * 1000L * DOWN_MARGIN) {
+            if (shortfallSince < 0) {
+                shortfallSince = nowMs;
+            }
+            stableSince = -1;
+        } else {
+            shortfallSince = -1;
+            if (bitrateEstimate >= current * 1000L * UP_MARGIN && stableSince < 0) {
+                stableSince = nowMs;
+            }
+        }
+    }
+
+    public void onRebuffer(long nowMs) {
+        rebufferTimes[rebufferIndex] = nowMs;
+        rebufferIndex = (rebufferIndex + 1) % rebufferTimes.length;
+        stableSince = -1;
+    }
+
+    /**
+     * A load error on the current mirror
+     * 当前镜像发生加载错误
+     */
+    public void onLoadError() {
+        mirrorErrors++;
+    }
+
+    /**
+     * The current stream is playing fine
+     * 当前串流播放正常
+     */
+    public void onPlaybackReady() {
+        mirrorErrors = 0;
+    }
+
+    /**
+     * Re-evaluate the selection
+     * 重新评估选择
+     * @return true if level or mirror changed and the stream should be switched
+     */
+    public boolean evaluate(long nowMs) {
+        if (mirrorErrors >= MIRROR_ERROR_THRESHOLD && mirrors.length > 1) {
+            // Mirror failures are not rate limited, the stream is down anyway
+            // 镜像故障不做限频，此时串流本来就已中断
+            mirror = (mirror + 1) % mirrors.length;
+            mirrorErrors = 0;
+            markSwitched(nowMs);
+            return true;
+        }
+        if (nowMs - lastSwitchAt < MIN_SWITCH_INTERVAL_MS) {
+            return false;
+        }
+        int current = bitrates[level - 1];
+        if (current <= 0) {
+            return false;
+        }
+        boolean rebuffering = countRecentRebuffers(nowMs) >= REBUFFER_DOWN_THRESHOLD;
+        boolean shortfall = shortfallSince >= 0 && nowMs - shortfallSince >= DOWN_HOLD_MS;
+        if (rebuffering || shortfall) {
+            int lower = findLevel(current, false);
+            if (lower > 0) {
+                level = lower;
+                markSwitched(nowMs);
+                return true;
+            }
+        } else if (stableSince >= 0 && nowMs - stableSince >= UP_HOLD_MS) {
+            int higher = findLevel(current, true);
+            if (higher > 0) {
+                level = higher;
+                markSwitched(nowMs);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find the next level with a bitrate just below or just above the given one
+     * 查找码率紧邻低于或高于给定值的档位
+     * @return level number, or 0 if there is none
+     */
+    private int findLevel(int bitrate, boolean higher) {
+        int best = 0;
+        int bestBitrate = higher ? Integer.MAX_VALUE : 0;
+        for (int i = 0; i < MAX_LEVELS; i++) {
+            int candidate = bitrates[i];
+            if (candidate <= 0) {
+                continue;
+            }
+            if (higher ? (candidate > bitrate && candidate < bestBitrate)
+                    : (candidate < bitrate && candidate > bestBitrate)) {
+                best = i + 1;
+                bestBitrate = candidate;
+            }
+        }
+        return best;
+    }
+
+    private int countRecentRebuffers(long nowMs) {
+        int count = 0;
+        for (long time : rebufferTimes) {
+            if (time > 0 && nowMs - time <= REBUFFER_WINDOW_MS) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void markSwitched(long nowMs) {
+        lastSwitchAt = nowMs;
+        shortfallSince = -1;
+        stableSince = -1;
+        for (int i = 0; i < rebufferTimes.length; i++) {
+            rebufferTimes[i] = 0;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package net.hearnsoft.gensokyoradio.trd.player;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts stream bytes as they arrive and turns them into a bitrate per sampling interval
+ * 统计到达的串流字节数，并按采样间隔换算为码率
+ * <p>
+ * The bandwidth meter only updates when a transfer ends, which an endless
+ * Icecast response never does, so throughput has to be measured from the
+ * bytes themselves. Bytes may be added from any thread, sampling happens on
+ * one thread.
+ */
+public class ThroughputMeter {
+
+    // Shorter intervals are dominated by socket read jitter
+    // 过短的间隔主要反映套接字读取的抖动
+    static final long MIN_INTERVAL_MS = 1000;
+
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private long lastSampleAt = -1;
+
+    public void addBytes(long count) {
+        if (count > 0) {
+            bytes.addAndGet(count);
+            totalBytes.addAndGet(count);
+        }
+    }
+
+    /**
+     * Every byte counted so far, not affected by sampling or reset
+     * 迄今统计的全部字节数，不受采样与重置影响
+     */
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    /**
+     * Bitrate since the previous sample, which also starts the next interval
+     * 自上次采样以来的码率，同时开始下一个采样区间
+     * @return bits per second, or -1 for the first sample or a too short interval
+     */
+    public long sample(long nowMs) {
+        if (lastSampleAt >= 0 && nowMs - lastSampleAt < MIN_INTERVAL_MS) {
+            return -1;
+        }
+        long count = bytes.getAndSet(0);
+        long previous = lastSampleAt;
+        lastSampleAt = nowMs;
+        if (previous < 0) {
+            return -1;
+        }
+        return count * 8 * 1000 / (nowMs - previous);
+    }
+
+    /**
+     * Forget the running interval, e.g. after the loader was paused
+     * 丢弃当前采样区间，例如加载暂停之后
+     */
+    public void reset() {
+        bytes.set(0);
+        lastSampleAt = -1;
+    }
+
+    /**
+     * Wrap a stream so everything read from it is counted
+     * 包装输入流，统计从中读取的所有字节
+     */
+    public InputStream count(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int value = super.read();
+                if (value >= 0) {
+                    addBytes(1);
+                }
+                return value;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+                addBytes(read);
+                return read;
+            }
+        };
+    }
+}
@@ -0,0 +1,280 @@
+package net.hearnsoft.gensokyoradio.trd.player;
+
+import net.hearnsoft.gensokyoradio.trd.utils.Backoff;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Bounded ring of live stream bytes backed by a memory-mapped file
+ * 以内存映射文件为后端、容量有限的直播流字节环形缓冲
+ * <p>
+ * A single pump thread copies the stream straight into the mapping, readers
+ * address it by absolute byte position. Positions older than one capacity
+ * behind the writer are evicted. Readers never take the writer's lock while
+ * copying, they re-check after the copy that the region was not overwritten.
+ */
+public class TimeShiftBuffer {
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    /**
+     * Opens a fresh connection to the live stream
+     * 打开到直播流的新连接
+     */
+    public interface Source {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * The requested position is no longer in the ring
+     * 请求的位置已不在环形缓冲中
+     */
+    public static class EvictedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public EvictedException(long position, long oldest) {
+            super("position " + position + " evicted, oldest is " + oldest);
+        }
+    }
+
+    /**
+     * Sequential reader over the ring, one per consumer thread
+     * 环形缓冲的顺序读取器，每个消费线程一个
+     */
+    public class Cursor {
+        private final ByteBuffer view = mapping.duplicate();
+        private long position;
+
+        private Cursor(long position) {
+            this.position = position;
+        }
+
+        public long getPosition() {
+            return position;
+        }
+
+        /**
+         * Read up to length bytes, waiting for the writer if we are at the live edge
+         * 读取最多 length 字节，若已到直播位置则等待写入
+         * @return bytes read, 0 on timeout, or -1 once the buffer is closed
+         */
+        public int read(byte[] target, int offset, int length, long timeoutMs)
+                throws IOException, InterruptedException {
+            long available = awaitData(position, timeoutMs);
+            if (available < 0) {
+                return -1;
+            }
+            checkNotEvicted(position);
+            int count = (int) Math.min(length, available);
+            if (count == 0) {
+                return 0;
+            }
+            copy(view, position, target, offset, count);
+            // The writer may have lapped us during the copy
+            // 拷贝期间写入线程可能已覆盖该区域
+            checkNotEvicted(position);
+            position += count;
+            return count;
+        }
+    }
+
+    private final File file;
+    private final int capacity;
+    private final RandomAccessFile randomAccessFile;
+    private final MappedByteBuffer mapping;
+    private final Object lock = new Object();
+    // End of committed data
+    // 已提交数据的末尾
+    private volatile long writePosition = 0;
+    // End of the region the writer is allowed to overwrite, ahead of writePosition while copying
+    // 写入线程正在覆盖的区域末尾，拷贝期间领先于 writePosition
+    private volatile long writeLimit = 0;
+    private volatile boolean closed = false;
+    private volatile Thread pumpThread;
+    private volatile InputStream currentStream;
+
+    public TimeShiftBuffer(File file, int capacity) throws IOException {
+        this.file = file;
+        this.capacity = capacity;
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(capacity);
+        mapping = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Absolute position of the live edge
+     * 直播位置的绝对偏移
+     */
+    public long getWritePosition() {
+        return writePosition;
+    }
+
+    /**
+     * Oldest absolute position that can still be read
+     * 仍可读取的最早绝对偏移
+     */
+    public long getOldestPosition() {
+        return Math.max(0, writeLimit - capacity);
+    }
+
+    public Cursor openCursor(long position) {
+        return new Cursor(position);
+    }
+
+    /**
+     * Start pumping the source into the ring, reconnecting with backoff until stopped
+     * 开始将数据源写入环形缓冲，出错时按退避重连，直到停止
+     */
+    public synchronized void start(Source source) {
+        if (pumpThread != null || closed) {
+            return;
+        }
+        Thread thread = new Thread(() -> pump(source), "TimeShiftPump");
+        pumpThread = thread;
+        thread.start();
+    }
+
+    /**
+     * Stop pumping, buffered bytes stay readable
+     * 停止写入，已缓冲的数据仍可读取
+     */
+    public synchronized void stop() {
+        Thread thread = pumpThread;
+        pumpThread = null;
+        closeCurrentStream();
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    public boolean isRunning() {
+        return pumpThread != null;
+    }
+
+    /**
+     * Drop the current connection, the pump reopens the source right away
+     * 断开当前连接，写入线程会立即重新打开数据源
+     */
+    public void reconnect() {
+        closeCurrentStream();
+    }
+
+    /**
+     * Stop pumping, wake up readers and delete the backing file
+     * 停止写入，唤醒读取方并删除后端文件
+     */
+    public void close() {
+        stop();
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            randomAccessFile.close();
+        } catch (IOException ignored) {
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    private void pump(Source source) {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        ByteBuffer view = mapping.duplicate();
+        Backoff backoff = new Backoff(500, 10 * 1000);
+        while (pumpThread == Thread.currentThread()) {
+            try (InputStream in = source.open()) {
+                currentStream = in;
+                backoff.reset();
+                int read;
+                while (pumpThread == Thread.currentThread() && (read = in.read(chunk)) != -1) {
+                    write(view, chunk, read);
+                }
+            } catch (IOException ignored) {
+                // Readers time out on their own if the stream stays down
+                // 若串流持续中断，读取方会自行超时
+            } finally {
+                currentStream = null;
+            }
+            if (pumpThread != Thread.currentThread()) {
+                break;
+            }
+            try {
+                Thread.sleep(backoff.nextDelayMs());
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+
+    private void write(ByteBuffer view, byte[] source, int length) {
+        long start = writePosition;
+        writeLimit = start + length;
+        int offset = (int) (start % capacity);
+        int first = Math.min(length, capacity - offset);
+        view.position(offset);
+        view.put(source, 0, first);
+        if (first < length) {
+            view.position(0);
+            view.put(source, first, length - first);
+        }
+        synchronized (lock) {
+            writePosition = start + length;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * @return committed bytes available at position, or -1 if closed
+     */
+    private long awaitData(long position, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (lock) {
+            while (!closed && writePosition <= position) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    return 0;
+                }
+                lock.wait(wait);
+            }
+            return closed ? -1 : writePosition - position;
+        }
+    }
+
+    private void checkNotEvicted(long position) throws EvictedException {
+        long oldest = getOldestPosition();
+        if (position < oldest) {
+            throw new EvictedException(position, oldest);
+        }
+    }
+
+    private void copy(ByteBuffer view, long position, byte[] target, int offset, int length) {
+        int start = (int) (position % capacity);
+        int first = Math.min(length, capacity - start);
+        view.position(start);
+        view.get(target, offset, first);
+        if (first < length) {
+            view.position(0);
+            view.get(target, offset + first, length - first);
+        }
+    }
+
+    private void closeCurrentStream() {
+        InputStream in = currentStream;
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
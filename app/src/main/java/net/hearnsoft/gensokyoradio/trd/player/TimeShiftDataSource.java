@@ -0,0 +1,152 @@
+package net.hearnsoft.gensokyoradio.trd.player;
+
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.datasource.BaseDataSource;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+
+/**
+ * Serves the player from a TimeShiftBuffer instead of the network
+ * 从 TimeShiftBuffer 而非网络为播放器提供数据
+ * <p>
+ * The start position is carried in the URI, see {@link #buildUri(long)}.
+ */
+@UnstableApi
+public class TimeShiftDataSource extends BaseDataSource {
+
+    public static final String SCHEME = "timeshift";
+    private static final String PARAM_POSITION = "pos";
+    // Fail like a network read would if the stream stays silent this long
+    // 若串流长时间无数据，像网络读取一样超时失败
+    private static final long READ_TIMEOUT_MS = 8 * 1000;
+
+    public static class Factory implements DataSource.Factory {
+        private final TimeShiftBuffer buffer;
+        private volatile TimeShiftDataSource current;
+
+        public Factory(TimeShiftBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @NonNull
+        @Override
+        public DataSource createDataSource() {
+            TimeShiftDataSource dataSource = new TimeShiftDataSource(buffer);
+            current = dataSource;
+            return dataSource;
+        }
+
+        /**
+         * Absolute position the player's loader has read up to
+         * 播放器加载线程已读取到的绝对位置
+         * @return position, or -1 if nothing was opened yet
+         */
+        public long getReadPosition() {
+            TimeShiftDataSource dataSource = current;
+            return dataSource != null ? dataSource.getReadPosition() : -1;
+        }
+    }
+
+    /**
+     * URI that starts reading at the given absolute position
+     * 从指定绝对位置开始读取的 URI
+     */
+    public static Uri buildUri(long position) {
+        return new Uri.Builder()
+                .scheme(SCHEME)
+                .authority("stream")
+                .appendQueryParameter(PARAM_POSITION, String.valueOf(position))
+                .build();
+    }
+
+    private final TimeShiftBuffer buffer;
+    @Nullable
+    private Uri uri;
+    @Nullable
+    private TimeShiftBuffer.Cursor cursor;
+    private boolean opened = false;
+
+    public TimeShiftDataSource(TimeShiftBuffer buffer) {
+        super(false);
+        this.buffer = buffer;
+    }
+
+    @Override
+    public long open(@NonNull DataSpec dataSpec) {
+        transferInitializing(dataSpec);
+        uri = dataSpec.uri;
+        long start;
+        try {
+            start = Long.parseLong(dataSpec.uri.getQueryParameter(PARAM_POSITION));
+        } catch (NumberFormatException e) {
+            start = buffer.getWritePosition();
+        }
+        cursor = buffer.openCursor(Math.max(start + dataSpec.position, buffer.getOldestPosition()));
+        opened = true;
+        transferStarted(dataSpec);
+        return C.LENGTH_UNSET;
+    }
+
+    @Override
+    public int read(@NonNull byte[] target, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        TimeShiftBuffer.Cursor current = cursor;
+        if (!opened || current == null) {
+            throw new IOException("not opened");
+        }
+        int read;
+        try {
+            read = current.read(target, offset, length, READ_TIMEOUT_MS);
+        } catch (TimeShiftBuffer.EvictedException e) {
+            // Paused for longer than the ring holds, continue from the oldest byte left
+            // 暂停时间超过缓冲容量，从剩余最早的数据继续
+            cursor = buffer.openCursor(buffer.getOldestPosition() + buffer.getCapacity() / 8);
+            return read(target, offset, length);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        if (read < 0) {
+            return C.RESULT_END_OF_INPUT;
+        } else if (read == 0) {
+            throw new SocketTimeoutException("no stream data for " + READ_TIMEOUT_MS + " ms");
+        }
+        bytesTransferred(read);
+        return read;
+    }
+
+    /**
+     * Absolute position read up to, kept after close
+     * 已读取到的绝对位置，关闭后仍保留
+     */
+    public long getReadPosition() {
+        TimeShiftBuffer.Cursor current = cursor;
+        return current != null ? current.getPosition() : -1;
+    }
+
+    @Nullable
+    @Override
+    public Uri getUri() {
+        return uri;
+    }
+
+    @Override
+    public void close() {
+        if (opened) {
+            opened = false;
+            transferEnded();
+        }
+        uri = null;
+    }
+}
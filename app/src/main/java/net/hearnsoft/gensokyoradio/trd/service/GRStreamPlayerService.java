@@ -1,63 +1,370 @@
 package net.hearnsoft.gensokyoradio.trd.service;
 
 import android.app.PendingIntent;
-import android.content.BroadcastReceiver;
-import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.net.Uri;
 import android.os.Binder;
+import android.os.Bundle;
+import android.os.Environment;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.widget.Toast;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.localbroadcastmanager.content.LocalBroadcastManager;
+import androidx.annotation.OptIn;
+import androidx.lifecycle.Observer;
 import androidx.media3.common.AudioAttributes;
 import androidx.media3.common.MediaItem;
 import androidx.media3.common.MediaMetadata;
+import androidx.media3.common.Metadata;
+import androidx.media3.common.PlaybackException;
 import androidx.media3.common.Player;
 import androidx.media3.common.util.UnstableApi;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.DefaultDataSource;
+import androidx.media3.datasource.TransferListener;
+import androidx.media3.datasource.okhttp.OkHttpDataSource;
+import androidx.media3.exoplayer.DefaultLoadControl;
 import androidx.media3.exoplayer.ExoPlayer;
+import androidx.media3.exoplayer.LoadControl;
+import androidx.media3.exoplayer.source.DefaultMediaSourceFactory;
+import androidx.media3.exoplayer.upstream.DefaultBandwidthMeter;
+import androidx.media3.extractor.metadata.icy.IcyInfo;
 import androidx.media3.session.MediaSession;
 import androidx.media3.session.MediaSessionService;
 
 import net.hearnsoft.gensokyoradio.trd.MainActivity;
 import net.hearnsoft.gensokyoradio.trd.R;
+import net.hearnsoft.gensokyoradio.trd.audio.PcmTap;
+import net.hearnsoft.gensokyoradio.trd.audio.TapRenderersFactory;
+import net.hearnsoft.gensokyoradio.trd.beans.misc.Streams;
+import net.hearnsoft.gensokyoradio.trd.model.HistoryEntry;
+import net.hearnsoft.gensokyoradio.trd.model.NowPlayingDispatcher;
+import net.hearnsoft.gensokyoradio.trd.model.NowPlayingSnapshot;
+import net.hearnsoft.gensokyoradio.trd.model.NowPlayingSource;
 import net.hearnsoft.gensokyoradio.trd.model.SongDataModel;
+import net.hearnsoft.gensokyoradio.trd.model.SongHistory;
+import net.hearnsoft.gensokyoradio.trd.player.BufferProfile;
+import net.hearnsoft.gensokyoradio.trd.player.EndpointProber;
+import net.hearnsoft.gensokyoradio.trd.player.MetricsAnalyticsListener;
+import net.hearnsoft.gensokyoradio.trd.player.PlaybackMetrics;
+import net.hearnsoft.gensokyoradio.trd.player.PlaybackRecovery;
+import net.hearnsoft.gensokyoradio.trd.player.RecordingDataSource;
+import net.hearnsoft.gensokyoradio.trd.player.StreamRecorder;
+import net.hearnsoft.gensokyoradio.trd.player.MetadataForwardingPlayer;
+import net.hearnsoft.gensokyoradio.trd.player.StreamLoadErrorHandlingPolicy;
+import net.hearnsoft.gensokyoradio.trd.player.StreamSelector;
+import net.hearnsoft.gensokyoradio.trd.player.ThroughputMeter;
+import net.hearnsoft.gensokyoradio.trd.player.TimeShiftBuffer;
+import net.hearnsoft.gensokyoradio.trd.player.TimeShiftDataSource;
 import net.hearnsoft.gensokyoradio.trd.utils.Constants;
+import net.hearnsoft.gensokyoradio.trd.utils.HttpClientHolder;
+import net.hearnsoft.gensokyoradio.trd.utils.NetworkMonitor;
 import net.hearnsoft.gensokyoradio.trd.utils.ViewModelUtils;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+@OptIn(markerClass = UnstableApi.class)
 public class GRStreamPlayerService extends MediaSessionService {
 
     private static final String TAG = GRStreamPlayerService.class.getSimpleName();
+    // Keep the paused player (and its decoder and connection) alive for this long
+    // 暂停后保持播放器（解码器与连接）存活的时长
+    private static final long DEFAULT_IDLE_RELEASE_MS = 5 * 60 * 1000;
+    // Paused longer than this, the buffered audio is too old and we jump back to live
+    // 暂停超过此时长，缓冲内容已过时，恢复时跳回直播位置
+    private static final long LIVE_EDGE_TOLERANCE_MS = 5 * 1000;
+    private static final String KEY_IDLE_RELEASE_MS = "idle_release_ms";
+    private static final String KEY_BUFFER_PROFILE = "buffer_profile";
+    private static final long BANDWIDTH_SAMPLE_INTERVAL_MS = 5 * 1000;
+    // Mirror ranking is cached per network type for this long
+    // 镜像排名按网络类型缓存的时长
+    private static final long MIRROR_RANKING_TTL_MS = 6 * 60 * 60 * 1000;
+    private static final String KEY_MIRROR_PREFIX = "fastest_mirror_";
+    private static final String KEY_MIRROR_AT_PREFIX = "fastest_mirror_at_";
+    // Time-shift is opt-in, it costs a disk ring and keeps downloading while paused
+    // 时移需手动开启，它占用磁盘环形缓冲并在暂停期间持续下载
+    private static final int DEFAULT_TIMESHIFT_MINUTES = 0;
+    public static final int TIMESHIFT_MINUTES = 15;
+    private static final int DEFAULT_TIMESHIFT_MAX_MB = 64;
+    private static final String KEY_TIMESHIFT_MINUTES = "timeshift_minutes";
+    private static final String KEY_TIMESHIFT_MAX_MB = "timeshift_max_mb";
+    private static final String KEY_STREAM_METADATA_ONLY = "stream_metadata_only";
+    // Session extras with the recent songs, "Artist - Title" newest first and their air times
+    // 会话附加信息中的最近歌曲，“艺术家 - 标题”按时间倒序，以及对应的播出时间
+    public static final String EXTRA_RECENT_TRACKS = "net.hearnsoft.gensokyoradio.trd.RECENT_TRACKS";
+    public static final String EXTRA_RECENT_AIRED_AT = "net.hearnsoft.gensokyoradio.trd.RECENT_AIRED_AT";
+    private static final int SESSION_RECENT_TRACKS = 10;
+    // Size the ring for the highest level so N minutes hold at any bitrate
+    // 按最高码率计算环形缓冲大小，保证任何档位都能保存 N 分钟
+    private static final int TIMESHIFT_SIZING_KBPS = 320;
+    private static final int DEFAULT_BITRATE_KBPS = 128;
+    // Enough mono samples for an FFT window plus the output latency at 96 kHz
+    // 足以容纳一个 FFT 窗口加上 96 kHz 下输出延迟的单声道采样数
+    private static final int PCM_TAP_CAPACITY = 32 * 1024;
 
     private static Player player;
+    private MetadataForwardingPlayer sessionPlayer;
+    private MediaMetadata currentMetadata;
     private MediaSession session;
     private MediaItem streamItem;
     private SongDataModel dataModel;
     private ServiceBinder binder = new ServiceBinder();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private SharedPreferences sharedPreferences;
+    private long pausedAt = 0;
+    private long resumeRequestedAt = 0;
+    private final StreamSelector streamSelector = new StreamSelector(Constants.GR_STREAM_MIRRORS);
+    private DefaultBandwidthMeter bandwidthMeter;
+    // Fed by whichever connection pulls the stream, the player's or the time-shift pump's
+    // 由实际拉取串流的连接提供数据，即播放器或时移写入端
+    private final ThroughputMeter throughputMeter = new ThroughputMeter();
+    private final TransferListener throughputListener = new TransferListener() {
+        @Override
+        public void onTransferInitializing(@NonNull DataSource source, @NonNull DataSpec dataSpec, boolean isNetwork) {
+        }
+
+        @Override
+        public void onTransferStart(@NonNull DataSource source, @NonNull DataSpec dataSpec, boolean isNetwork) {
+        }
+
+        @Override
+        public void onBytesTransferred(@NonNull DataSource source, @NonNull DataSpec dataSpec, boolean isNetwork,
+                                       int bytesTransferred) {
+            if (isNetwork) {
+                throughputMeter.addBytes(bytesTransferred);
+            }
+        }
+
+        @Override
+        public void onTransferEnd(@NonNull DataSource source, @NonNull DataSpec dataSpec, boolean isNetwork) {
+        }
+    };
+    private boolean pendingStreamSwitch = false;
+    private boolean wasReady = false;
+    private volatile String streamUrl;
+    private TimeShiftBuffer timeShiftBuffer;
+    private TimeShiftDataSource.Factory timeShiftFactory;
+    private OkHttpClient timeShiftClient;
+    private StreamRecorder recorder;
+    private final PlaybackRecovery recovery = new PlaybackRecovery();
+    // Kept across player instances so numbers cover the whole service lifetime
+    // 跨播放器实例保留，统计覆盖整个服务生命周期
+    private final PlaybackMetrics metrics = new PlaybackMetrics();
+    private NetworkMonitor networkMonitor;
+    // Kept across player instances so the visualizer can hold on to it
+    // 跨播放器实例保留，可视化视图可以一直持有
+    private final PcmTap pcmTap = new PcmTap(PCM_TAP_CAPACITY);
+    // WebSocketService was stopped by us to run on ICY metadata alone
+    // WebSocketService 已被我们停止，仅使用 ICY 元数据
+    private boolean webSocketSuspended = false;
+
+    private final Runnable recoveryRunnable = () -> {
+        if (player == null || !player.getPlayWhenReady()) {
+            return;
+        }
+        Log.i(TAG, "recovering playback on " + streamSelector.getCurrentUrl());
+        pendingStreamSwitch = true;
+        applyPendingStreamSwitch();
+        if (player.getPlaybackState() == Player.STATE_IDLE) {
+            if (timeShiftBuffer != null) {
+                // Continue from where the loader stopped, the ring still holds it
+                // 从加载中断处继续，环形缓冲中仍保留这些数据
+                timeShiftStart = timeShiftFactory.getReadPosition();
+                streamItem = buildStreamItem();
+                player.setMediaItem(streamItem);
+            }
+            preparePlayer();
+        }
+    };
+    // Start position for the next stream item, -1 for the live edge
+    // 下一个串流条目的起始位置，-1 表示直播位置
+    private long timeShiftStart = -1;
+
+    private final TimeShiftBuffer.Source timeShiftSource = () -> {
+        Request request = new Request.Builder().url(streamUrl).build();
+        Response response = timeShiftClient.newCall(request).execute();
+        if (!response.isSuccessful() || response.body() == null) {
+            response.close();
+            throw new IOException("stream request failed: " + response.code());
+        }
+        return recorder.tee(throughputMeter.count(response.body().byteStream()));
+    };
+
+    private final Runnable bandwidthSampleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (player == null || !player.isPlaying()) {
+                return;
+            }
+            long now = SystemClock.elapsedRealtime();
+            long bitrate = throughputMeter.sample(now);
+            // A loader paused on a full buffer reads nothing, that says nothing about the network
+            // 缓冲已满而暂停的加载器不读取数据，这并不反映网络状况
+            if (timeShiftBuffer == null && !player.isLoading()) {
+                bitrate = -1;
+            }
+            metrics.onThroughputSample(throughputMeter.getTotalBytes(), bitrate);
+            if (bitrate >= 0) {
+                streamSelector.onBandwidthSample(bitrate, now);
+            }
+            if (streamSelector.evaluate(now)) {
+                // Wait for the next song unless playback is already disrupted
+                // 除非播放已经中断，否则等到下一首歌再切换
+                pendingStreamSwitch = true;
+            }
+            handler.postDelayed(this, BANDWIDTH_SAMPLE_INTERVAL_MS);
+        }
+    };
+
+    private final Runnable idleReleaseRunnable = () -> {
+        Log.d(TAG, "player idle for too long, release it");
+        rememberTimeShiftPosition();
+        if (timeShiftBuffer != null) {
+            timeShiftBuffer.stop();
+        }
+        replacePlayer(false);
+        pausedAt = 0;
+    };
 
     private Player.Listener playerListener = new Player.Listener() {
         @Override
         public void onIsPlayingChanged(boolean isPlaying) {
             Player.Listener.super.onIsPlayingChanged(isPlaying);
+            if (isPlaying && resumeRequestedAt > 0) {
+                long resumeLatencyMs = SystemClock.elapsedRealtime() - resumeRequestedAt;
+                resumeRequestedAt = 0;
+                metrics.onResumeLatency(resumeLatencyMs);
+                Log.i(TAG, "time to audio after resume: " + resumeLatencyMs + " ms");
+            }
+            handler.removeCallbacks(bandwidthSampleRunnable);
+            if (isPlaying) {
+                // The first interval starts after the initial burst
+                // 首个采样区间在初始突发之后开始
+                throughputMeter.reset();
+                handler.postDelayed(bandwidthSampleRunnable, BANDWIDTH_SAMPLE_INTERVAL_MS);
+            }
+        }
+
+        @Override
+        public void onPlayWhenReadyChanged(boolean playWhenReady, int reason) {
+            Player.Listener.super.onPlayWhenReadyChanged(playWhenReady, reason);
+            // Handles pause/resume from the app and from the media notification alike
+            // 同时处理来自应用与媒体通知的暂停/恢复
+            long now = SystemClock.elapsedRealtime();
+            handler.removeCallbacks(idleReleaseRunnable);
+            refreshWebSocketPolicy();
+            if (!playWhenReady) {
+                // The user paused, stop trying to reconnect
+                // 用户已暂停，停止重连
+                if (recovery.isRecovering()) {
+                    handler.removeCallbacks(recoveryRunnable);
+                    recovery.reset();
+                    postBufferingState(player.getPlaybackState());
+                }
+                pausedAt = now;
+                // Keep recording for the whole time-shift window while paused
+                // 暂停期间在整个时移窗口内持续录制
+                handler.postDelayed(idleReleaseRunnable,
+                        Math.max(getIdleReleaseTimeoutMs(), getTimeShiftWindowMs()));
+                return;
+            }
+            resumeRequestedAt = now;
+            // With time-shift, resume where we paused instead of jumping to live
+            // 启用时移时，从暂停处继续而非跳回直播位置
+            if (timeShiftBuffer == null && pausedAt > 0 && now - pausedAt > LIVE_EDGE_TOLERANCE_MS
+                    && player.getPlaybackState() != Player.STATE_IDLE) {
+                // Buffered audio is stale, jump back to the live edge
+                // 缓冲内容已过时，跳回直播位置
+                player.seekToDefaultPosition();
+            }
+            pausedAt = 0;
         }
 
         @Override
         public void onPlaybackStateChanged(int playbackState) {
             Player.Listener.super.onPlaybackStateChanged(playbackState);
+            postBufferingState(playbackState);
             switch (playbackState) {
-                case Player.STATE_IDLE:
-                    dataModel. getBufferingState().postValue(0);
-                    break;
                 case Player.STATE_BUFFERING:
-                    dataModel. getBufferingState().postValue(1);
+                    if (wasReady && player.getPlayWhenReady()) {
+                        long now = SystemClock.elapsedRealtime();
+                        streamSelector.onRebuffer(now);
+                        if (streamSelector.evaluate(now)) {
+                            pendingStreamSwitch = true;
+                        }
+                        // Already stalled, no reason to wait for a song boundary
+                        // 已经卡顿，无需等待歌曲切换
+                        applyPendingStreamSwitch();
+                    }
                     break;
                 case Player.STATE_READY:
-                    dataModel. getBufferingState().postValue(2);
+                    streamSelector.onPlaybackReady();
+                    long recoveryMs = recovery.onRecovered(SystemClock.elapsedRealtime());
+                    if (recoveryMs >= 0) {
+                        metrics.onRecovered(recoveryMs);
+                        Log.i(TAG, "playback recovered in " + recoveryMs + " ms");
+                    }
                 default:
                     break;
             }
+            wasReady = playbackState == Player.STATE_READY;
+        }
+
+        @Override
+        public void onMetadata(@NonNull Metadata metadata) {
+            // ICY titles come out when the audio is heard, no presentation delay applies
+            // ICY 标题在音频播放时才输出，无需呈现延迟
+            for (int i = 0; i < metadata.length(); i++) {
+                Metadata.Entry entry = metadata.get(i);
+                if (entry instanceof IcyInfo) {
+                    NowPlayingSnapshot snapshot = NowPlayingSnapshot.fromStreamTitle(
+                            ((IcyInfo) entry).title, SystemClock.elapsedRealtime());
+                    if (snapshot != null) {
+                        NowPlayingDispatcher.getInstance().publish(snapshot, NowPlayingSource.ICY);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void onPlayerError(PlaybackException error) {
+            Player.Listener.super.onPlayerError(error);
+            Log.w(TAG, "playback error on " + streamSelector.getCurrentUrl() + ": " + error);
+            long now = SystemClock.elapsedRealtime();
+            boolean networkValidated = networkMonitor.isValidated();
+            PlaybackRecovery.Action action = recovery.onError(error.errorCode, networkValidated, now);
+            if (action == PlaybackRecovery.Action.GIVE_UP) {
+                Log.e(TAG, "unrecoverable playback error, giving up");
+                handler.removeCallbacks(recoveryRunnable);
+                postBufferingState(Player.STATE_IDLE);
+                return;
+            }
+            if (action == PlaybackRecovery.Action.SWITCH_MIRROR) {
+                streamSelector.switchMirror();
+            } else if (networkValidated) {
+                // Repeated failures with a working network count against the mirror
+                // 网络正常时的连续失败计入镜像故障
+                streamSelector.onLoadError();
+                streamSelector.evaluate(now);
+            }
+            dataModel.getBufferingState().postValue(3);
+            handler.removeCallbacks(recoveryRunnable);
+            handler.postDelayed(recoveryRunnable, recovery.nextRetryDelayMs());
         }
     };
 
@@ -67,16 +374,41 @@ public class GRStreamPlayerService extends MediaSessionService {
         }
     }
 
-    private BroadcastReceiver receiver = new BroadcastReceiver() {
-        @UnstableApi
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            String action = intent.getAction();
-            if ("net.hearnsoft.gensokyoradio.trd.UPDATE_NOTIFICATION".equals(action)) {
-                updateMetadataInfo();
-            }
+    private final Observer<NowPlayingSnapshot> nowPlayingObserver = this::updateMetadataInfo;
+    // The recorder cuts in stream bytes, which line up with the live edge, not with what is audible
+    // 录制器按串流字节切分，与直播位置对齐，而非实际听到的位置
+    private final Observer<NowPlayingSnapshot> liveNowPlayingObserver =
+            snapshot -> recorder.onSongChanged(snapshot, getStreamByteRate());
+
+    /**
+     * Mirror the player state into the view model, reporting reconnecting while recovering
+     * 将播放器状态同步到 ViewModel，恢复期间显示为重连中
+     * 0: IDLE, 1: BUFFERING, 2: READY, 3: RECONNECTING
+     */
+    private void postBufferingState(int playbackState) {
+        int state;
+        if (recovery.isRecovering() && playbackState != Player.STATE_READY) {
+            state = 3;
+        } else if (playbackState == Player.STATE_READY) {
+            state = 2;
+        } else if (playbackState == Player.STATE_BUFFERING) {
+            state = 1;
+        } else {
+            state = 0;
         }
-    };
+        dataModel.getBufferingState().postValue(state);
+    }
+
+    private void onNetworkValidated() {
+        handler.post(() -> {
+            if (recovery.isRecovering()) {
+                // Don't sit out the backoff once the network is back
+                // 网络恢复后无需等待退避时间
+                handler.removeCallbacks(recoveryRunnable);
+                recoveryRunnable.run();
+            }
+        });
+    }
 
     @UnstableApi
     @Override
@@ -84,12 +416,30 @@ public class GRStreamPlayerService extends MediaSessionService {
         super.onCreate();
         // 获取全局ViewModel
         dataModel = ViewModelUtils.getViewModel(getApplication(), SongDataModel.class);
-        registerBroadcasrReceiver();
+        sharedPreferences = getSharedPreferences("player", MODE_PRIVATE);
+        File musicDir = getExternalFilesDir(Environment.DIRECTORY_MUSIC);
+        recorder = new StreamRecorder(new File(musicDir != null ? musicDir : getFilesDir(), "recordings"),
+                file -> Log.i(TAG, "recorded " + file));
+        initTimeShift();
+        networkMonitor = new NetworkMonitor(this, this::onNetworkValidated);
+        networkMonitor.register();
+        NowPlayingDispatcher dispatcher = NowPlayingDispatcher.getInstance();
+        dispatcher.setPresentationDelaySupplier(this::getPresentationDelayMs);
+        dispatcher.getNowPlaying().observeForever(nowPlayingObserver);
+        dispatcher.getLiveNowPlaying().observeForever(liveNowPlayingObserver);
         if (player == null) {
-            initExoPlayer();
-            session = new MediaSession.Builder(this, player)
+            // Only prepare right away if we already know the fastest mirror
+            // 仅在已知最快镜像时立即准备播放器
+            boolean cached = applyCachedMirror();
+            initExoPlayer(cached);
+            if (!cached) {
+                probeMirrors();
+            }
+            sessionPlayer = new MetadataForwardingPlayer(player);
+            session = new MediaSession.Builder(this, sessionPlayer)
                     .setSessionActivity(getSingleTopActivity())
                     .build();
+            session.setSessionExtras(buildRecentTracksExtras());
         }
     }
 
@@ -111,7 +461,9 @@ public class GRStreamPlayerService extends MediaSessionService {
     @Override
     public void onTaskRemoved(Intent rootIntent) {
         super.onTaskRemoved(rootIntent);
-        if (player.isPlaying()) {
+        // The player may be between instances or already released
+        // 播放器可能正在替换或已被释放
+        if (player != null && player.isPlaying()) {
             player.stop();
         }
     }
@@ -121,53 +473,590 @@ public class GRStreamPlayerService extends MediaSessionService {
         return super.onStartCommand(intent, flags, startId);
     }
 
-    private void registerBroadcasrReceiver() {
-        LocalBroadcastManager.getInstance(this)
-                .registerReceiver(receiver, new IntentFilter("net.hearnsoft.gensokyoradio.trd.UPDATE_NOTIFICATION"));
+    /**
+     * Push now playing metadata to the session and notification without touching the playlist
+     * 将正在播放的元数据推送到会话与通知，不修改播放列表，暂停时同样生效
+     */
+    @UnstableApi
+    private void updateMetadataInfo(NowPlayingSnapshot snapshot) {
+        Log.d(TAG, "update session metadata: " + snapshot.getTitle());
+        MediaMetadata.Builder builder = new MediaMetadata.Builder()
+                .setTitle(snapshot.getTitle())
+                .setDisplayTitle(snapshot.getTitle())
+                .setArtist(snapshot.getArtist())
+                .setAlbumTitle(snapshot.getAlbum())
+                .setAlbumArtist(snapshot.getCircle());
+        if (snapshot.getAlbumArt() != null && !snapshot.getAlbumArt().isEmpty()) {
+            builder.setArtworkUri(Uri.parse(snapshot.getAlbumArt()));
+        }
+        currentMetadata = builder.build();
+        if (sessionPlayer != null) {
+            sessionPlayer.setMetadataOverride(currentMetadata);
+        }
+        if (session != null) {
+            session.setSessionExtras(buildRecentTracksExtras());
+        }
+        // A song boundary is the least audible moment to switch streams
+        // 歌曲切换时更换串流最不易察觉
+        applyPendingStreamSwitch();
     }
 
-    @UnstableApi
-    private void updateMetadataInfo() {
-        Log.d(TAG, "replace new data");
-        if (player != null && player.isPlaying()) {
-            MediaItem newMetadataItem = new MediaItem.Builder()
-                    .setMediaId("stream-1")
-                    .setUri(Constants.GR_STREAM_URL)
-                    .setMediaMetadata(new MediaMetadata.Builder()
-                            .setTitle(dataModel.getTitle().getValue())
-                            .setArtist(dataModel.getArtist().getValue())
-                            .build())
-                    .build();
-            player.replaceMediaItem(player.getCurrentMediaItemIndex(), newMetadataItem);
+    /**
+     * Recent songs from the in-memory history, for controllers that want to show them
+     * 取自内存历史的最近歌曲，供需要展示的控制端使用
+     */
+    private Bundle buildRecentTracksExtras() {
+        List<HistoryEntry> entries = SongHistory.getInstance(this).getRecent(SESSION_RECENT_TRACKS);
+        ArrayList<String> tracks = new ArrayList<>(entries.size());
+        long[] airedAt = new long[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            HistoryEntry entry = entries.get(i);
+            tracks.add(entry.getArtist() != null ? entry.getArtist() + " - " + entry.getTitle() : entry.getTitle());
+            airedAt[i] = entry.getAiredAt();
         }
+        Bundle extras = new Bundle();
+        extras.putStringArrayList(EXTRA_RECENT_TRACKS, tracks);
+        extras.putLongArray(EXTRA_RECENT_AIRED_AT, airedAt);
+        return extras;
     }
 
-    private void initExoPlayer() {
-        player = new ExoPlayer.Builder(this)
-                .setAudioAttributes(AudioAttributes.DEFAULT, true)
-                .build();
-        streamItem = new MediaItem.Builder()
+    /**
+     * Use the cached fastest mirror for the current network type if it is still fresh
+     * 若当前网络类型的最快镜像缓存仍有效，则使用该镜像
+     * @return true if a cached mirror was applied
+     */
+    private boolean applyCachedMirror() {
+        String networkType = NetworkMonitor.getNetworkType(this);
+        long probedAt = sharedPreferences.getLong(KEY_MIRROR_AT_PREFIX + networkType, 0);
+        long age = System.currentTimeMillis() - probedAt;
+        if (probedAt == 0 || age < 0 || age > MIRROR_RANKING_TTL_MS) {
+            return false;
+        }
+        streamSelector.setMirror(sharedPreferences.getInt(KEY_MIRROR_PREFIX + networkType, 0));
+        Log.d(TAG, "use cached mirror " + streamSelector.getMirror() + " on " + networkType);
+        return true;
+    }
+
+    /**
+     * Probe every mirror, start on the fastest one and cache it for the current network type
+     * 探测所有镜像，从最快的镜像开始播放，并按当前网络类型缓存结果
+     */
+    private void probeMirrors() {
+        String networkType = NetworkMonitor.getNetworkType(this);
+        new EndpointProber(HttpClientHolder.get())
+                .probe(streamSelector.getCandidateUrls())
+                .thenAccept(results -> handler.post(() -> onMirrorsProbed(networkType, results)));
+    }
+
+    private void onMirrorsProbed(String networkType, List<EndpointProber.Result> results) {
+        for (EndpointProber.Result result : results) {
+            Log.d(TAG, "probe " + result);
+        }
+        EndpointProber.Result fastest = results.isEmpty() ? null : results.get(0);
+        if (fastest == null || !fastest.isReachable()) {
+            // Nothing reachable, keep the default and try again next time
+            // 均不可达，保持默认镜像，下次再探测
+            prepareIfIdle();
+            return;
+        }
+        sharedPreferences.edit()
+                .putInt(KEY_MIRROR_PREFIX + networkType, fastest.getIndex())
+                .putLong(KEY_MIRROR_AT_PREFIX + networkType, System.currentTimeMillis())
+                .apply();
+        if (player == null || fastest.getIndex() == streamSelector.getMirror()) {
+            prepareIfIdle();
+            return;
+        }
+        streamSelector.setMirror(fastest.getIndex());
+        if (player.getPlaybackState() == Player.STATE_IDLE) {
+            streamUrl = streamSelector.getCurrentUrl();
+            streamItem = buildStreamItem();
+            player.setMediaItem(streamItem);
+            preparePlayer();
+        } else {
+            // Playback already started on the default mirror, move over at the next song
+            // 已在默认镜像上开始播放，下一首歌时再切换
+            pendingStreamSwitch = true;
+        }
+    }
+
+    private void prepareIfIdle() {
+        if (player != null && player.getPlaybackState() == Player.STATE_IDLE) {
+            preparePlayer();
+        }
+    }
+
+    /**
+     * Prepare the player, starting the time-shift pump first if needed
+     * 准备播放器，如有需要先启动时移写入
+     */
+    private void preparePlayer() {
+        if (timeShiftBuffer != null) {
+            timeShiftBuffer.start(timeShiftSource);
+        }
+        player.prepare();
+    }
+
+    /**
+     * How far the audible position trails the live edge: the time-shift distance, or
+     * the player's buffered duration while playing live
+     * 实际播放位置落后直播的时长：时移距离，或直播播放时播放器已缓冲的时长
+     */
+    private long getPresentationDelayMs() {
+        if (player == null) {
+            return 0;
+        }
+        if (timeShiftBuffer != null) {
+            return getTimeShiftBehindMs();
+        }
+        return player.isPlaying() ? player.getTotalBufferedDuration() : 0;
+    }
+
+    /**
+     * Update the available stream levels from ServerInfo.STREAMS
+     * 从 ServerInfo.STREAMS 更新可用的码率档位
+     */
+    public void updateStreamLevels(Streams streams) {
+        handler.post(() -> streamSelector.setLevels(streams));
+    }
+
+    /**
+     * Move the player to the selected level and mirror if a switch is pending
+     * 若有待切换的串流，将播放器切换到选中的码率档位与镜像
+     */
+    private void applyPendingStreamSwitch() {
+        if (!pendingStreamSwitch || player == null) {
+            return;
+        }
+        pendingStreamSwitch = false;
+        String url = streamSelector.getCurrentUrl();
+        if (url.equals(streamUrl)) {
+            return;
+        }
+        Log.i(TAG, "switch stream to " + url);
+        streamUrl = url;
+        if (timeShiftBuffer != null) {
+            // The ring keeps its history, only the pump moves to the new stream
+            // 环形缓冲保留历史，仅写入端切换到新串流
+            timeShiftBuffer.reconnect();
+            if (player.getPlaybackState() != Player.STATE_IDLE) {
+                return;
+            }
+        }
+        streamItem = buildStreamItem();
+        player.setMediaItem(streamItem);
+        if (player.getPlayWhenReady() || player.getPlaybackState() != Player.STATE_IDLE) {
+            preparePlayer();
+        }
+    }
+
+    /**
+     * Item for the current stream URL, or for the time-shift ring when it is enabled
+     * 当前串流地址的条目，启用时移时指向环形缓冲
+     */
+    private MediaItem buildStreamItem() {
+        Uri uri;
+        if (timeShiftBuffer != null) {
+            long start = timeShiftStart >= 0 ? timeShiftStart : timeShiftBuffer.getWritePosition();
+            uri = TimeShiftDataSource.buildUri(start);
+            timeShiftStart = -1;
+        } else {
+            uri = Uri.parse(streamUrl);
+        }
+        return new MediaItem.Builder()
                 .setMediaId("stream-1")
-                .setUri(Constants.GR_STREAM_URL)
+                .setUri(uri)
+                .build();
+    }
+
+    /**
+     * Create the time-shift ring if it is enabled, falling back to direct streaming on failure
+     * 若启用时移则创建环形缓冲，失败时回退为直接串流
+     */
+    private void initTimeShift() {
+        int minutes = getTimeShiftMinutes();
+        if (minutes <= 0) {
+            return;
+        }
+        long bytes = Math.min((long) sharedPreferences.getInt(KEY_TIMESHIFT_MAX_MB, DEFAULT_TIMESHIFT_MAX_MB) << 20,
+                minutes * 60L * TIMESHIFT_SIZING_KBPS * 125);
+        try {
+            timeShiftBuffer = new TimeShiftBuffer(new File(getCacheDir(), "timeshift.buf"), (int) bytes);
+        } catch (IOException e) {
+            Log.e(TAG, "time-shift disabled, can't map buffer file: " + e);
+            return;
+        }
+        timeShiftFactory = new TimeShiftDataSource.Factory(timeShiftBuffer);
+        timeShiftClient = HttpClientHolder.get().newBuilder()
+                .readTimeout(15, TimeUnit.SECONDS)
                 .build();
+    }
+
+    /**
+     * Stop the pump and delete the ring, later players stream directly
+     * 停止写入并删除环形缓冲，之后的播放器直接串流
+     */
+    private void closeTimeShift() {
+        if (timeShiftBuffer != null) {
+            timeShiftBuffer.close();
+            timeShiftBuffer = null;
+            timeShiftFactory = null;
+            timeShiftClient = null;
+        }
+        timeShiftStart = -1;
+    }
+
+    /**
+     * Stream bytes per second at the current level
+     * 当前档位每秒的串流字节数
+     */
+    private long getStreamByteRate() {
+        int kbps = streamSelector.getBitrate();
+        return (kbps > 0 ? kbps : DEFAULT_BITRATE_KBPS) * 125L;
+    }
+
+    /**
+     * Absolute ring position of what is audible now: the loader position minus what is buffered
+     * 当前正在播放的内容在环形缓冲中的绝对位置：加载位置减去已缓冲部分
+     */
+    private long getTimeShiftPlaybackPosition() {
+        long readPosition = timeShiftFactory.getReadPosition();
+        if (readPosition < 0 || player == null) {
+            return timeShiftBuffer.getWritePosition();
+        }
+        long buffered = player.getTotalBufferedDuration() * getStreamByteRate() / 1000;
+        return Math.max(readPosition - buffered, timeShiftBuffer.getOldestPosition());
+    }
+
+    private void rememberTimeShiftPosition() {
+        if (timeShiftBuffer != null && player != null) {
+            timeShiftStart = getTimeShiftPlaybackPosition();
+        }
+    }
+
+    private void playFromTimeShift(long position) {
+        timeShiftStart = position;
+        streamItem = buildStreamItem();
+        player.setMediaItem(streamItem);
+        preparePlayer();
+    }
+
+    /**
+     * Jump back in the time-shift buffer
+     * 在时移缓冲中回退
+     * @return false if time-shift is disabled
+     */
+    public boolean rewind(int seconds) {
+        if (timeShiftBuffer == null || player == null) {
+            return false;
+        }
+        long target = getTimeShiftPlaybackPosition() - seconds * getStreamByteRate();
+        playFromTimeShift(Math.max(target, timeShiftBuffer.getOldestPosition()));
+        return true;
+    }
+
+    /**
+     * Catch up with the live edge
+     * 追赶到直播位置
+     * @return false if time-shift is disabled
+     */
+    public boolean goLive() {
+        if (timeShiftBuffer == null || player == null) {
+            return false;
+        }
+        playFromTimeShift(timeShiftBuffer.getWritePosition());
+        return true;
+    }
+
+    /**
+     * How far playback is behind live
+     * 播放位置落后直播的时长
+     * @return milliseconds, 0 when time-shift is disabled
+     */
+    public long getTimeShiftBehindMs() {
+        if (timeShiftBuffer == null || player == null) {
+            return 0;
+        }
+        long behind = timeShiftBuffer.getWritePosition() - getTimeShiftPlaybackPosition();
+        return Math.max(0, behind * 1000 / getStreamByteRate());
+    }
+
+    /**
+     * How far back it is currently possible to rewind
+     * 当前可回退的最大时长
+     */
+    public long getTimeShiftAvailableMs() {
+        if (timeShiftBuffer == null) {
+            return 0;
+        }
+        long available = timeShiftBuffer.getWritePosition() - timeShiftBuffer.getOldestPosition();
+        return available * 1000 / getStreamByteRate();
+    }
+
+    /**
+     * Time-shift window in minutes, 0 disables it
+     * 时移窗口（分钟），0 表示关闭
+     */
+    public int getTimeShiftMinutes() {
+        return sharedPreferences.getInt(KEY_TIMESHIFT_MINUTES, DEFAULT_TIMESHIFT_MINUTES);
+    }
+
+    /**
+     * Persist the window and rebuild the ring and the player right away, playback resumes at live
+     * 保存时移窗口并立即重建环形缓冲与播放器，播放从直播位置继续
+     */
+    public void setTimeShiftMinutes(int minutes) {
+        if (minutes == getTimeShiftMinutes()) {
+            return;
+        }
+        sharedPreferences.edit().putInt(KEY_TIMESHIFT_MINUTES, minutes).apply();
+        Player old = player;
+        boolean playWhenReady = old != null && old.getPlayWhenReady();
+        boolean prepared = old != null && old.getPlaybackState() != Player.STATE_IDLE;
+        handler.removeCallbacks(idleReleaseRunnable);
+        if (old != null) {
+            // Stop reading the ring before it goes away, but keep the instance for the session
+            // 在环形缓冲移除前停止读取，但保留实例供会话使用
+            old.removeListener(playerListener);
+            old.stop();
+        }
+        closeTimeShift();
+        initTimeShift();
+        initExoPlayer(prepared || playWhenReady);
+        bindSessionPlayer();
+        if (old != null) {
+            old.release();
+        }
+        player.setPlayWhenReady(playWhenReady);
+        pausedAt = 0;
+        refreshWebSocketPolicy();
+    }
+
+    public boolean isTimeShiftEnabled() {
+        return timeShiftBuffer != null;
+    }
+
+    private long getTimeShiftWindowMs() {
+        return timeShiftBuffer != null ? getTimeShiftMinutes() * 60 * 1000L : 0;
+    }
+
+    /**
+     * Wrap the current player and hand it to the session, keeping the last metadata
+     * 包装当前播放器并交给会话，保留最近的元数据
+     */
+    private void bindSessionPlayer() {
+        sessionPlayer = new MetadataForwardingPlayer(player);
+        sessionPlayer.setMetadataOverride(currentMetadata);
+        session.setPlayer(sessionPlayer);
+    }
+
+    /**
+     * Build a fresh player and hand it to the session before releasing the old one,
+     * so the session never points at a released player
+     * 先创建新播放器并交给会话，再释放旧播放器，使会话始终不会指向已释放的实例
+     */
+    private void replacePlayer(boolean prepare) {
+        Player old = player;
+        if (old != null) {
+            old.removeListener(playerListener);
+        }
+        initExoPlayer(prepare);
+        bindSessionPlayer();
+        if (old != null) {
+            old.release();
+        }
+    }
+
+    private void initExoPlayer(boolean prepare) {
+        if (bandwidthMeter == null) {
+            bandwidthMeter = DefaultBandwidthMeter.getSingletonInstance(this);
+        }
+        ExoPlayer.Builder builder = new ExoPlayer.Builder(this, new TapRenderersFactory(this, pcmTap))
+                .setAudioAttributes(AudioAttributes.DEFAULT, true)
+                .setBandwidthMeter(bandwidthMeter)
+                .setLoadControl(buildLoadControl());
+        DefaultMediaSourceFactory mediaSourceFactory;
+        if (timeShiftFactory != null) {
+            // The time-shift pump tees into the recorder itself
+            // 时移写入端自行将数据分流给录制器
+            mediaSourceFactory = new DefaultMediaSourceFactory(timeShiftFactory);
+        } else {
+            mediaSourceFactory = new DefaultMediaSourceFactory(
+                    new RecordingDataSource.Factory(new DefaultDataSource.Factory(this,
+                            new OkHttpDataSource.Factory(HttpClientHolder.get())
+                                    .setTransferListener(throughputListener)), recorder));
+        }
+        builder.setMediaSourceFactory(mediaSourceFactory
+                .setLoadErrorHandlingPolicy(new StreamLoadErrorHandlingPolicy()));
+        ExoPlayer exoPlayer = builder.build();
+        exoPlayer.addAnalyticsListener(new MetricsAnalyticsListener(metrics));
+        player = exoPlayer;
+        pendingStreamSwitch = false;
+        wasReady = false;
+        streamUrl = streamSelector.getCurrentUrl();
+        streamItem = buildStreamItem();
         player.setMediaItem(streamItem);
         player.setPlayWhenReady(false);
-        player.prepare();
+        if (prepare) {
+            preparePlayer();
+        }
         player.addListener(playerListener);
     }
 
+    private LoadControl buildLoadControl() {
+        BufferProfile profile = getBufferProfile().resolve(NetworkMonitor.getNetworkType(this));
+        Log.d(TAG, "buffer profile: " + profile);
+        return new DefaultLoadControl.Builder()
+                .setBufferDurationsMs(profile.getMinBufferMs(), profile.getMaxBufferMs(),
+                        profile.getBufferForPlaybackMs(), profile.getBufferForPlaybackAfterRebufferMs())
+                .setBackBuffer(profile.getBackBufferMs(), true)
+                .setPrioritizeTimeOverSizeThresholds(true)
+                .build();
+    }
+
     public void playAndPauseStream() {
-        if (player != null && player.isPlaying()) {
+        if (player != null && player.getPlayWhenReady()) {
+            // Keep the player warm, the idle release is scheduled by the listener
+            // 保持播放器预热，空闲释放由监听器安排
             player.pause();
-            releaseExoPlayer();
             Toast.makeText(this, R.string.stream_stop_toast, Toast.LENGTH_SHORT).show();
         } else {
-            initExoPlayer();
+            if (player == null) {
+                initExoPlayer(false);
+                bindSessionPlayer();
+            }
+            if (player.getPlaybackState() == Player.STATE_IDLE) {
+                preparePlayer();
+            }
             player.play();
             Toast.makeText(this, R.string.stream_resume_toast, Toast.LENGTH_SHORT).show();
         }
     }
 
+    /**
+     * How long a paused player is kept alive before it is released
+     * 暂停的播放器在释放前保持存活的时长
+     */
+    public long getIdleReleaseTimeoutMs() {
+        return sharedPreferences.getLong(KEY_IDLE_RELEASE_MS, DEFAULT_IDLE_RELEASE_MS);
+    }
+
+    public void setIdleReleaseTimeoutMs(long timeoutMs) {
+        sharedPreferences.edit().putLong(KEY_IDLE_RELEASE_MS, timeoutMs).apply();
+        // Already paused, count the new timeout from the moment we paused
+        // 已处于暂停状态，从暂停时刻起按新的超时重新计时
+        if (pausedAt > 0) {
+            handler.removeCallbacks(idleReleaseRunnable);
+            long elapsed = SystemClock.elapsedRealtime() - pausedAt;
+            handler.postDelayed(idleReleaseRunnable,
+                    Math.max(0, Math.max(timeoutMs, getTimeShiftWindowMs()) - elapsed));
+        }
+    }
+
+    /**
+     * Whether the WebSocket is stopped while playing, leaving the stream's ICY titles as the only source
+     * 播放时是否停止 WebSocket，仅以串流的 ICY 标题作为数据源
+     * <p>
+     * Ignored while time-shift is on, the pump does not request ICY titles.
+     */
+    public boolean isStreamMetadataOnly() {
+        return sharedPreferences.getBoolean(KEY_STREAM_METADATA_ONLY, false);
+    }
+
+    public void setStreamMetadataOnly(boolean enabled) {
+        sharedPreferences.edit().putBoolean(KEY_STREAM_METADATA_ONLY, enabled).apply();
+        refreshWebSocketPolicy();
+    }
+
+    /**
+     * Stop or restart WebSocketService to match the preference and the play state
+     * 按偏好设置与播放状态停止或重新启动 WebSocketService
+     * <p>
+     * A restart is refused while the app is in the background, the activity
+     * calls this again when it comes back to the foreground.
+     */
+    public void refreshWebSocketPolicy() {
+        // Without ICY titles the WebSocket is the only source, never stop it
+        // 没有 ICY 标题时 WebSocket 是唯一数据源，不能停止
+        boolean suspend = player != null && player.getPlayWhenReady() && isStreamMetadataOnly()
+                && !isTimeShiftEnabled();
+        if (suspend == webSocketSuspended) {
+            return;
+        }
+        Intent intent = new Intent(this, WebSocketService.class);
+        if (suspend) {
+            Log.i(TAG, "playing on stream metadata, stop the WebSocket");
+            stopService(intent);
+            webSocketSuspended = true;
+            // The fallback poller stops with the service, ICY is all that is left
+            // 备用轮询随服务一同停止，只剩 ICY 数据源
+            NowPlayingDispatcher.getInstance().setSourceActive(NowPlayingSource.WEBSOCKET, false);
+            NowPlayingDispatcher.getInstance().setSourceActive(NowPlayingSource.API, false);
+            return;
+        }
+        try {
+            startService(intent);
+            webSocketSuspended = false;
+            NowPlayingDispatcher.getInstance().setSourceActive(NowPlayingSource.WEBSOCKET, true);
+            NowPlayingDispatcher.getInstance().setSourceActive(NowPlayingSource.API, true);
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "can't restart the WebSocket from the background: " + e);
+        }
+    }
+
+    /**
+     * Buffering profile used for new players, AUTO picks one from the network type
+     * 新播放器使用的缓冲配置，AUTO 根据网络类型自动选择
+     */
+    public BufferProfile getBufferProfile() {
+        return BufferProfile.fromName(sharedPreferences.getString(KEY_BUFFER_PROFILE, null));
+    }
+
+    /**
+     * Persist the profile, it is applied right away unless audio is playing
+     * 保存缓冲配置，若当前未在播放则立即生效，否则在下次创建播放器时生效
+     */
+    public void setBufferProfile(BufferProfile profile) {
+        sharedPreferences.edit().putString(KEY_BUFFER_PROFILE, profile.name()).apply();
+        if (player != null && !player.getPlayWhenReady()) {
+            // LoadControl can't be swapped on a live player, rebuild the idle one
+            // LoadControl 无法在运行中替换，重建空闲的播放器
+            boolean prepared = player.getPlaybackState() != Player.STATE_IDLE;
+            handler.removeCallbacks(idleReleaseRunnable);
+            rememberTimeShiftPosition();
+            replacePlayer(prepared);
+            pausedAt = 0;
+        }
+    }
+
+    /**
+     * Record the stream into one file per song, starting with the song on air now
+     * 将串流按歌曲录制为单独的文件，从当前播放的歌曲开始
+     */
+    public void startRecording() {
+        recorder.start(NowPlayingDispatcher.getInstance().getLatest(), getStreamByteRate());
+    }
+
+    public void stopRecording() {
+        recorder.stop();
+    }
+
+    public boolean isRecording() {
+        return recorder.isRecording();
+    }
+
+    public PlaybackMetrics getPlaybackMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Decoded audio as it is handed to the output, for the visualizer
+     * 送往音频输出的已解码音频，供可视化使用
+     */
+    public PcmTap getPcmTap() {
+        return pcmTap;
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
         super.onBind(intent);
@@ -177,7 +1066,17 @@ public class GRStreamPlayerService extends MediaSessionService {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        NowPlayingDispatcher dispatcher = NowPlayingDispatcher.getInstance();
+        dispatcher.setPresentationDelaySupplier(null);
+        dispatcher.getNowPlaying().removeObserver(nowPlayingObserver);
+        dispatcher.getLiveNowPlaying().removeObserver(liveNowPlayingObserver);
+        handler.removeCallbacks(idleReleaseRunnable);
+        handler.removeCallbacks(bandwidthSampleRunnable);
+        handler.removeCallbacks(recoveryRunnable);
+        networkMonitor.unregister();
         releaseExoPlayer();
+        recorder.stop();
+        closeTimeShift();
         session.release();
         session = null;
     }
@@ -6,50 +6,53 @@ import android.content.SharedPreferences;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.widget.Toast;
 
-import androidx.localbroadcastmanager.content.LocalBroadcastManager;
-
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParser;
-
 import net.hearnsoft.gensokyoradio.trd.beans.NowPlayingBean;
-import net.hearnsoft.gensokyoradio.trd.beans.SocketClientBeans;
-import net.hearnsoft.gensokyoradio.trd.model.SongDataModel;
+import net.hearnsoft.gensokyoradio.trd.model.NowPlayingDispatcher;
+import net.hearnsoft.gensokyoradio.trd.model.NowPlayingPoller;
+import net.hearnsoft.gensokyoradio.trd.model.NowPlayingRepository;
+import net.hearnsoft.gensokyoradio.trd.model.NowPlayingSnapshot;
+import net.hearnsoft.gensokyoradio.trd.model.NowPlayingSource;
+import net.hearnsoft.gensokyoradio.trd.utils.Backoff;
 import net.hearnsoft.gensokyoradio.trd.utils.Constants;
-import net.hearnsoft.gensokyoradio.trd.utils.NullStringToEmptyAdapterFactory;
-import net.hearnsoft.gensokyoradio.trd.utils.ViewModelUtils;
+import net.hearnsoft.gensokyoradio.trd.utils.NetworkMonitor;
 import net.hearnsoft.gensokyoradio.trd.ws.GRWebSocketClient;
+import net.hearnsoft.gensokyoradio.trd.ws.WsFrameDecoder;
 
 import java.net.URI;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSocketFactory;
+import okhttp3.Response;
 
 public class WebSocketService extends Service {
     private static final String TAG = WebSocketService.class.getSimpleName();
-    private static WsServiceInterface wsInterface;
-    private final ExecutorService signalThreadPool = Executors.newSingleThreadExecutor();
-    private GRWebSocketClient wsClient;
+    private static final long RECONNECT_BASE_MS = 1000;
+    private static final long RECONNECT_MAX_MS = 60 * 1000;
+    // Single thread for connecting and reconnecting, replaces the per-attempt Timer
+    // 连接与重连共用的单线程调度器，替代每次重连新建的 Timer
+    private final ScheduledExecutorService socketExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final Backoff reconnectBackoff = new Backoff(RECONNECT_BASE_MS, RECONNECT_MAX_MS);
+    private ScheduledFuture<?> pendingReconnect;
+    // Separate thread so polls are not held up by a blocking connect
+    // 独立线程，避免轮询被阻塞的连接过程拖延
+    private final ScheduledExecutorService pollExecutor = Executors.newSingleThreadScheduledExecutor();
+    private NowPlayingPoller fallbackPoller;
+    private NetworkMonitor networkMonitor;
+    private volatile boolean isClosing = false;
+    private volatile GRWebSocketClient wsClient;
     private SharedPreferences.Editor spEditor;
-    private Gson gson;
-    private SongDataModel songDataModel;
+    private WsFrameDecoder frameDecoder;
     private Handler toastHandler;
     private URI uri;
     private int clientId;
     private int recheck = 0;
 
-    public static void setCallback(WsServiceInterface dataInterface) {
-        wsInterface = dataInterface;
-    }
-
     @Override
     public void onCreate() {
         super.onCreate();
@@ -57,21 +60,18 @@ public class WebSocketService extends Service {
         SharedPreferences sharedPreferences = getSharedPreferences("ws", MODE_PRIVATE);
         spEditor = sharedPreferences.edit();
         toastHandler = new Handler(Looper.getMainLooper());
-        // 获取全局ViewModel
-        songDataModel = ViewModelUtils.getViewModel(getApplication(), SongDataModel.class);
-        gson = new GsonBuilder()
-                .disableHtmlEscaping()
-                .setLenient()
-                .serializeNulls()
-                .setPrettyPrinting()
-                .enableComplexMapKeySerialization()
-                .create();
+        frameDecoder = new WsFrameDecoder();
+        fallbackPoller = new NowPlayingPoller(NowPlayingRepository.getInstance(), pollExecutor,
+                snapshot -> NowPlayingDispatcher.getInstance().publish(snapshot, NowPlayingSource.API),
+                SystemClock::elapsedRealtime);
+        networkMonitor = new NetworkMonitor(this, this::onNetworkValidated);
+        networkMonitor.register();
         initWebSocket();
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        signalThreadPool.submit(this::initConn);
+        socketExecutor.submit(this::initConn);
         return super.onStartCommand(intent, flags, startId);
     }
 
@@ -90,6 +90,18 @@ public class WebSocketService extends Service {
 
     private void initWebSocket() {
         wsClient = new GRWebSocketClient(uri) {
+            @Override
+            public void onOpen(Response handshake) {
+                super.onOpen(handshake);
+                // Connected, reset the backoff ladder
+                // 连接成功，重置退避计数
+                reconnectBackoff.reset();
+                recheck = 0;
+                // The socket takes over again, the dispatcher drops its repeat of the current song
+                // 由 WebSocket 重新接管，分发器会丢弃与当前歌曲重复的推送
+                fallbackPoller.stop();
+            }
+
             @Override
             public void onMessage(String message) {
                 extractData(message);
@@ -98,49 +110,72 @@ public class WebSocketService extends Service {
             @Override
             public void onClose(int code, String reason, boolean remote) {
                 super.onClose(code, reason, remote);
+                if (isClosing || this != wsClient) {
+                    // Closed by ourselves or a stale client, nothing to recover
+                    // 主动关闭或旧客户端，不需要重连
+                    return;
+                }
+                // Keep metadata fresh until the socket is back
+                // 在 WebSocket 恢复前保持元数据更新
+                fallbackPoller.start();
                 String reasonLog;
                 if (code == 1000 && remote) {
                     reasonLog = "Socket connection closed cleanly,";
                 } else {
                     reasonLog = "Socket connection closed unexpectedly, the connection will be retried at a later time.";
-                    reConnectSocket();
+                    socketExecutor.execute(() -> reConnectSocket());
                 }
                 Log.d(TAG, reasonLog + " code=" + code + ", reason=" + reason);
             }
         };
-        wsClient.setSocketFactory(getDefaultSSLSocketFactory());
     }
 
+    /**
+     * Schedule a reconnect attempt with capped exponential backoff, runs on socketExecutor
+     * 按带上限的指数退避安排重连，在 socketExecutor 上执行
+     */
     private void reConnectSocket() {
+        if (isClosing) {
+            return;
+        }
         recheck++;
         postSocketErrorToast(recheck);
-        double timeOut;
-        switch (recheck) {
-            case 1:
-                timeOut = Math.floor((Math.random() * 10) + 1);
-                break;
-            case 2:
-                timeOut = Math.floor((Math.random() * 10) + 10);
-                break;
-            case 3:
-                timeOut = Math.floor((Math.random() * 15) + 15);
-                break;
-            case 4:
-                timeOut = Math.floor((Math.random() * 15) + 30);
-                break;
-            default:
-                timeOut = Math.floor((Math.random() * 20) + 45);
-                break;
+        long delayMs = reconnectBackoff.nextDelayMs();
+        scheduleReconnect(delayMs);
+        Log.d(TAG, "will reconnect in " + delayMs + " millisecond later...");
+    }
+
+    private void scheduleReconnect(long delayMs) {
+        cancelPendingReconnect();
+        pendingReconnect = socketExecutor.schedule(() -> {
+            pendingReconnect = null;
+            if (isClosing || (wsClient != null && wsClient.isOpen())) {
+                return;
+            }
+            initWebSocket();
+            initConn();
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelPendingReconnect() {
+        if (pendingReconnect != null) {
+            pendingReconnect.cancel(false);
+            pendingReconnect = null;
         }
-        Timer reConnTimer = new Timer();
-        reConnTimer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                initWebSocket();
-                initConn();
+    }
+
+    /**
+     * Validated network is back, retry a pending reconnect immediately
+     * 网络恢复后立即执行等待中的重连
+     */
+    private void onNetworkValidated() {
+        socketExecutor.execute(() -> {
+            if (pendingReconnect != null && !isClosing) {
+                Log.d(TAG, "network is back, reconnect now");
+                scheduleReconnect(0);
+                fallbackPoller.pollNow();
             }
-        }, (long)(timeOut * 1000));
-        Log.d(TAG, "will reconnect in " + (timeOut * 1000) + " millisecond later...");
+        });
     }
 
     /**
@@ -151,45 +186,35 @@ public class WebSocketService extends Service {
     private void extractData(String message) {
         if (message != null) {
             Log.d(TAG, "socket message:" + message);
-            if (isJson(message)) {
-                if (message.contains("welcome")) {
-                    SocketClientBeans clientBeans = gson.fromJson(message, SocketClientBeans.class);
-                    clientId = clientBeans.id;
+            WsFrameDecoder.Frame frame = frameDecoder.decode(message);
+            switch (frame.getType()) {
+                case WELCOME:
+                    clientId = frame.getClientBeans().getId();
                     Log.d(TAG, "get Client ID: " + clientId);
                     spEditor.putInt("clientId", clientId);
                     spEditor.apply();
-                } else if (message.equals("{\"message\":\"ping\"}")) {
+                    break;
+                case PING:
                     Log.d(TAG, "get ping! send pong!");
                     sendPong();
-                } else {
-                    // Generate bean data
-                    genBeanData(message);
-                }
-            } else if (message.startsWith("Error")) {
-                toastHandler.post(() -> Toast.makeText(getApplicationContext(),"ERROR: \n 收到服务器的错误信息: \n" + message, Toast.LENGTH_SHORT).show());
-            } else {
-                Log.e(TAG, "get invalid json data!");
-                toastHandler.post(() -> Toast.makeText(getApplicationContext(),"ERROR: 错误json数据!", Toast.LENGTH_SHORT).show());
+                    break;
+                case NOW_PLAYING:
+                    // Dispatch bean data
+                    dispatchBeanData(frame.getNowPlayingBean());
+                    break;
+                case ERROR:
+                    toastHandler.post(() -> Toast.makeText(getApplicationContext(),"ERROR: \n 收到服务器的错误信息: \n" + message, Toast.LENGTH_SHORT).show());
+                    break;
+                default:
+                    Log.e(TAG, "get invalid json data!");
+                    toastHandler.post(() -> Toast.makeText(getApplicationContext(),"ERROR: 错误json数据!", Toast.LENGTH_SHORT).show());
+                    break;
             }
         } else {
             Log.e(TAG, "get null data!");
         }
     }
 
-    /**
-     * Get default SSLSocketFactory
-     * 获取默认 SSLSocketFactory
-     */
-    private SSLSocketFactory getDefaultSSLSocketFactory() {
-        SSLContext sslContext = null;
-        try {
-            sslContext = SSLContext.getDefault();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return sslContext.getSocketFactory();
-    }
-
     /**
      * Send initial connection message
      * 发送初始连接消息
@@ -212,55 +237,13 @@ public class WebSocketService extends Service {
     }
 
     /**
-     * Generate bean data
-     * 从 json 反序列化生成 bean 数据
-     * @param jsonData
+     * Dispatch decoded bean data
+     * 分发解码后的 bean 数据
+     * @param bean
      */
-    private void genBeanData(String jsonData) {
-        Gson gson = new GsonBuilder()
-                .disableHtmlEscaping()
-                .setLenient()
-                .serializeNulls()
-                .setPrettyPrinting()
-                .enableComplexMapKeySerialization()
-                .registerTypeAdapterFactory(new NullStringToEmptyAdapterFactory<String>())
-                .create();
-        NowPlayingBean bean = gson.fromJson(jsonData, NowPlayingBean.class);
-        wsInterface.beanReceived(bean);
-
-        //genMediaNotification(bean);
-        setViewModelData(bean);
-        sendUpdateIntent();
-    }
-
-    private void sendUpdateIntent() {
-        Intent updateIntent = new Intent();
-        updateIntent.setAction("net.hearnsoft.gensokyoradio.trd.UPDATE_NOTIFICATION");
-        LocalBroadcastManager.getInstance(this).sendBroadcast(updateIntent);
-    }
-
-    private void setViewModelData(NowPlayingBean bean) {
-        songDataModel.getTitle().postValue(bean.getTitle());
-        songDataModel.getArtist().postValue(bean.getArtist());
-        songDataModel.getAlbum().postValue(bean.getAlbum());
-        songDataModel.getCoverUrl().postValue(bean.getAlbumArt());
-        songDataModel.getIsUpdatedInfo().postValue(true);
-    }
-
-    /**
-     * Check data is JSON data
-     * 检查数据是否为 JSON 数据
-     * @param jsonData
-     * @return boolean isJson
-     */
-    private boolean isJson(String jsonData) {
-        JsonElement jsonElement;
-        try {
-            jsonElement = JsonParser.parseString(jsonData);
-            return jsonElement.isJsonObject();
-        } catch (Exception e) {
-            return false;
-        }
+    private void dispatchBeanData(NowPlayingBean bean) {
+        NowPlayingDispatcher.getInstance()
+                .publish(NowPlayingSnapshot.from(bean, SystemClock.elapsedRealtime()), NowPlayingSource.WEBSOCKET);
     }
 
     /**
@@ -285,6 +268,8 @@ public class WebSocketService extends Service {
      * @params null
      */
     private void closeWsClient() {
+        isClosing = true;
+        fallbackPoller.stop();
         try {
             if (wsClient != null) {
                 wsClient.close();
@@ -299,7 +284,10 @@ public class WebSocketService extends Service {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        networkMonitor.unregister();
         closeWsClient();
+        socketExecutor.shutdownNow();
+        pollExecutor.shutdownNow();
     }
 
 }
@@ -0,0 +1,54 @@
+package net.hearnsoft.gensokyoradio.trd.utils;
+
+import java.util.Random;
+
+/**
+ * Capped exponential backoff with jitter
+ * 带随机抖动与上限的指数退避
+ * <p>
+ * The n-th delay is drawn from [cap/2, cap] where cap = min(maxMs, baseMs * 2^n),
+ * so retries spread out without ever collapsing to zero.
+ */
+public class Backoff {
+
+    private final long baseMs;
+    private final long maxMs;
+    private final Random random;
+    private int attempt = 0;
+
+    public Backoff(long baseMs, long maxMs) {
+        this(baseMs, maxMs, new Random());
+    }
+
+    public Backoff(long baseMs, long maxMs, Random random) {
+        this.baseMs = baseMs;
+        this.maxMs = maxMs;
+        this.random = random;
+    }
+
+    /**
+     * Get the delay for the next attempt and advance the attempt counter
+     * 获取下一次重试的延迟并增加重试计数
+     */
+    public synchronized long nextDelayMs() {
+        long cap = baseMs << Math.min(attempt, 30);
+        if (cap <= 0 || cap > maxMs) {
+            cap = maxMs;
+        }
+        attempt++;
+        long half = cap / 2;
+        return half + (long) (random.nextDouble() * (cap - half + 1));
+    }
+
+    public synchronized int getAttempt() {
+        return attempt;
+    }
+
+    /**
+     * Reset after a successful attempt
+     * 成功后重置
+     */
+    public synchronized void reset() {
+        attempt = 0;
+    }
+}
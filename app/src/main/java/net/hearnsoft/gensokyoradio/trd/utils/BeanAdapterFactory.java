@@ -0,0 +1,618 @@
+package net.hearnsoft.gensokyoradio.trd.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import net.hearnsoft.gensokyoradio.trd.beans.NowPlayingBean;
+import net.hearnsoft.gensokyoradio.trd.beans.SocketClientBeans;
+import net.hearnsoft.gensokyoradio.trd.beans.SongDataBean;
+import net.hearnsoft.gensokyoradio.trd.beans.misc.Misc;
+import net.hearnsoft.gensokyoradio.trd.beans.misc.ServerInfo;
+import net.hearnsoft.gensokyoradio.trd.beans.misc.SongData;
+import net.hearnsoft.gensokyoradio.trd.beans.misc.SongInfo;
+import net.hearnsoft.gensokyoradio.trd.beans.misc.SongTimes;
+import net.hearnsoft.gensokyoradio.trd.beans.misc.StreamLevel;
+import net.hearnsoft.gensokyoradio.trd.beans.misc.Streams;
+
+import java.io.IOException;
+
+/**
+ * Hand-written streaming adapters for all beans, no reflection involved.
+ * 所有 bean 的手写流式 TypeAdapter，不依赖反射，使 R8 可以安全地混淆 bean。
+ * <p>
+ * Null strings are read as empty strings and null numbers as 0, which
+ * replaces the former NullStringToEmptyAdapterFactory.
+ */
+public class BeanAdapterFactory implements TypeAdapterFactory {
+
+    public static final TypeAdapter<NowPlayingBean> NOW_PLAYING = new NowPlayingBeanAdapter();
+    public static final TypeAdapter<SocketClientBeans> SOCKET_CLIENT = new SocketClientAdapter();
+    public static final TypeAdapter<SongDataBean> SONG_DATA_BEAN = new SongDataBeanAdapter();
+    public static final TypeAdapter<ServerInfo> SERVER_INFO = new ServerInfoAdapter();
+    public static final TypeAdapter<Streams> STREAMS = new StreamsAdapter();
+    public static final TypeAdapter<StreamLevel> STREAM_LEVEL = new StreamLevelAdapter();
+    public static final TypeAdapter<SongInfo> SONG_INFO = new SongInfoAdapter();
+    public static final TypeAdapter<SongTimes> SONG_TIMES = new SongTimesAdapter();
+    public static final TypeAdapter<SongData> SONG_DATA = new SongDataAdapter();
+    public static final TypeAdapter<Misc> MISC = new MiscAdapter();
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> rawType = type.getRawType();
+        if (rawType == NowPlayingBean.class) {
+            return (TypeAdapter<T>) NOW_PLAYING;
+        } else if (rawType == SocketClientBeans.class) {
+            return (TypeAdapter<T>) SOCKET_CLIENT;
+        } else if (rawType == SongDataBean.class) {
+            return (TypeAdapter<T>) SONG_DATA_BEAN;
+        } else if (rawType == ServerInfo.class) {
+            return (TypeAdapter<T>) SERVER_INFO;
+        } else if (rawType == Streams.class) {
+            return (TypeAdapter<T>) STREAMS;
+        } else if (rawType == StreamLevel.class) {
+            return (TypeAdapter<T>) STREAM_LEVEL;
+        } else if (rawType == SongInfo.class) {
+            return (TypeAdapter<T>) SONG_INFO;
+        } else if (rawType == SongTimes.class) {
+            return (TypeAdapter<T>) SONG_TIMES;
+        } else if (rawType == SongData.class) {
+            return (TypeAdapter<T>) SONG_DATA;
+        } else if (rawType == Misc.class) {
+            return (TypeAdapter<T>) MISC;
+        }
+        return null;
+    }
+
+    public static String readString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return "";
+        }
+        return reader.nextString();
+    }
+
+    public static int readInt(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.NULL) {
+            reader.nextNull();
+            return 0;
+        }
+        if (token == JsonToken.STRING) {
+            // The API occasionally sends numbers as (empty) strings
+            // API 偶尔会以（空）字符串形式返回数字
+            String value = reader.nextString();
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        return reader.nextInt();
+    }
+
+    /**
+     * Begin reading an object, returns false if the value is null.
+     */
+    private static boolean beginObject(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return false;
+        }
+        reader.beginObject();
+        return true;
+    }
+
+    public static class NowPlayingBeanAdapter extends TypeAdapter<NowPlayingBean> {
+
+        /**
+         * Read a single now playing field into the bean
+         * 读取单个 now playing 字段
+         * @return false if the field name is unknown and nothing was consumed
+         */
+        public static boolean readField(JsonReader reader, String name, NowPlayingBean bean) throws IOException {
+            switch (name) {
+                case "songid":
+                    bean.setSongId(readInt(reader));
+                    return true;
+                case "title":
+                    bean.setTitle(readString(reader));
+                    return true;
+                case "artist":
+                    bean.setArtist(readString(reader));
+                    return true;
+                case "album":
+                    bean.setAlbum(readString(reader));
+                    return true;
+                case "circle":
+                    bean.setCircle(readString(reader));
+                    return true;
+                case "duration":
+                    bean.setDuration(readInt(reader));
+                    return true;
+                case "albumart":
+                    bean.setAlbumArt(readString(reader));
+                    return true;
+                case "year":
+                    bean.setYear(readString(reader));
+                    return true;
+                case "played":
+                    bean.setPlayed(readInt(reader));
+                    return true;
+                case "remaining":
+                    bean.setRemaining(readInt(reader));
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        @Override
+        public NowPlayingBean read(JsonReader reader) throws IOException {
+            if (!beginObject(reader)) {
+                return null;
+            }
+            NowPlayingBean bean = new NowPlayingBean();
+            while (reader.hasNext()) {
+                if (!readField(reader, reader.nextName(), bean)) {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return bean;
+        }
+
+        @Override
+        public void write(JsonWriter writer, NowPlayingBean bean) throws IOException {
+            if (bean == null) {
+                writer.nullValue();
+                return;
+            }
+            writer.beginObject();
+            writer.name("songid").value(bean.getSongId());
+            writer.name("title").value(bean.getTitle());
+            writer.name("artist").value(bean.getArtist());
+            writer.name("album").value(bean.getAlbum());
+            writer.name("circle").value(bean.getCircle());
+            writer.name("duration").value(bean.getDuration());
+            writer.name("albumart").value(bean.getAlbumArt());
+            writer.name("year").value(bean.getYear());
+            writer.name("played").value(bean.getPlayed());
+            writer.name("remaining").value(bean.getRemaining());
+            writer.endObject();
+        }
+    }
+
+    private static class SocketClientAdapter extends TypeAdapter<SocketClientBeans> {
+        @Override
+        public SocketClientBeans read(JsonReader reader) throws IOException {
+            if (!beginObject(reader)) {
+                return null;
+            }
+            SocketClientBeans bean = new SocketClientBeans();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "message":
+                        bean.setMessage(readString(reader));
+                        break;
+                    case "id":
+                        bean.setId(readInt(reader));
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            return bean;
+        }
+
+        @Override
+        public void write(JsonWriter writer, SocketClientBeans bean) throws IOException {
+            if (bean == null) {
+                writer.nullValue();
+                return;
+            }
+            writer.beginObject();
+            writer.name("message").value(bean.getMessage());
+            writer.name("id").value(bean.getId());
+            writer.endObject();
+        }
+    }
+
+    private static class SongDataBeanAdapter extends TypeAdapter<SongDataBean> {
+        @Override
+        public SongDataBean read(JsonReader reader) throws IOException {
+            if (!beginObject(reader)) {
+                return null;
+            }
+            SongDataBean bean = new SongDataBean();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "SERVERINFO":
+                        bean.setServerInfo(SERVER_INFO.read(reader));
+                        break;
+                    case "SONGINFO":
+                        bean.setSongInfo(SONG_INFO.read(reader));
+                        break;
+                    case "SONGTIMES":
+                        bean.setSongTimes(SONG_TIMES.read(reader));
+                        break;
+                    case "SONGDATA":
+                        bean.setSongData(SONG_DATA.read(reader));
+                        break;
+                    case "MISC":
+                        bean.setMisc(MISC.read(reader));
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            return bean;
+        }
+
+        @Override
+        public void write(JsonWriter writer, SongDataBean bean) throws IOException {
+            if (bean == null) {
+                writer.nullValue();
+                return;
+            }
+            writer.beginObject();
+            writer.name("SERVERINFO");
+            SERVER_INFO.write(writer, bean.getServerInfo());
+            writer.name("SONGINFO");
+            SONG_INFO.write(writer, bean.getSongInfo());
+            writer.name("SONGTIMES");
+            SONG_TIMES.write(writer, bean.getSongTimes());
+            writer.name("SONGDATA");
+            SONG_DATA.write(writer, bean.getSongData());
+            writer.name("MISC");
+            MISC.write(writer, bean.getMisc());
+            writer.endObject();
+        }
+    }
+
+    private static class ServerInfoAdapter extends TypeAdapter<ServerInfo> {
+        @Override
+        public ServerInfo read(JsonReader reader) throws IOException {
+            if (!beginObject(reader)) {
+                return null;
+            }
+            ServerInfo info = new ServerInfo();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "LASTUPDATE":
+                        info.setLastUpdate(readInt(reader));
+                        break;
+                    case "SERVERS":
+                        info.setServers(readInt(reader));
+                        break;
+                    case "STATUS":
+                        info.setStatus(readString(reader));
+                        break;
+                    case "LISTENERS":
+                        info.setListeners(readInt(reader));
+                        break;
+                    case "STREAMS":
+                        info.setStreams(STREAMS.read(reader));
+                        break;
+                    case "MODE":
+                        info.setMode(readString(reader));
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            return info;
+        }
+
+        @Override
+        public void write(JsonWriter writer, ServerInfo info) throws IOException {
+            if (info == null) {
+                writer.nullValue();
+                return;
+            }
+            writer.beginObject();
+            writer.name("LASTUPDATE").value(info.getLastUpdate());
+            writer.name("SERVERS").value(info.getServers());
+            writer.name("STATUS").value(info.getStatus());
+            writer.name("LISTENERS").value(info.getListeners());
+            writer.name("STREAMS");
+            STREAMS.write(writer, info.getStreams());
+            writer.name("MODE").value(info.getMode());
+            writer.endObject();
+        }
+    }
+
+    private static class StreamsAdapter extends TypeAdapter<Streams> {
+        @Override
+        public Streams read(JsonReader reader) throws IOException {
+            if (!beginObject(reader)) {
+                return null;
+            }
+            Streams streams = new Streams();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "lv1":
+                        streams.setLv1(STREAM_LEVEL.read(reader));
+                        break;
+                    case "lv2":
+                        streams.setLv2(STREAM_LEVEL.read(reader));
+                        break;
+                    case "lv3":
+                        streams.setLv3(STREAM_LEVEL.read(reader));
+                        break;
+                    case "lv4":
+                        streams.setLv4(STREAM_LEVEL.read(reader));
+                        break;
+                    case "lv5":
+                        streams.setLv5(STREAM_LEVEL.read(reader));
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            return streams;
+        }
+
+        @Override
+        public void write(JsonWriter writer, Streams streams) throws IOException {
+            if (streams == null) {
+                writer.nullValue();
+                return;
+            }
+            writer.beginObject();
+            writer.name("lv1");
+            STREAM_LEVEL.write(writer, streams.getLv1());
+            writer.name("lv2");
+            STREAM_LEVEL.write(writer, streams.getLv2());
+            writer.name("lv3");
+            STREAM_LEVEL.write(writer, streams.getLv3());
+            writer.name("lv4");
+            STREAM_LEVEL.write(writer, streams.getLv4());
+            writer.name("lv5");
+            STREAM_LEVEL.write(writer, streams.getLv5());
+            writer.endObject();
+        }
+    }
+
+    private static class StreamLevelAdapter extends TypeAdapter<StreamLevel> {
+        @Override
+        public StreamLevel read(JsonReader reader) throws IOException {
+            if (!beginObject(reader)) {
+                return null;
+            }
+            StreamLevel level = new StreamLevel();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "BITRATE":
+                        level.setBitRate(readInt(reader));
+                        break;
+                    case "LISTENERS":
+                        level.setListeners(readInt(reader));
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            return level;
+        }
+
+        @Override
+        public void write(JsonWriter writer, StreamLevel level) throws IOException {
+            if (level == null) {
+                writer.nullValue();
+                return;
+            }
+            writer.beginObject();
+            writer.name("BITRATE").value(level.getBitRate());
+            writer.name("LISTENERS").value(level.getListeners());
+            writer.endObject();
+        }
+    }
+
+    private static class SongInfoAdapter extends TypeAdapter<SongInfo> {
+        @Override
+        public SongInfo read(JsonReader reader) throws IOException {
+            if (!beginObject(reader)) {
+                return null;
+            }
+            SongInfo info = new SongInfo();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "TITLE":
+                        info.setTitle(readString(reader));
+                        break;
+                    case "ARTIST":
+                        info.setArtist(readString(reader));
+                        break;
+                    case "ALBUM":
+                        info.setAlbum(readString(reader));
+                        break;
+                    case "YEAR":
+                        info.setYear(readString(reader));
+                        break;
+                    case "CIRCLE":
+                        info.setCircle(readString(reader));
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            return info;
+        }
+
+        @Override
+        public void write(JsonWriter writer, SongInfo info) throws IOException {
+            if (info == null) {
+                writer.nullValue();
+                return;
+            }
+            writer.beginObject();
+            writer.name("TITLE").value(info.getTitle());
+            writer.name("ARTIST").value(info.getArtist());
+            writer.name("ALBUM").value(info.getAlbum());
+            writer.name("YEAR").value(info.getYear());
+            writer.name("CIRCLE").value(info.getCircle());
+            writer.endObject();
+        }
+    }
+
+    private static class SongTimesAdapter extends TypeAdapter<SongTimes> {
+        @Override
+        public SongTimes read(JsonReader reader) throws IOException {
+            if (!beginObject(reader)) {
+                return null;
+            }
+            SongTimes times = new SongTimes();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "DURATION":
+                        times.setDuration(readInt(reader));
+                        break;
+                    case "PLAYED":
+                        times.setPlayed(readInt(reader));
+                        break;
+                    case "REMAINING":
+                        times.setRemaining(readInt(reader));
+                        break;
+                    case "SONGSTART":
+                        times.setSongStart(readInt(reader));
+                        break;
+                    case "SONGEND":
+                        times.setSongEnd(readInt(reader));
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            return times;
+        }
+
+        @Override
+        public void write(JsonWriter writer, SongTimes times) throws IOException {
+            if (times == null) {
+                writer.nullValue();
+                return;
+            }
+            writer.beginObject();
+            writer.name("DURATION").value(times.getDuration());
+            writer.name("PLAYED").value(times.getPlayed());
+            writer.name("REMAINING").value(times.getRemaining());
+            writer.name("SONGSTART").value(times.getSongStart());
+            writer.name("SONGEND").value(times.getSongEnd());
+            writer.endObject();
+        }
+    }
+
+    private static class SongDataAdapter extends TypeAdapter<SongData> {
+        @Override
+        public SongData read(JsonReader reader) throws IOException {
+            if (!beginObject(reader)) {
+                return null;
+            }
+            SongData data = new SongData();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "SONGID":
+                        data.setSongID(readInt(reader));
+                        break;
+                    case "ALBUMID":
+                        data.setAlbumID(readInt(reader));
+                        break;
+                    case "RATING":
+                        data.setRating(readString(reader));
+                        break;
+                    case "TIMESRATED":
+                        data.setTimeSrated(readInt(reader));
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            return data;
+        }
+
+        @Override
+        public void write(JsonWriter writer, SongData data) throws IOException {
+            if (data == null) {
+                writer.nullValue();
+                return;
+            }
+            writer.beginObject();
+            writer.name("SONGID").value(data.getSongID());
+            writer.name("ALBUMID").value(data.getAlbumID());
+            writer.name("RATING").value(data.getRating());
+            writer.name("TIMESRATED").value(data.getTimeSrated());
+            writer.endObject();
+        }
+    }
+
+    private static class MiscAdapter extends TypeAdapter<Misc> {
+        @Override
+        public Misc read(JsonReader reader) throws IOException {
+            if (!beginObject(reader)) {
+                return null;
+            }
+            Misc misc = new Misc();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "CIRCLELINK":
+                        misc.setCircleLink(readString(reader));
+                        break;
+                    case "ALBUMART":
+                        misc.setAlbumArt(readString(reader));
+                        break;
+                    case "CIRCLEART":
+                        misc.setCircleArt(readString(reader));
+                        break;
+                    case "OFFSET":
+                        misc.setOffset(readString(reader));
+                        break;
+                    case "OFFSETTIME":
+                        misc.setOffsetTime(readInt(reader));
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            return misc;
+        }
+
+        @Override
+        public void write(JsonWriter writer, Misc misc) throws IOException {
+            if (misc == null) {
+                writer.nullValue();
+                return;
+            }
+            writer.beginObject();
+            writer.name("CIRCLELINK").value(misc.getCircleLink());
+            writer.name("ALBUMART").value(misc.getAlbumArt());
+            writer.name("CIRCLEART").value(misc.getCircleArt());
+            writer.name("OFFSET").value(misc.getOffset());
+            writer.name("OFFSETTIME").value(misc.getOffsetTime());
+            writer.endObject();
+        }
+    }
+}
@@ -8,9 +8,15 @@ public class Constants {
 
     public static final String NOW_PLAYING_JSON = "https://gensokyoradio.net/api/station/playing/";
 
-    public static final String GR_STREAM_URL = "https://stream.gensokyoradio.net/1/";
+    public static final String ALBUM_ART_URL = "https://gensokyoradio.net/images/albums/500/";
+
+    // Stream mirrors, stream level N is served at <mirror>N/
+    // 串流镜像，第 N 档码率的地址为 <mirror>N/
+    public static final String[] GR_STREAM_MIRRORS = {
+            "https://stream.gensokyoradio.net/",
+            "http://eu1.stream.gensokyoradio.net:8000/"
+    };
 
-    public static final String GR_STREAM_URL_EU1 = "http://eu1.stream.gensokyoradio.net:8000/1/";
     public static final String NOTIFICATION_CHANNEL_ID = "PlayChannel";
 
 }
@@ -0,0 +1,56 @@
+package net.hearnsoft.gensokyoradio.trd.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Shared Gson instance with the hand-written bean adapters registered
+ * 注册了手写 bean 适配器的全局 Gson 实例
+ */
+public class GsonUtils {
+
+    private static volatile Gson gson;
+
+    public static Gson getGson() {
+        if (gson == null) {
+            synchronized (GsonUtils.class) {
+                if (gson == null) {
+                    gson = new GsonBuilder()
+                            .disableHtmlEscaping()
+                            .setLenient()
+                            .serializeNulls()
+                            .registerTypeAdapterFactory(new BeanAdapterFactory())
+                            .create();
+                }
+            }
+        }
+        return gson;
+    }
+
+    /**
+     * Decode a UTF-8 JSON document straight from a byte stream, without buffering it as a String
+     * 直接从字节流解码 UTF-8 JSON 文档，不先缓冲为 String
+     * @return the decoded value, or null for an empty or null document
+     * @throws IOException if reading fails or the JSON is malformed
+     */
+    public static <T> T fromStream(InputStream in, Class<T> type) throws IOException {
+        // Adapters are cached by Gson, only the reader is per document
+        // Gson 会缓存适配器，每个文档只新建读取器
+        TypeAdapter<T> adapter = getGson().getAdapter(type);
+        JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        reader.setLenient(true);
+        try {
+            return adapter.read(reader);
+        } catch (JsonParseException | IllegalStateException e) {
+            throw new IOException("malformed " + type.getSimpleName(), e);
+        }
+    }
+}
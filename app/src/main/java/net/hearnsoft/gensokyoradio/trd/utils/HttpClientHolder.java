@@ -0,0 +1,32 @@
+package net.hearnsoft.gensokyoradio.trd.utils;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * Application scoped OkHttp client
+ * 应用级共享的 OkHttp 客户端
+ * <p>
+ * The metadata API, the WebSocket, the player's stream and Glide all go through
+ * this client, so they share one connection pool, dispatcher and TLS session
+ * cache and a connection to gensokyoradio.net is set up once instead of once
+ * per stack. Callers that need different timeouts derive a client with
+ * {@link OkHttpClient#newBuilder()}, which keeps sharing the pool.
+ */
+public final class HttpClientHolder {
+
+    private static volatile OkHttpClient client;
+
+    private HttpClientHolder() {
+    }
+
+    public static OkHttpClient get() {
+        if (client == null) {
+            synchronized (HttpClientHolder.class) {
+                if (client == null) {
+                    client = new OkHttpClient.Builder().build();
+                }
+            }
+        }
+        return client;
+    }
+}
@@ -0,0 +1,67 @@
+package net.hearnsoft.gensokyoradio.trd.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Fails once more than a fixed number of bytes has been read
+ * 读取超过固定字节数时抛出异常
+ * <p>
+ * Guards parsers against a misbehaving server sending an unbounded body.
+ */
+public class LimitedInputStream extends FilterInputStream {
+
+    private final long limit;
+    private long count = 0;
+    private long mark = 0;
+
+    public LimitedInputStream(InputStream in, long limit) {
+        super(in);
+        this.limit = limit;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int value = super.read();
+        if (value >= 0) {
+            consumed(1);
+        }
+        return value;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = super.read(b, off, len);
+        if (read > 0) {
+            consumed(read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        consumed(skipped);
+        return skipped;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+        super.mark(readLimit);
+        mark = count;
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        super.reset();
+        count = mark;
+    }
+
+    private void consumed(long bytes) throws IOException {
+        count += bytes;
+        if (count > limit) {
+            throw new IOException("stream exceeds " + limit + " bytes");
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package net.hearnsoft.gensokyoradio.trd.utils;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Watches the default network and reports when a validated network becomes available
+ * 监听默认网络，在网络恢复（已验证）时回调
+ */
+public class NetworkMonitor {
+
+    private static final String TAG = NetworkMonitor.class.getSimpleName();
+
+    public interface Listener {
+        /**
+         * A validated default network is available again
+         * 默认网络已恢复且通过验证
+         */
+        void onNetworkValidated();
+
+        /**
+         * The default network was lost
+         * 默认网络丢失
+         */
+        default void onNetworkLost() {
+        }
+    }
+
+    private final ConnectivityManager connectivityManager;
+    private final Listener listener;
+    private boolean registered = false;
+    private volatile boolean validated = false;
+
+    private final ConnectivityManager.NetworkCallback networkCallback = new ConnectivityManager.NetworkCallback() {
+        @Override
+        public void onCapabilitiesChanged(@NonNull Network network, @NonNull NetworkCapabilities capabilities) {
+            boolean nowValidated = capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+            if (nowValidated && !validated) {
+                validated = true;
+                Log.d(TAG, "network validated: " + network);
+                listener.onNetworkValidated();
+            } else if (!nowValidated) {
+                validated = false;
+            }
+        }
+
+        @Override
+        public void onLost(@NonNull Network network) {
+            validated = false;
+            Log.d(TAG, "network lost: " + network);
+            listener.onNetworkLost();
+        }
+    };
+
+    public NetworkMonitor(Context context, Listener listener) {
+        this.connectivityManager = context.getSystemService(ConnectivityManager.class);
+        this.listener = listener;
+    }
+
+    public synchronized void register() {
+        if (!registered && connectivityManager != null) {
+            connectivityManager.registerDefaultNetworkCallback(networkCallback);
+            registered = true;
+        }
+    }
+
+    public synchronized void unregister() {
+        if (registered) {
+            connectivityManager.unregisterNetworkCallback(networkCallback);
+            registered = false;
+        }
+    }
+
+    public boolean isValidated() {
+        return validated;
+    }
+
+    /**
+     * Coarse transport type of the default network, used as a cache key
+     * 默认网络的传输类型，用作缓存键
+     * @return "wifi", "cellular", "ethernet", "other" or "none"
+     */
+    public static String getNetworkType(Context context) {
+        ConnectivityManager manager = context.getSystemService(ConnectivityManager.class);
+        if (manager == null) {
+            return "none";
+        }
+        NetworkCapabilities capabilities = manager.getNetworkCapabilities(manager.getActiveNetwork());
+        if (capabilities == null) {
+            return "none";
+        }
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) {
+            return "wifi";
+        } else if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) {
+            return "cellular";
+        } else if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)) {
+            return "ethernet";
+        }
+        return "other";
+    }
+}
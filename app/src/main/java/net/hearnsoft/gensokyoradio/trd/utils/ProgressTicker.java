@@ -0,0 +1,70 @@
+package net.hearnsoft.gensokyoradio.trd.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * Reports song progress once per second on the main looper
+ * 在主线程每秒报告一次歌曲进度
+ * <p>
+ * Position is always derived from the monotonic clock and the anchored song
+ * start, never counted, so it cannot drift. Ticks are aligned to whole seconds
+ * of the song and stop while the ticker is stopped.
+ */
+public class ProgressTicker implements Runnable {
+
+    public interface Listener {
+        void onProgress(int positionSec, int durationSec);
+    }
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Listener listener;
+    private long songStartMs = -1;
+    private int durationSec = 0;
+    private boolean running = false;
+
+    public ProgressTicker(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Anchor the current song
+     * 设置当前歌曲的锚点
+     * @param songStartMs elapsedRealtime at which the song became audible
+     */
+    public void setSong(long songStartMs, int durationSec) {
+        this.songStartMs = songStartMs;
+        this.durationSec = durationSec;
+        if (running) {
+            handler.removeCallbacks(this);
+            run();
+        }
+    }
+
+    public void start() {
+        if (!running) {
+            running = true;
+            run();
+        }
+    }
+
+    public void stop() {
+        running = false;
+        handler.removeCallbacks(this);
+    }
+
+    @Override
+    public void run() {
+        if (!running || songStartMs < 0) {
+            return;
+        }
+        long positionMs = Math.min(SystemClock.elapsedRealtime() - songStartMs, durationSec * 1000L);
+        int positionSec = (int) Math.max(0, positionMs / 1000);
+        listener.onProgress(positionSec, durationSec);
+        if (positionSec < durationSec) {
+            long delay = positionMs < 0 ? -positionMs : 1000 - positionMs % 1000;
+            handler.postDelayed(this, delay);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package net.hearnsoft.gensokyoradio.trd.utils;
+
+/**
+ * Estimates the server's wall clock on top of the local monotonic clock
+ * 在本地单调时钟的基础上估算服务器的墙上时间
+ * <p>
+ * Every response bounds the offset between server time and
+ * {@link android.os.SystemClock#elapsedRealtime()}: the server read its clock
+ * somewhere between sending the request and receiving the response, and the
+ * HTTP Date header truncates to the second. Intersecting those intervals
+ * narrows the estimate, which is the midpoint of what is left.
+ */
+public class ServerClock {
+
+    private static final long DATE_RESOLUTION_MS = 1000;
+
+    // Bounds of serverMs - elapsedMs
+    // serverMs - elapsedMs 的上下界
+    private long lowerBound = Long.MIN_VALUE;
+    private long upperBound = Long.MAX_VALUE;
+
+    /**
+     * Add a sample from an HTTP Date header
+     * 添加一个来自 HTTP Date 头的样本
+     * @param dateMs parsed Date header, whole seconds
+     * @param requestSentMs elapsedRealtime when the request was sent
+     * @param responseMs elapsedRealtime when the response arrived
+     */
+    public synchronized void onDateHeader(long dateMs, long requestSentMs, long responseMs) {
+        long lower = dateMs - responseMs;
+        long upper = dateMs + DATE_RESOLUTION_MS - requestSentMs;
+        if (lower > upperBound || upper < lowerBound) {
+            // The server clock was stepped, earlier samples no longer apply
+            // 服务器时钟发生跳变，之前的样本已失效
+            lowerBound = lower;
+            upperBound = upper;
+            return;
+        }
+        lowerBound = Math.max(lowerBound, lower);
+        upperBound = Math.min(upperBound, upper);
+    }
+
+    /**
+     * The server's clock had at least reached serverMs when a response arrived, e.g. LASTUPDATE
+     * 收到响应时服务器时间至少已达到 serverMs，例如 LASTUPDATE
+     */
+    public synchronized void onServerTimeAtLeast(long serverMs, long responseMs) {
+        long lower = serverMs - responseMs;
+        if (lower <= upperBound) {
+            lowerBound = Math.max(lowerBound, lower);
+        }
+    }
+
+    /**
+     * Whether an upper bound is known, i.e. at least one Date header was seen
+     * 是否已知上界，即至少收到过一次 Date 头
+     */
+    public synchronized boolean isSynced() {
+        return upperBound != Long.MAX_VALUE;
+    }
+
+    /**
+     * Best estimate of serverMs - elapsedMs
+     * serverMs - elapsedMs 的最佳估计
+     */
+    public synchronized long getOffsetMs() {
+        if (!isSynced()) {
+            return lowerBound == Long.MIN_VALUE ? 0 : lowerBound;
+        }
+        return lowerBound + (upperBound - lowerBound) / 2;
+    }
+
+    /**
+     * Half the width of the remaining interval
+     * 剩余区间宽度的一半
+     */
+    public synchronized long getUncertaintyMs() {
+        return isSynced() ? (upperBound - lowerBound) / 2 : Long.MAX_VALUE;
+    }
+
+    /**
+     * Convert a server timestamp to the local elapsedRealtime base
+     * 将服务器时间戳换算为本地 elapsedRealtime 时基
+     */
+    public long toElapsed(long serverMs) {
+        return serverMs - getOffsetMs();
+    }
+}
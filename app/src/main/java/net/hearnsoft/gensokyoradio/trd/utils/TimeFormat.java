@@ -0,0 +1,49 @@
+package net.hearnsoft.gensokyoradio.trd.utils;
+
+/**
+ * mm:ss formatting backed by a lazily filled table
+ * 由按需填充的表支持的 mm:ss 格式化
+ * <p>
+ * The progress label changes every second, each value is built once and reused.
+ */
+public final class TimeFormat {
+
+    // Songs rarely run past an hour, longer values are built on the fly
+    // 歌曲很少超过一小时，更长的时间实时生成
+    private static final int TABLE_SIZE = 60 * 60;
+    private static final String[] TABLE = new String[TABLE_SIZE];
+
+    private TimeFormat() {
+    }
+
+    public static String format(int seconds) {
+        if (seconds < 0) {
+            seconds = 0;
+        }
+        if (seconds >= TABLE_SIZE) {
+            return build(seconds);
+        }
+        // Strings are immutable, a racy fill at worst builds the same value twice
+        // String 不可变，并发填充最多重复生成同一个值
+        String value = TABLE[seconds];
+        if (value == null) {
+            value = build(seconds);
+            TABLE[seconds] = value;
+        }
+        return value;
+    }
+
+    private static String build(int seconds) {
+        int minutes = seconds / 60;
+        int remainingSeconds = seconds % 60;
+        StringBuilder builder = new StringBuilder(6);
+        if (minutes < 10) {
+            builder.append('0');
+        }
+        builder.append(minutes).append(':');
+        if (remainingSeconds < 10) {
+            builder.append('0');
+        }
+        return builder.append(remainingSeconds).toString();
+    }
+}
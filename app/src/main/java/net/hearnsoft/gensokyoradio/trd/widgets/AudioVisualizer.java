@@ -0,0 +1,49 @@
+package net.hearnsoft.gensokyoradio.trd.widgets;
+
+import android.content.Context;
+import android.view.View;
+
+import net.hearnsoft.gensokyoradio.trd.audio.PcmTap;
+
+/**
+ * A spectrum visualizer that can be swapped at runtime
+ * 可在运行时切换的频谱可视化组件
+ */
+public interface AudioVisualizer {
+
+    View asView();
+
+    void initialize(Context context);
+
+    void setVisible(boolean visible);
+
+    void setPlaying(boolean playing);
+
+    void setPowerSaveMode(boolean powerSaveMode);
+
+    void setColor(int color);
+
+    /**
+     * Source of decoded audio, null while the player service is not bound
+     * 已解码音频的来源，播放服务未绑定时为 null
+     */
+    void setAudioTap(PcmTap tap);
+
+    /**
+     * Frames drawn since the visualizer was created
+     * 可视化组件创建以来绘制的帧数
+     */
+    long getRenderedFrames();
+
+    /**
+     * Vsyncs that passed without drawing while displaying
+     * 显示期间未绘制而跳过的垂直同步数
+     */
+    long getSkippedFrames();
+
+    /**
+     * Current target frame rate
+     * 当前的目标帧率
+     */
+    float getFrameRate();
+}
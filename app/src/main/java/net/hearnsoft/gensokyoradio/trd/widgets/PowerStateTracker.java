@@ -0,0 +1,63 @@
+package net.hearnsoft.gensokyoradio.trd.widgets;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+import android.os.PowerManager;
+
+/**
+ * Feeds battery saver and thermal status changes into a VisualizerScheduler
+ * 将省电模式与温控状态的变化同步给 VisualizerScheduler
+ * <p>
+ * Callbacks arrive on the main thread.
+ */
+class PowerStateTracker {
+
+    private final Context context;
+    private final VisualizerScheduler scheduler;
+    private final PowerManager powerManager;
+    private PowerManager.OnThermalStatusChangedListener thermalListener;
+    private boolean started = false;
+
+    private final BroadcastReceiver powerSaveReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            scheduler.setPowerSave(powerManager.isPowerSaveMode());
+        }
+    };
+
+    PowerStateTracker(Context context, VisualizerScheduler scheduler) {
+        this.context = context;
+        this.scheduler = scheduler;
+        this.powerManager = context.getSystemService(PowerManager.class);
+    }
+
+    void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        scheduler.setPowerSave(powerManager.isPowerSaveMode());
+        context.registerReceiver(powerSaveReceiver,
+                new IntentFilter(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED));
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            thermalListener = scheduler::setThermalStatus;
+            scheduler.setThermalStatus(powerManager.getCurrentThermalStatus());
+            powerManager.addThermalStatusListener(context.getMainExecutor(), thermalListener);
+        }
+    }
+
+    void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        context.unregisterReceiver(powerSaveReceiver);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && thermalListener != null) {
+            powerManager.removeThermalStatusListener(thermalListener);
+            thermalListener = null;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package net.hearnsoft.gensokyoradio.trd.widgets;
+
+import net.hearnsoft.gensokyoradio.trd.audio.FftAnalyzer;
+import net.hearnsoft.gensokyoradio.trd.audio.PcmRingBuffer;
+
+/**
+ * Bar geometry and smoothing shared by the visualizer implementations
+ * 各可视化实现共用的柱条几何与平滑逻辑
+ * <p>
+ * Not thread safe, owned by whichever thread renders. Audio comes in through
+ * the lock-free PcmRingBuffer, so the owner never waits on the audio thread.
+ */
+class SpectrumBars {
+
+    static final int BAR_COUNT = 32;
+    private static final int FFT_SIZE = 2048;
+    private static final float MIN_HZ = 40f;
+    private static final float MAX_HZ = 16000f;
+    // Bands at or below this level draw as empty bars
+    // 电平不高于该值的频带显示为空柱
+    private static final float RANGE_DB = 60f;
+    // The tap sees audio before the AudioTrack buffer plays it out, roughly this much earlier
+    // 采样在 AudioTrack 缓冲播放之前就被截取，大约提前这么多时间
+    private static final int OUTPUT_LATENCY_MS = 250;
+    // With no new audio for this long the bars fall back to the floor
+    // 超过该时长没有新音频时，柱条回落到底部
+    private static final long SILENCE_TIMEOUT_NANOS = 200_000_000L;
+    // Bars move 63% of the way to their target in this time, independent of frame rate
+    // 柱条在该时间内移动到目标的 63%，与帧率无关
+    private static final float SMOOTHING_TIME_CONSTANT_MS = 40f;
+    // Closer than this a bar snaps to its target and stops requesting frames
+    // 距离小于该值时柱条直接对齐目标，并停止请求新帧
+    private static final float SNAP_DISTANCE_PX = 0.5f;
+
+    private final FftAnalyzer analyzer = new FftAnalyzer(FFT_SIZE, BAR_COUNT, MIN_HZ, MAX_HZ);
+    private final float[] window = new float[FFT_SIZE];
+    private final float[] bandsDb = new float[BAR_COUNT];
+    // Line segments for Canvas.drawLines, x0 y0 x1 y1 per bar
+    // 供 Canvas.drawLines 使用的线段，每个柱条为 x0 y0 x1 y1
+    private final float[] points = new float[BAR_COUNT * 4];
+    // Target y of each bar, refreshed from the latest analysis on every frame
+    // 每个柱条的目标 y 坐标，每帧根据最新的分析结果更新
+    private final float[] targets = new float[BAR_COUNT];
+    private float height = 0;
+    private long analyzedPosition = -1;
+    private long lastAudioNanos = 0;
+    private long lastFrameTimeNanos = 0;
+
+    float[] getPoints() {
+        return points;
+    }
+
+    /**
+     * Lay the bars out over the given size
+     * 按给定尺寸排布柱条
+     * @return stroke width for the bars
+     */
+    float setSize(int width, int height) {
+        this.height = height;
+        float barUnit = width / (float) BAR_COUNT;
+        float barWidth = barUnit * 8f / 9f;
+        barUnit = barWidth + (barUnit - barWidth) * BAR_COUNT / (BAR_COUNT - 1f);
+        for (int i = 0; i < BAR_COUNT; i++) {
+            points[i * 4] = points[i * 4 + 2] = i * barUnit + (barWidth / 2);
+            points[i * 4 + 1] = height;
+            points[i * 4 + 3] = height;
+            targets[i] = height;
+        }
+        return barWidth;
+    }
+
+    /**
+     * The audio source changed, analyze the next window even if the position matches
+     * 音频来源已变更，即使位置相同也分析下一个窗口
+     */
+    void resetSource() {
+        analyzedPosition = -1;
+    }
+
+    /**
+     * Forget the last frame time so the next step does not jump after a pause
+     * 忘记上一帧时间，避免暂停后的下一步跳变
+     */
+    void resetClock() {
+        lastFrameTimeNanos = 0;
+    }
+
+    boolean isAudible(long frameTimeNanos) {
+        return frameTimeNanos - lastAudioNanos <= SILENCE_TIMEOUT_NANOS;
+    }
+
+    /**
+     * Analyze the newest audio and move every bar towards it, allocation free
+     * 分析最新的音频并将每个柱条移向目标值，不产生内存分配
+     * @param ringBuffer audio source, may be null
+     * @return true if any bar moved
+     */
+    boolean step(PcmRingBuffer ringBuffer, long frameTimeNanos) {
+        updateTargets(ringBuffer, frameTimeNanos);
+        float elapsedMs = lastFrameTimeNanos == 0 ? 16f : (frameTimeNanos - lastFrameTimeNanos) / 1e6f;
+        lastFrameTimeNanos = frameTimeNanos;
+        float factor = 1f - (float) Math.exp(-elapsedMs / SMOOTHING_TIME_CONSTANT_MS);
+        boolean changed = false;
+        for (int i = 0; i < BAR_COUNT; i++) {
+            final int j = i * 4 + 1;
+            float delta = targets[i] - points[j];
+            if (delta == 0f) {
+                continue;
+            }
+            points[j] = Math.abs(delta) < SNAP_DISTANCE_PX ? targets[i] : points[j] + delta * factor;
+            changed = true;
+        }
+        return changed;
+    }
+
+    private void updateTargets(PcmRingBuffer ringBuffer, long frameTimeNanos) {
+        if (ringBuffer == null) {
+            return;
+        }
+        long written = ringBuffer.getWritePosition();
+        int sampleRate = ringBuffer.getSampleRate();
+        if (written == analyzedPosition || sampleRate <= 0) {
+            if (!isAudible(frameTimeNanos)) {
+                // Paused or stalled, let the bars drop
+                // 暂停或卡顿，让柱条回落
+                for (int i = 0; i < BAR_COUNT; i++) {
+                    targets[i] = height;
+                }
+            }
+            return;
+        }
+        analyzedPosition = written;
+        lastAudioNanos = frameTimeNanos;
+        if (!ringBuffer.readLatest(window, sampleRate * OUTPUT_LATENCY_MS / 1000)) {
+            return;
+        }
+        analyzer.setSampleRate(sampleRate);
+        analyzer.analyze(window, bandsDb);
+        for (int i = 0; i < BAR_COUNT; i++) {
+            float level = Math.min(Math.max((bandsDb[i] + RANGE_DB) / RANGE_DB, 0f), 1f);
+            targets[i] = height - level * height;
+        }
+    }
+}
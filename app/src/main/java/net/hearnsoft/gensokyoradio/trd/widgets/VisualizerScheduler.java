@@ -0,0 +1,136 @@
+package net.hearnsoft.gensokyoradio.trd.widgets;
+
+/**
+ * Picks the visualizer frame rate from the display, thermal and power state
+ * 根据屏幕刷新率、温控与省电状态选择可视化帧率
+ * <p>
+ * Frames are snapped to whole vsync periods so every rendered frame lines up
+ * with the display. Vsyncs that pass without a rendered frame are counted as
+ * skipped, which is where the power saving shows up.
+ * <p>
+ * Conditions may be set from any thread, frames are driven by a single
+ * render thread.
+ */
+public class VisualizerScheduler {
+
+    // Mirrors PowerManager.THERMAL_STATUS_*, kept here so the policy runs on the JVM
+    // 对应 PowerManager.THERMAL_STATUS_*，在此定义以便策略可在 JVM 上运行
+    public static final int THERMAL_STATUS_NONE = 0;
+    public static final int THERMAL_STATUS_MODERATE = 2;
+    public static final int THERMAL_STATUS_SEVERE = 3;
+    public static final int THERMAL_STATUS_CRITICAL = 4;
+
+    // Bars smoothed over 40 ms gain nothing from more than this
+    // 柱条经过 40 ms 平滑，超过该帧率已无收益
+    static final float MAX_RATE_HZ = 60f;
+    static final float THERMAL_MODERATE_RATE_HZ = 30f;
+    static final float THERMAL_SEVERE_RATE_HZ = 15f;
+    static final float THERMAL_CRITICAL_RATE_HZ = 5f;
+    static final float POWER_SAVE_RATE_HZ = 20f;
+    // The window is covered, e.g. by a dialog or the notification shade
+    // 窗口被遮挡，例如弹出对话框或下拉通知栏
+    static final float UNFOCUSED_RATE_HZ = 10f;
+
+    private volatile float refreshRate = 60f;
+    private volatile int thermalStatus = THERMAL_STATUS_NONE;
+    private volatile boolean powerSave = false;
+    private volatile boolean focused = true;
+    private long lastRenderNanos = 0;
+    private volatile long renderedFrames = 0;
+    private volatile long skippedFrames = 0;
+
+    public void setRefreshRate(float refreshRate) {
+        if (refreshRate > 0) {
+            this.refreshRate = refreshRate;
+        }
+    }
+
+    public void setThermalStatus(int thermalStatus) {
+        this.thermalStatus = thermalStatus;
+    }
+
+    public void setPowerSave(boolean powerSave) {
+        this.powerSave = powerSave;
+    }
+
+    public void setFocused(boolean focused) {
+        this.focused = focused;
+    }
+
+    /**
+     * Frame rate wanted under the current conditions, before snapping to vsync
+     * 当前条件下期望的帧率（未对齐到垂直同步）
+     */
+    public float getTargetRate() {
+        float rate = Math.min(MAX_RATE_HZ, refreshRate);
+        if (thermalStatus >= THERMAL_STATUS_CRITICAL) {
+            rate = Math.min(rate, THERMAL_CRITICAL_RATE_HZ);
+        } else if (thermalStatus >= THERMAL_STATUS_SEVERE) {
+            rate = Math.min(rate, THERMAL_SEVERE_RATE_HZ);
+        } else if (thermalStatus >= THERMAL_STATUS_MODERATE) {
+            rate = Math.min(rate, THERMAL_MODERATE_RATE_HZ);
+        }
+        if (powerSave) {
+            rate = Math.min(rate, POWER_SAVE_RATE_HZ);
+        }
+        if (!focused) {
+            rate = Math.min(rate, UNFOCUSED_RATE_HZ);
+        }
+        return rate;
+    }
+
+    public long getVsyncNanos() {
+        return (long) (1_000_000_000L / refreshRate);
+    }
+
+    /**
+     * Time between rendered frames, a whole number of vsync periods
+     * 两次渲染之间的间隔，为垂直同步周期的整数倍
+     */
+    public long getFrameIntervalNanos() {
+        int vsyncs = (int) Math.ceil(refreshRate / getTargetRate() - 0.01f);
+        return Math.max(1, vsyncs) * getVsyncNanos();
+    }
+
+    /**
+     * How long to wait before asking for the next frame callback
+     * 请求下一次帧回调前需要等待的时长
+     */
+    public long getNextFrameDelayMs() {
+        return (getFrameIntervalNanos() - getVsyncNanos()) / 1_000_000L;
+    }
+
+    /**
+     * Whether a frame at this time is far enough from the last rendered one
+     * 该时刻的帧与上次渲染的帧间隔是否足够
+     */
+    public boolean isDue(long frameTimeNanos) {
+        return lastRenderNanos == 0
+                || frameTimeNanos - lastRenderNanos >= getFrameIntervalNanos() - getVsyncNanos() / 2;
+    }
+
+    public void onFrameRendered(long frameTimeNanos) {
+        if (lastRenderNanos != 0) {
+            long vsyncs = Math.round((double) (frameTimeNanos - lastRenderNanos) / getVsyncNanos());
+            skippedFrames += Math.max(0, vsyncs - 1);
+        }
+        lastRenderNanos = frameTimeNanos;
+        renderedFrames++;
+    }
+
+    /**
+     * Forget the last frame, e.g. when the view stops displaying
+     * 忘记上一帧，例如视图停止显示时
+     */
+    public void reset() {
+        lastRenderNanos = 0;
+    }
+
+    public long getRenderedFrames() {
+        return renderedFrames;
+    }
+
+    public long getSkippedFrames() {
+        return skippedFrames;
+    }
+}
@@ -0,0 +1,398 @@
+package net.hearnsoft.gensokyoradio.trd.widgets;
+
+import android.animation.ValueAnimator;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.SurfaceTexture;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.Display;
+import android.view.Surface;
+import android.view.TextureView;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+
+import net.hearnsoft.gensokyoradio.trd.R;
+import net.hearnsoft.gensokyoradio.trd.audio.PcmTap;
+
+/**
+ * Visualizer that analyzes and draws on its own render thread
+ * 在独立渲染线程上分析与绘制的可视化组件
+ * <p>
+ * The render thread owns the bars, the paint and the surface. The main thread
+ * only flips volatile state and posts wake-ups, so layout work there (cover
+ * art, text) never delays a frame and a frame never delays layout. Audio is
+ * read from the lock-free PcmRingBuffer, no locks are shared with either the
+ * main or the audio thread.
+ */
+public class VisualizerTextureView extends TextureView
+        implements TextureView.SurfaceTextureListener, AudioVisualizer {
+    private static final String TAG = VisualizerTextureView.class.getSimpleName();
+
+    private static final int DEFAULT_ALPHA = 140;
+
+    private static final long DURATION_LINK = 800;
+    private static final long DURATION_UNLINK = 600;
+    // Polling interval while the bars are settled and no audio arrives
+    // 柱条稳定且无新音频时的轮询间隔
+    private static final long IDLE_POLL_MS = 100;
+
+    private final VisualizerScheduler mScheduler = new VisualizerScheduler();
+    private PowerStateTracker mPowerStateTracker;
+    private ValueAnimator mColorAnimator;
+
+    // Written on the main thread, read on the render thread
+    // 主线程写入，渲染线程读取
+    private volatile PcmTap mTap;
+    private volatile boolean mDisplaying = false; // the state we're animating to
+    private volatile int mColor;
+
+    private boolean mVisible = false;
+    private boolean mPlaying = false;
+    private boolean mPowerSaveMode = false;
+
+    // Render thread only
+    // 仅限渲染线程
+    private HandlerThread mRenderThread;
+    private Handler mRenderHandler;
+    private Surface mSurface;
+    private final SpectrumBars mBars = new SpectrumBars();
+    private final Paint mPaint = new Paint();
+    private boolean mFrameScheduled = false;
+    // The surface is new or resized and holds no frame yet
+    // 画面为新建或已调整大小，尚无内容
+    private boolean mNeedsDraw = true;
+
+    private final Choreographer.FrameCallback mFrameCallback = this::doFrame;
+    private final Runnable mRedraw = () -> {
+        mNeedsDraw = true;
+        scheduleFrame();
+    };
+    private final Runnable mResetSource = () -> {
+        mBars.resetSource();
+        mRedraw.run();
+    };
+
+    private final Runnable mDisableTap = new Runnable() {
+        @Override
+        public void run() {
+            PcmTap tap = mTap;
+            if (tap != null && !mDisplaying) {
+                tap.setEnabled(false);
+            }
+        }
+    };
+
+    public VisualizerTextureView(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+        setOpaque(false);
+        setSurfaceTextureListener(this);
+    }
+
+    public VisualizerTextureView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public VisualizerTextureView(Context context) {
+        this(context, null, 0);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+
+        final int size = Math.min(getMeasuredWidth(), getMeasuredHeight());
+        setMeasuredDimension(size, size);
+    }
+
+    @Override
+    public void onSurfaceTextureAvailable(@NonNull SurfaceTexture surfaceTexture, int width, int height) {
+        mRenderThread = new HandlerThread("VisualizerRender", Process.THREAD_PRIORITY_DISPLAY);
+        mRenderThread.start();
+        mRenderHandler = new Handler(mRenderThread.getLooper());
+        final Surface surface = new Surface(surfaceTexture);
+        mRenderHandler.post(() -> {
+            mSurface = surface;
+            mPaint.setStrokeWidth(mBars.setSize(width, height));
+            mNeedsDraw = true;
+            scheduleFrame();
+        });
+    }
+
+    @Override
+    public void onSurfaceTextureSizeChanged(@NonNull SurfaceTexture surfaceTexture, int width, int height) {
+        mRenderHandler.post(() -> {
+            mPaint.setStrokeWidth(mBars.setSize(width, height));
+            mNeedsDraw = true;
+            scheduleFrame();
+        });
+    }
+
+    @Override
+    public boolean onSurfaceTextureDestroyed(@NonNull SurfaceTexture surfaceTexture) {
+        final HandlerThread thread = mRenderThread;
+        mRenderHandler.post(() -> {
+            cancelFrame();
+            if (mSurface != null) {
+                mSurface.release();
+                mSurface = null;
+            }
+            // Released here, after the last frame on this thread is done with it
+            // 在本线程最后一帧使用完毕后再释放
+            surfaceTexture.release();
+            thread.quit();
+        });
+        mRenderThread = null;
+        mRenderHandler = null;
+        // The render thread may still be drawing, it releases the texture itself
+        // 渲染线程可能仍在绘制，由其自行释放纹理
+        return false;
+    }
+
+    @Override
+    public void onSurfaceTextureUpdated(@NonNull SurfaceTexture surfaceTexture) {
+        // nothing to do, the render thread produces the frames
+    }
+
+    private void requestFrame() {
+        Handler handler = mRenderHandler;
+        if (handler != null) {
+            handler.post(mRedraw);
+        }
+    }
+
+    private void scheduleFrame() {
+        scheduleFrame(0);
+    }
+
+    private void scheduleFrame(long delayMs) {
+        if (!mFrameScheduled && mSurface != null) {
+            mFrameScheduled = true;
+            Choreographer.getInstance().postFrameCallbackDelayed(mFrameCallback, delayMs);
+        }
+    }
+
+    private void cancelFrame() {
+        if (mFrameScheduled) {
+            mFrameScheduled = false;
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+        }
+        mBars.resetClock();
+        mScheduler.reset();
+    }
+
+    private void doFrame(long frameTimeNanos) {
+        mFrameScheduled = false;
+        if (!mDisplaying) {
+            // Keep the last frame, the view fades it out
+            // 保留最后一帧，由视图将其淡出
+            cancelFrame();
+            return;
+        }
+        if (!mScheduler.isDue(frameTimeNanos)) {
+            // Woke up a vsync early, try the next one
+            // 提前一个垂直同步周期被唤醒，等待下一个
+            scheduleFrame();
+            return;
+        }
+        PcmTap tap = mTap;
+        boolean changed = mBars.step(tap != null ? tap.getRingBuffer() : null, frameTimeNanos);
+        if ((changed || mNeedsDraw) && draw(tap != null)) {
+            mNeedsDraw = false;
+            mScheduler.onFrameRendered(frameTimeNanos);
+        }
+        if (changed || mBars.isAudible(frameTimeNanos)) {
+            scheduleFrame(mScheduler.getNextFrameDelayMs());
+        } else {
+            // Settled and silent, poll for audio at a low rate
+            // 已稳定且无音频，以较低频率轮询
+            mBars.resetClock();
+            scheduleFrame(IDLE_POLL_MS);
+        }
+    }
+
+    /**
+     * @return false if the surface could not be locked
+     */
+    private boolean draw(boolean bars) {
+        Canvas canvas;
+        try {
+            canvas = mSurface.lockHardwareCanvas();
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            Log.w(TAG, "could not lock surface", e);
+            return false;
+        }
+        try {
+            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            if (bars) {
+                mPaint.setColor(mColor);
+                canvas.drawLines(mBars.getPoints(), mPaint);
+            }
+        } finally {
+            mSurface.unlockCanvasAndPost(canvas);
+        }
+        return true;
+    }
+
+    private void updateRefreshRate() {
+        Display display = getDisplay();
+        if (display != null) {
+            mScheduler.setRefreshRate(display.getRefreshRate());
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (mPowerStateTracker == null) {
+            mPowerStateTracker = new PowerStateTracker(getContext(), mScheduler);
+        }
+        mPowerStateTracker.start();
+        updateRefreshRate();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        mPowerStateTracker.stop();
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    public void onWindowFocusChanged(boolean hasWindowFocus) {
+        super.onWindowFocusChanged(hasWindowFocus);
+        mScheduler.setFocused(hasWindowFocus);
+    }
+
+    @Override
+    public View asView() {
+        return this;
+    }
+
+    @Override
+    public void initialize(Context context) {
+        Log.d(TAG, "initialize");
+        mColor = ContextCompat.getColor(context, R.color.system_accent);
+        mPaint.setAntiAlias(true);
+    }
+
+    @Override
+    public long getRenderedFrames() {
+        return mScheduler.getRenderedFrames();
+    }
+
+    @Override
+    public long getSkippedFrames() {
+        return mScheduler.getSkippedFrames();
+    }
+
+    @Override
+    public float getFrameRate() {
+        return mScheduler.getTargetRate();
+    }
+
+    @Override
+    public void setAudioTap(PcmTap tap) {
+        PcmTap previous = mTap;
+        if (previous == tap) {
+            return;
+        }
+        if (previous != null) {
+            previous.setEnabled(false);
+        }
+        mTap = tap;
+        if (tap != null && mDisplaying) {
+            tap.setEnabled(true);
+        }
+        Handler handler = mRenderHandler;
+        if (handler != null) {
+            handler.post(mResetSource);
+        }
+    }
+
+    @Override
+    public void setVisible(boolean visible) {
+        if (mVisible != visible) {
+            mVisible = visible;
+            checkStateChanged();
+        }
+    }
+
+    @Override
+    public void setPlaying(boolean playing) {
+        if (mPlaying != playing) {
+            mPlaying = playing;
+            checkStateChanged();
+        }
+    }
+
+    @Override
+    public void setPowerSaveMode(boolean powerSaveMode) {
+        if (mPowerSaveMode != powerSaveMode) {
+            mPowerSaveMode = powerSaveMode;
+            checkStateChanged();
+        }
+    }
+
+    @Override
+    public void setColor(int color) {
+        if (color == Color.TRANSPARENT) {
+            color = Color.WHITE;
+        }
+
+        color = Color.argb(DEFAULT_ALPHA, Color.red(color), Color.green(color), Color.blue(color));
+
+        if (mColorAnimator != null) {
+            mColorAnimator.cancel();
+        }
+        if (mColor != color) {
+            // Animate on the main thread, the render thread picks the value up each frame
+            // 在主线程执行动画，渲染线程每帧读取当前值
+            mColorAnimator = ValueAnimator.ofArgb(mColor, color);
+            mColorAnimator.setStartDelay(600);
+            mColorAnimator.setDuration(1200);
+            mColorAnimator.addUpdateListener(animation -> {
+                mColor = (int) animation.getAnimatedValue();
+                requestFrame();
+            });
+            mColorAnimator.start();
+        }
+    }
+
+    private void checkStateChanged() {
+        if (mVisible && mPlaying && !mPowerSaveMode) {
+            if (!mDisplaying) {
+                mDisplaying = true;
+
+                PcmTap tap = mTap;
+                if (tap != null) {
+                    tap.setEnabled(true);
+                }
+                updateRefreshRate();
+                requestFrame();
+                animate()
+                        .alpha(1f)
+                        .setDuration(DURATION_LINK);
+            }
+        } else {
+            if (mDisplaying) {
+                mDisplaying = false;
+                requestFrame();
+
+                final long unlinkDuration = (mVisible ? DURATION_UNLINK : 0);
+                animate()
+                        .alpha(0f)
+                        .withEndAction(mDisableTap)
+                        .setDuration(unlinkDuration);
+            }
+        }
+    }
+}
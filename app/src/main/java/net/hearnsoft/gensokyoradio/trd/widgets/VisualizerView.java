@@ -18,36 +18,42 @@
 package net.hearnsoft.gensokyoradio.trd.widgets;
 
 import android.animation.ObjectAnimator;
-import android.animation.ValueAnimator;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.media.audiofx.Visualizer;
-import android.os.AsyncTask;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.view.Choreographer;
+import android.view.Display;
 import android.view.View;
 
 import androidx.core.content.ContextCompat;
 
 import net.hearnsoft.gensokyoradio.trd.R;
+import net.hearnsoft.gensokyoradio.trd.audio.PcmTap;
 
-public class VisualizerView extends View {
+public class VisualizerView extends View implements AudioVisualizer {
     private static final String TAG = VisualizerView.class.getSimpleName();
 
     private static final int DEFAULT_ALPHA = 140;
 
     private static final long DURATION_LINK = 800;
     private static final long DURATION_UNLINK = 600;
-    private int mSessionId;
+    // Polling interval while the bars are settled and no audio arrives
+    // 柱条稳定且无新音频时的轮询间隔
+    private static final long IDLE_POLL_MS = 100;
 
     private Paint mPaint;
-    private Visualizer mVisualizer;
+    private PcmTap mTap;
     private ObjectAnimator mVisualizerColorAnimator;
 
-    private final ValueAnimator[] mValueAnimators = new ValueAnimator[32];
-    private final float[] mFFTPoints = new float[128];
+    private final SpectrumBars mBars = new SpectrumBars();
+    private boolean mFrameScheduled = false;
+
+    private final Choreographer.FrameCallback mFrameCallback = this::doFrame;
+    private final VisualizerScheduler mScheduler = new VisualizerScheduler();
+    private PowerStateTracker mPowerStateTracker;
 
     private boolean mVisible = false;
     private boolean mPlaying = false;
@@ -56,69 +62,11 @@ public class VisualizerView extends View {
 
     private int mColor;
 
-    private final Visualizer.OnDataCaptureListener mVisualizerListener =
-            new Visualizer.OnDataCaptureListener() {
-                byte rfk, ifk;
-                int dbValue;
-                float magnitude;
-
-                @Override
-                public void onWaveFormDataCapture(Visualizer visualizer, byte[] bytes,
-                                                  int samplingRate) {
-                    // empty
-                }
-
-                @Override
-                public void onFftDataCapture(Visualizer visualizer, byte[] fft,
-                                             int samplingRate) {
-                    for (int i = 0; i < 32; i++) {
-                        mValueAnimators[i].cancel();
-
-                        rfk = fft[i * 2 + 2];
-                        ifk = fft[i * 2 + 3];
-                        magnitude = rfk * rfk + ifk * ifk;
-                        dbValue = magnitude > 0 ? (int) (10 * Math.log10(magnitude)) : 0;
-
-                        mValueAnimators[i].setFloatValues(
-                                mFFTPoints[i * 4 + 1],
-                                mFFTPoints[3] - (dbValue * 16f));
-                        mValueAnimators[i].start();
-                    }
-                }
-            };
-
-    private final Runnable mLinkVisualizer = new Runnable() {
+    private final Runnable mDisableTap = new Runnable() {
         @Override
         public void run() {
-            try {
-                mVisualizer = new Visualizer(0);
-            } catch (Exception e) {
-                Log.e(TAG, "error initializing visualizer", e);
-                return;
-            }
-
-            mVisualizer.setEnabled(false);
-            mVisualizer.setCaptureSize(66);
-            mVisualizer.setDataCaptureListener(mVisualizerListener, Visualizer.getMaxCaptureRate(),
-                    false, true);
-            mVisualizer.setEnabled(true);
-        }
-    };
-
-    private final Runnable mAsyncUnlinkVisualizer = new Runnable() {
-        @Override
-        public void run() {
-            AsyncTask.execute(mUnlinkVisualizer);
-        }
-    };
-
-    private final Runnable mUnlinkVisualizer = new Runnable() {
-        @Override
-        public void run() {
-            if (mVisualizer != null) {
-                mVisualizer.setEnabled(false);
-                mVisualizer.release();
-                mVisualizer = null;
+            if (mTap != null && !mDisplaying) {
+                mTap.setEnabled(false);
             }
         }
     };
@@ -147,15 +95,81 @@ public class VisualizerView extends View {
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
 
-        float barUnit = w / 32f;
-        float barWidth = barUnit * 8f / 9f;
-        barUnit = barWidth + (barUnit - barWidth) * 32f / 31f;
-        mPaint.setStrokeWidth(barWidth);
+        mPaint.setStrokeWidth(mBars.setSize(w, h));
+    }
+
+    private void scheduleFrame() {
+        scheduleFrame(0);
+    }
+
+    private void scheduleFrame(long delayMs) {
+        if (!mFrameScheduled && mDisplaying) {
+            mFrameScheduled = true;
+            Choreographer.getInstance().postFrameCallbackDelayed(mFrameCallback, delayMs);
+        }
+    }
+
+    private void cancelFrame() {
+        if (mFrameScheduled) {
+            mFrameScheduled = false;
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+        }
+        mBars.resetClock();
+        mScheduler.reset();
+    }
+
+    private void updateRefreshRate() {
+        Display display = getDisplay();
+        if (display != null) {
+            mScheduler.setRefreshRate(display.getRefreshRate());
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (mPowerStateTracker == null) {
+            mPowerStateTracker = new PowerStateTracker(getContext(), mScheduler);
+        }
+        mPowerStateTracker.start();
+        updateRefreshRate();
+        scheduleFrame();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        cancelFrame();
+        mPowerStateTracker.stop();
+    }
 
-        for (int i = 0; i < 32; i++) {
-            mFFTPoints[i * 4] = mFFTPoints[i * 4 + 2] = i * barUnit + (barWidth / 2);
-            mFFTPoints[i * 4 + 1] = h;
-            mFFTPoints[i * 4 + 3] = h;
+    @Override
+    public void onWindowFocusChanged(boolean hasWindowFocus) {
+        super.onWindowFocusChanged(hasWindowFocus);
+        mScheduler.setFocused(hasWindowFocus);
+    }
+
+    private void doFrame(long frameTimeNanos) {
+        mFrameScheduled = false;
+        if (!mScheduler.isDue(frameTimeNanos)) {
+            // Woke up a vsync early, try the next one
+            // 提前一个垂直同步周期被唤醒，等待下一个
+            scheduleFrame();
+            return;
+        }
+        PcmTap tap = mTap;
+        boolean changed = mBars.step(tap != null ? tap.getRingBuffer() : null, frameTimeNanos);
+        if (changed) {
+            invalidate();
+            mScheduler.onFrameRendered(frameTimeNanos);
+        }
+        if (changed || mBars.isAudible(frameTimeNanos)) {
+            scheduleFrame(mScheduler.getNextFrameDelayMs());
+        } else {
+            // Settled and silent, poll for audio at a low rate
+            // 已稳定且无音频，以较低频率轮询
+            mBars.resetClock();
+            scheduleFrame(IDLE_POLL_MS);
         }
     }
 
@@ -163,11 +177,17 @@ public class VisualizerView extends View {
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
 
-        if (mVisualizer != null) {
-            canvas.drawLines(mFFTPoints, mPaint);
+        if (mTap != null) {
+            canvas.drawLines(mBars.getPoints(), mPaint);
         }
     }
 
+    @Override
+    public View asView() {
+        return this;
+    }
+
+    @Override
     public void initialize(Context context) {
         Log.d(TAG, "initialize");
         mColor = ContextCompat.getColor(context, R.color.system_accent);
@@ -175,18 +195,41 @@ public class VisualizerView extends View {
         mPaint = new Paint();
         mPaint.setAntiAlias(true);
         mPaint.setColor(mColor);
+    }
 
-        for (int i = 0; i < 32; i++) {
-            final int j = i * 4 + 1;
-            mValueAnimators[i] = new ValueAnimator();
-            mValueAnimators[i].setDuration(128);
-            mValueAnimators[i].addUpdateListener(animation ->
-                    mFFTPoints[j] = (float) animation.getAnimatedValue());
-        }
+    @Override
+    public long getRenderedFrames() {
+        return mScheduler.getRenderedFrames();
+    }
+
+    @Override
+    public long getSkippedFrames() {
+        return mScheduler.getSkippedFrames();
+    }
 
-        mValueAnimators[31].addUpdateListener(animation -> postInvalidate());
+    @Override
+    public float getFrameRate() {
+        return mScheduler.getTargetRate();
+    }
+
+    @Override
+    public void setAudioTap(PcmTap tap) {
+        if (mTap == tap) {
+            return;
+        }
+        if (mTap != null) {
+            mTap.setEnabled(false);
+        }
+        mTap = tap;
+        mBars.resetSource();
+        if (tap != null && mDisplaying) {
+            tap.setEnabled(true);
+            scheduleFrame();
+        }
+        invalidate();
     }
 
+    @Override
     public void setVisible(boolean visible) {
         if (mVisible != visible) {
             mVisible = visible;
@@ -194,6 +237,7 @@ public class VisualizerView extends View {
         }
     }
 
+    @Override
     public void setPlaying(boolean playing) {
         if (mPlaying != playing) {
             mPlaying = playing;
@@ -201,6 +245,7 @@ public class VisualizerView extends View {
         }
     }
 
+    @Override
     public void setPowerSaveMode(boolean powerSaveMode) {
         if (mPowerSaveMode != powerSaveMode) {
             mPowerSaveMode = powerSaveMode;
@@ -208,6 +253,7 @@ public class VisualizerView extends View {
         }
     }
 
+    @Override
     public void setColor(int color) {
         if (color == Color.TRANSPARENT) {
             color = Color.WHITE;
@@ -218,7 +264,7 @@ public class VisualizerView extends View {
         if (mColor != color) {
             mColor = color;
 
-            if (mVisualizer != null) {
+            if (mTap != null) {
                 if (mVisualizerColorAnimator != null) {
                     mVisualizerColorAnimator.cancel();
                 }
@@ -239,7 +285,11 @@ public class VisualizerView extends View {
             if (!mDisplaying) {
                 mDisplaying = true;
 
-                AsyncTask.execute(mLinkVisualizer);
+                if (mTap != null) {
+                    mTap.setEnabled(true);
+                }
+                updateRefreshRate();
+                scheduleFrame();
                 animate()
                         .alpha(1f)
                         .setDuration(DURATION_LINK);
@@ -247,11 +297,12 @@ public class VisualizerView extends View {
         } else {
             if (mDisplaying) {
                 mDisplaying = false;
+                cancelFrame();
 
                 final long unlinkDuration = (mVisible ? DURATION_UNLINK : 0);
                 animate()
                         .alpha(0f)
-                        .withEndAction(mAsyncUnlinkVisualizer)
+                        .withEndAction(mDisableTap)
                         .setDuration(unlinkDuration);
             }
         }
@@ -2,44 +2,168 @@ package net.hearnsoft.gensokyoradio.trd.ws;
 
 import android.util.Log;
 
-import org.java_websocket.client.WebSocketClient;
-import org.java_websocket.drafts.Draft_6455;
-import org.java_websocket.handshake.ServerHandshake;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import net.hearnsoft.gensokyoradio.trd.utils.HttpClientHolder;
 
 import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import javax.net.ssl.SSLParameters;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
 
-public class GRWebSocketClient extends WebSocketClient {
+/**
+ * WebSocket client on the shared OkHttp stack
+ * 基于共享 OkHttp 协议栈的 WebSocket 客户端
+ * <p>
+ * Keeps the callback surface of the former Java-WebSocket client: failures are
+ * reported through {@link #onError(Exception)} followed by an abnormal
+ * {@link #onClose(int, String, boolean)}, and onClose is called exactly once.
+ * One instance connects once, create a new one to reconnect.
+ */
+public class GRWebSocketClient {
 
     private static final String TAG = GRWebSocketClient.class.getSimpleName();
+    // Close code reported when the connection dropped without a close frame
+    // 连接在没有关闭帧的情况下断开时报告的关闭码
+    public static final int CLOSE_ABNORMAL = 1006;
+    // OkHttp drops the read timeout after the upgrade, pings are what detect a half-open socket
+    // OkHttp 在升级后不再有读超时，需依靠 ping 发现半开连接
+    private static final long PING_INTERVAL_SECONDS = 30;
+
+    private final URI serverUri;
+    private final OkHttpClient client;
+    private final CountDownLatch connectLatch = new CountDownLatch(1);
+    private final AtomicBoolean closeReported = new AtomicBoolean(false);
+    private volatile WebSocket webSocket;
+    private volatile boolean open = false;
+    private volatile boolean closedLocally = false;
+
+    private final WebSocketListener listener = new WebSocketListener() {
+        @Override
+        public void onOpen(@NonNull WebSocket webSocket, @NonNull Response response) {
+            open = true;
+            connectLatch.countDown();
+            GRWebSocketClient.this.onOpen(response);
+        }
+
+        @Override
+        public void onMessage(@NonNull WebSocket webSocket, @NonNull String text) {
+            GRWebSocketClient.this.onMessage(text);
+        }
+
+        @Override
+        public void onClosing(@NonNull WebSocket webSocket, int code, @NonNull String reason) {
+            // Acknowledge the server's close frame
+            // 回应服务器的关闭帧
+            webSocket.close(code, null);
+        }
+
+        @Override
+        public void onClosed(@NonNull WebSocket webSocket, int code, @NonNull String reason) {
+            open = false;
+            connectLatch.countDown();
+            reportClose(code, reason, !closedLocally);
+        }
+
+        @Override
+        public void onFailure(@NonNull WebSocket webSocket, @NonNull Throwable t, @Nullable Response response) {
+            open = false;
+            connectLatch.countDown();
+            GRWebSocketClient.this.onError(t instanceof Exception ? (Exception) t : new Exception(t));
+            reportClose(CLOSE_ABNORMAL, String.valueOf(t.getMessage()), true);
+        }
+    };
 
     public GRWebSocketClient(URI serverUri) {
-        super(serverUri, new Draft_6455());
+        this(serverUri, HttpClientHolder.get().newBuilder()
+                .pingInterval(PING_INTERVAL_SECONDS, TimeUnit.SECONDS)
+                .build());
+    }
+
+    public GRWebSocketClient(URI serverUri, OkHttpClient client) {
+        this.serverUri = serverUri;
+        this.client = client;
         Log.d(TAG, "Init WebSocket client.");
     }
 
-    @Override
-    protected void onSetSSLParameters(SSLParameters sslParameters) {
-        //super.onSetSSLParameters(sslParameters);
+    /**
+     * Start connecting, callbacks arrive on OkHttp's WebSocket thread
+     * 开始连接，回调在 OkHttp 的 WebSocket 线程上执行
+     */
+    public void connect() {
+        if (webSocket != null) {
+            return;
+        }
+        Request request = new Request.Builder()
+                .url(serverUri.toString())
+                .build();
+        webSocket = client.newWebSocket(request, listener);
+    }
+
+    /**
+     * Connect and wait until the socket is open or has failed, bounded by the client's connect timeout
+     * 连接并等待打开或失败，等待时长受客户端连接超时限制
+     * @return true if the socket is open
+     */
+    public boolean connectBlocking() throws InterruptedException {
+        connect();
+        connectLatch.await();
+        return open;
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Queue a text frame
+     * 将文本帧加入发送队列
+     * @return false if the socket is not open
+     */
+    public boolean send(String text) {
+        WebSocket socket = webSocket;
+        if (!open || socket == null) {
+            Log.w(TAG, "send on a closed socket dropped");
+            return false;
+        }
+        return socket.send(text);
+    }
+
+    public void close() {
+        closedLocally = true;
+        WebSocket socket = webSocket;
+        if (socket != null && !socket.close(1000, null)) {
+            // Already closing or never connected, don't wait for the handshake
+            // 已在关闭或从未连接，无需等待关闭握手
+            socket.cancel();
+        }
+    }
+
+    private void reportClose(int code, String reason, boolean remote) {
+        if (closeReported.compareAndSet(false, true)) {
+            onClose(code, reason, remote);
+        }
     }
 
-    @Override
-    public void onOpen(ServerHandshake handShakeData) {
-        Log.d(TAG, "Connection opened. get handshake: " + handShakeData.getHttpStatusMessage());
+    public void onOpen(Response handshake) {
+        Log.d(TAG, "Connection opened. get handshake: " + handshake.message());
     }
 
-    @Override
     public void onMessage(String message) {
         Log.d(TAG, "onMessage: " + message);
     }
 
-    @Override
     public void onClose(int code, String reason, boolean remote) {
         Log.d(TAG, "onClose: code:" + code + ", reason:" + reason + ", isRemoteClose:" + remote);
     }
 
-    @Override
     public void onError(Exception ex) {
         Log.e(TAG, "onError: " + ex.toString());
         ex.printStackTrace();
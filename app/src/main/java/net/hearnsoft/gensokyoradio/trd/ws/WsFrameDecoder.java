@@ -0,0 +1,109 @@
+package net.hearnsoft.gensokyoradio.trd.ws;
+
+import com.google.gson.stream.JsonReader;
+
+import net.hearnsoft.gensokyoradio.trd.beans.NowPlayingBean;
+import net.hearnsoft.gensokyoradio.trd.beans.SocketClientBeans;
+import net.hearnsoft.gensokyoradio.trd.utils.BeanAdapterFactory;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Single-pass decoder for WebSocket frames.
+ * WebSocket 帧的单次遍历解码器，一次 JsonReader 遍历完成分类与反序列化。
+ * <p>
+ * Not thread-safe, frames are expected to be decoded on the socket thread only.
+ */
+public class WsFrameDecoder {
+
+    public enum Type {
+        WELCOME,
+        PING,
+        NOW_PLAYING,
+        ERROR,
+        INVALID
+    }
+
+    public static class Frame {
+        private final Type type;
+        private final SocketClientBeans clientBeans;
+        private final NowPlayingBean nowPlayingBean;
+
+        private Frame(Type type, SocketClientBeans clientBeans, NowPlayingBean nowPlayingBean) {
+            this.type = type;
+            this.clientBeans = clientBeans;
+            this.nowPlayingBean = nowPlayingBean;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public SocketClientBeans getClientBeans() {
+            return clientBeans;
+        }
+
+        public NowPlayingBean getNowPlayingBean() {
+            return nowPlayingBean;
+        }
+    }
+
+    private static final Frame PING = new Frame(Type.PING, null, null);
+    private static final Frame ERROR = new Frame(Type.ERROR, null, null);
+    private static final Frame INVALID = new Frame(Type.INVALID, null, null);
+
+    /**
+     * Classify the frame and materialize its payload in the same pass
+     * 在同一次遍历中分类帧并生成对应的 bean
+     * @param message raw text frame
+     * @return decoded frame, never null
+     */
+    public Frame decode(String message) {
+        if (message == null || message.isEmpty()) {
+            return INVALID;
+        }
+        if (message.startsWith("Error")) {
+            return ERROR;
+        }
+        if (message.charAt(0) != '{') {
+            return INVALID;
+        }
+        String type = null;
+        int id = 0;
+        NowPlayingBean bean = new NowPlayingBean();
+        try {
+            JsonReader reader = new JsonReader(new StringReader(message));
+            reader.setLenient(true);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                switch (name) {
+                    case "message":
+                        type = BeanAdapterFactory.readString(reader);
+                        break;
+                    case "id":
+                        id = BeanAdapterFactory.readInt(reader);
+                        break;
+                    default:
+                        if (!BeanAdapterFactory.NowPlayingBeanAdapter.readField(reader, name, bean)) {
+                            reader.skipValue();
+                        }
+                        break;
+                }
+            }
+            reader.endObject();
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            return INVALID;
+        }
+        if ("welcome".equals(type)) {
+            SocketClientBeans clientBeans = new SocketClientBeans();
+            clientBeans.setMessage(type);
+            clientBeans.setId(id);
+            return new Frame(Type.WELCOME, clientBeans, null);
+        } else if ("ping".equals(type)) {
+            return PING;
+        }
+        return new Frame(Type.NOW_PLAYING, null, bean);
+    }
+}
@@ -0,0 +1,93 @@
+package net.hearnsoft.gensokyoradio.trd.audio;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FftAnalyzerTest {
+
+    private static final int SIZE = 2048;
+    private static final int SAMPLE_RATE = 44100;
+
+    private static float[] sine(float hz, float amplitude) {
+        float[] samples = new float[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            samples[i] = (float) (amplitude * Math.sin(2 * Math.PI * hz * i / SAMPLE_RATE));
+        }
+        return samples;
+    }
+
+    private static int loudest(float[] bands) {
+        int loudest = 0;
+        for (int i = 1; i < bands.length; i++) {
+            if (bands[i] > bands[loudest]) {
+                loudest = i;
+            }
+        }
+        return loudest;
+    }
+
+    @Test
+    public void analyze_fullScaleSinePeaksNearZeroDbInItsBand() {
+        FftAnalyzer analyzer = new FftAnalyzer(SIZE, 32, 40, 16000);
+        analyzer.setSampleRate(SAMPLE_RATE);
+        float[] bands = new float[32];
+
+        analyzer.analyze(sine(1000, 1f), bands);
+
+        int band = loudest(bands);
+        assertTrue(analyzer.getBandLowHz(band) <= 1000 + SAMPLE_RATE / (float) SIZE);
+        assertTrue(analyzer.getBandHighHz(band) >= 1000);
+        // Hann scalloping loses at most ~1.4 dB between bins
+        assertEquals(0, bands[band], 1.5);
+        assertTrue(bands[0] < -60);
+        assertTrue(bands[31] < -60);
+    }
+
+    @Test
+    public void analyze_halfAmplitudeIsSixDbLower() {
+        FftAnalyzer analyzer = new FftAnalyzer(SIZE, 32, 40, 16000);
+        analyzer.setSampleRate(SAMPLE_RATE);
+        float[] full = new float[32];
+        float[] halfLevel = new float[32];
+
+        analyzer.analyze(sine(4000, 1f), full);
+        analyzer.analyze(sine(4000, 0.5f), halfLevel);
+
+        int band = loudest(full);
+        assertEquals(band, loudest(halfLevel));
+        assertEquals(full[band] - 6.02, halfLevel[band], 0.05);
+    }
+
+    @Test
+    public void analyze_silenceReadsFloor() {
+        FftAnalyzer analyzer = new FftAnalyzer(SIZE, 16, 40, 16000);
+        analyzer.setSampleRate(48000);
+        float[] bands = new float[16];
+
+        analyzer.analyze(new float[SIZE], bands);
+
+        for (float band : bands) {
+            assertEquals(FftAnalyzer.FLOOR_DB, band, 0);
+        }
+    }
+
+    @Test
+    public void setSampleRate_bandsAreOrderedAndNonEmpty() {
+        FftAnalyzer analyzer = new FftAnalyzer(1024, 32, 40, 16000);
+        analyzer.setSampleRate(22050);
+        for (int band = 0; band < 32; band++) {
+            assertTrue(analyzer.getBandHighHz(band) > analyzer.getBandLowHz(band));
+            if (band > 0) {
+                assertTrue(analyzer.getBandLowHz(band) >= analyzer.getBandLowHz(band - 1));
+            }
+        }
+        // Capped at Nyquist
+        assertTrue(analyzer.getBandHighHz(31) <= 11025 + 22050 / 1024f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsNonPowerOfTwo() {
+        new FftAnalyzer(1000, 32, 40, 16000);
+    }
+}
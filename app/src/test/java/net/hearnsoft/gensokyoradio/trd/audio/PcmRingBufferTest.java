@@ -0,0 +1,72 @@
+package net.hearnsoft.gensokyoradio.trd.audio;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class PcmRingBufferTest {
+
+    private static ByteBuffer floats(float... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 4).order(ByteOrder.nativeOrder());
+        for (float value : values) {
+            buffer.putFloat(value);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void writeFloat_downmixesStereoAndKeepsPosition() {
+        PcmRingBuffer ring = new PcmRingBuffer(8);
+        ByteBuffer buffer = floats(1f, 0f, 0.5f, 0.5f, -1f, 1f);
+
+        ring.writeFloat(buffer, 2);
+
+        assertEquals(0, buffer.position());
+        assertEquals(3, ring.getWritePosition());
+        float[] window = new float[3];
+        assertTrue(ring.readLatest(window, 0));
+        assertArrayEquals(new float[]{0.5f, 0.5f, 0f}, window, 0);
+    }
+
+    @Test
+    public void writePcm16_scalesToUnitRange() {
+        PcmRingBuffer ring = new PcmRingBuffer(4);
+        ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.nativeOrder());
+        buffer.putShort(Short.MIN_VALUE).putShort((short) 16384).flip();
+
+        ring.writePcm16(buffer, 1);
+
+        float[] window = new float[2];
+        assertTrue(ring.readLatest(window, 0));
+        assertArrayEquals(new float[]{-1f, 0.5f}, window, 0);
+    }
+
+    @Test
+    public void readLatest_skipsDelayAndWrapsAround() {
+        PcmRingBuffer ring = new PcmRingBuffer(4);
+        ring.writeFloat(floats(1, 2, 3), 1);
+        ring.writeFloat(floats(4, 5, 6), 1);
+
+        float[] window = new float[2];
+        assertTrue(ring.readLatest(window, 1));
+        assertArrayEquals(new float[]{4, 5}, window, 0);
+    }
+
+    @Test
+    public void readLatest_failsWithoutEnoughAudio() {
+        PcmRingBuffer ring = new PcmRingBuffer(8);
+        ring.writeFloat(floats(1, 2), 1);
+
+        assertFalse(ring.readLatest(new float[2], 1));
+        assertFalse(ring.readLatest(new float[3], 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void readLatest_rejectsWindowLargerThanRing() {
+        new PcmRingBuffer(4).readLatest(new float[4], 1);
+    }
+}
@@ -0,0 +1,113 @@
+package net.hearnsoft.gensokyoradio.trd.model;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.OkHttpClient;
+
+import static org.junit.Assert.*;
+
+public class NowPlayingPollerTest {
+
+    private HttpServer server;
+    private ScheduledExecutorService executor;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicLong now = new AtomicLong(1000);
+    private final LinkedBlockingQueue<NowPlayingSnapshot> published = new LinkedBlockingQueue<>();
+    private volatile int remaining = 60;
+    private NowPlayingPoller poller;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            byte[] body = ("{\"SONGINFO\":{\"TITLE\":\"Night of Nights\"},"
+                    + "\"SONGTIMES\":{\"DURATION\":300,\"PLAYED\":" + (300 - remaining)
+                    + ",\"REMAINING\":" + remaining + "},"
+                    + "\"SONGDATA\":{\"SONGID\":42},\"MISC\":{\"ALBUMART\":\"cover.jpg\"}}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        executor = Executors.newSingleThreadScheduledExecutor();
+        NowPlayingRepository repository = new NowPlayingRepository(new OkHttpClient(),
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/", now::get);
+        poller = new NowPlayingPoller(repository, executor, published::add, now::get);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        server.stop(0);
+    }
+
+    @Test
+    public void nextPollDelay_justAfterTheSongEnds() {
+        assertEquals(60 * 1000 + NowPlayingPoller.SONG_END_GRACE_MS,
+                NowPlayingPoller.nextPollDelayMs(1000, 60, 1000));
+        assertEquals(30 * 1000 + NowPlayingPoller.SONG_END_GRACE_MS,
+                NowPlayingPoller.nextPollDelayMs(1000, 60, 31 * 1000));
+    }
+
+    @Test
+    public void nextPollDelay_overdueSongRetries() {
+        assertEquals(-1, NowPlayingPoller.nextPollDelayMs(1000, 0, 1000));
+        assertEquals(-1, NowPlayingPoller.nextPollDelayMs(1000, 60, 70 * 1000));
+    }
+
+    @Test
+    public void nextPollDelay_isCapped() {
+        assertEquals(NowPlayingPoller.MAX_DELAY_MS, NowPlayingPoller.nextPollDelayMs(0, 3600, 0));
+    }
+
+    @Test
+    public void start_publishesAndWaitsForTheSongToEnd() throws Exception {
+        poller.start();
+        NowPlayingSnapshot snapshot = published.poll(5, TimeUnit.SECONDS);
+        assertNotNull(snapshot);
+        assertEquals(42, snapshot.getSongId());
+        assertEquals(240, snapshot.getPlayed());
+        assertEquals(1000, snapshot.getReceivedAt());
+        assertEquals("https://gensokyoradio.net/images/albums/500/cover.jpg", snapshot.getAlbumArt());
+        // Next poll is a minute away
+        assertNull(published.poll(300, TimeUnit.MILLISECONDS));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void stop_ignoresTheRequestInFlight() throws Exception {
+        poller.start();
+        poller.stop();
+        assertNull(published.poll(500, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void pollNow_onlyWhileRunning() throws Exception {
+        poller.pollNow();
+        assertNull(published.poll(300, TimeUnit.MILLISECONDS));
+        assertEquals(0, requests.get());
+        poller.start();
+        assertNotNull(published.poll(5, TimeUnit.SECONDS));
+        poller.pollNow();
+        assertNotNull(published.poll(5, TimeUnit.SECONDS));
+        assertEquals(2, requests.get());
+    }
+}
@@ -0,0 +1,159 @@
+package net.hearnsoft.gensokyoradio.trd.model;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.OkHttpClient;
+
+import static org.junit.Assert.*;
+
+public class NowPlayingRepositoryTest {
+
+    private static final String ETAG = "\"song-42\"";
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final AtomicLong now = new AtomicLong(1000);
+    private volatile CountDownLatch gate;
+    private volatile int status = 200;
+    // Whitespace inside the document, so the parser has to read through it
+    private volatile int padding = 0;
+    private NowPlayingRepository repository;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            try {
+                CountDownLatch latch = gate;
+                if (latch != null) {
+                    latch.await(5, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException ignored) {
+            }
+            if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            StringBuilder whitespace = new StringBuilder();
+            for (int i = 0; i < padding; i++) {
+                whitespace.append(' ');
+            }
+            byte[] body = ("{" + whitespace + "\"SONGINFO\":{\"TITLE\":\"Bad Apple!!\"},"
+                    + "\"SONGTIMES\":{\"DURATION\":300,\"PLAYED\":240,\"REMAINING\":60},"
+                    + "\"SONGDATA\":{\"SONGID\":42}}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("ETag", ETAG);
+            // Chunked, so only the stream guard can catch an oversized body
+            exchange.sendResponseHeaders(status, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            } catch (IOException ignored) {
+            }
+        });
+        server.start();
+        repository = new NowPlayingRepository(new OkHttpClient(),
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/", now::get);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void get_servesFromMemoryUntilTheSongEnds() throws Exception {
+        NowPlayingRepository.Result first = repository.get().get(5, TimeUnit.SECONDS);
+        assertTrue(first.isFromNetwork());
+        assertEquals("Bad Apple!!", first.getData().getSongInfo().getTitle());
+
+        now.addAndGet(59 * 1000);
+        NowPlayingRepository.Result cached = repository.get().get(5, TimeUnit.SECONDS);
+        assertFalse(cached.isFromNetwork());
+        assertSame(first.getData(), cached.getData());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void get_revalidatesWithEtagOnceExpired() throws Exception {
+        NowPlayingRepository.Result first = repository.get().get(5, TimeUnit.SECONDS);
+        now.addAndGet(61 * 1000);
+        NowPlayingRepository.Result revalidated = repository.get().get(5, TimeUnit.SECONDS);
+        assertTrue(revalidated.isFromNetwork());
+        assertSame(first.getData(), revalidated.getData());
+        assertEquals(1, notModified.get());
+
+        // The song end has passed, so the 304 only buys the minimum TTL
+        now.addAndGet(NowPlayingRepository.MIN_TTL_MS - 1);
+        repository.get().get(5, TimeUnit.SECONDS);
+        assertEquals(2, requests.get());
+        now.addAndGet(1);
+        repository.get().get(5, TimeUnit.SECONDS);
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    public void get_coalescesConcurrentCallers() throws Exception {
+        gate = new CountDownLatch(1);
+        CompletableFuture<NowPlayingRepository.Result> a = repository.get(true);
+        CompletableFuture<NowPlayingRepository.Result> b = repository.get(true);
+        assertSame(a, b);
+        gate.countDown();
+        assertSame(a.get(5, TimeUnit.SECONDS).getData(), b.get(5, TimeUnit.SECONDS).getData());
+        assertEquals(1, requests.get());
+
+        // Once settled, a new caller starts a new request
+        repository.get(true).get(5, TimeUnit.SECONDS);
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void peek_returnsFetchedSongWithoutNetwork() throws Exception {
+        assertNull(repository.peek(42));
+        repository.get().get(5, TimeUnit.SECONDS);
+        assertEquals("Bad Apple!!", repository.peek(42).getSongInfo().getTitle());
+        assertNull(repository.peek(7));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void get_rejectsOversizedBody() throws Exception {
+        padding = (int) NowPlayingRepository.MAX_RESPONSE_BYTES;
+        try {
+            repository.get().get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertNull(repository.peek(42));
+    }
+
+    @Test
+    public void get_failsOnHttpError() throws Exception {
+        status = 503;
+        try {
+            repository.get().get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertNull(repository.peek(42));
+    }
+}
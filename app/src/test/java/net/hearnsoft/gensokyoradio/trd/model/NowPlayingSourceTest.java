@@ -0,0 +1,71 @@
+package net.hearnsoft.gensokyoradio.trd.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class NowPlayingSourceTest {
+
+    private static NowPlayingSnapshot song(int id, int remaining, long receivedAt) {
+        return new NowPlayingSnapshot(id, "title", "artist", "album", "circle", "2009", null,
+                300, 300 - remaining, remaining, receivedAt);
+    }
+
+    @Test
+    public void mayReplace_anythingWhenNothingIsOnAir() {
+        assertTrue(NowPlayingSource.ICY.mayReplace(null, null, true, 0));
+    }
+
+    @Test
+    public void mayReplace_equalOrHigherRankAlways() {
+        NowPlayingSnapshot current = song(1, 60, 0);
+        assertTrue(NowPlayingSource.WEBSOCKET.mayReplace(current, NowPlayingSource.WEBSOCKET, true, 0));
+        assertTrue(NowPlayingSource.WEBSOCKET.mayReplace(current, NowPlayingSource.ICY, true, 0));
+        assertTrue(NowPlayingSource.API.mayReplace(current, NowPlayingSource.ICY, true, 0));
+    }
+
+    @Test
+    public void mayReplace_lowerRankOnlyOnceTheSongIsOverdue() {
+        NowPlayingSnapshot current = song(1, 60, 1000);
+        long end = 1000 + 60 * 1000 + NowPlayingSource.STALE_GRACE_MS;
+        assertFalse(NowPlayingSource.ICY.mayReplace(current, NowPlayingSource.WEBSOCKET, true, end));
+        assertTrue(NowPlayingSource.ICY.mayReplace(current, NowPlayingSource.WEBSOCKET, true, end + 1));
+        assertFalse(NowPlayingSource.API.mayReplace(current, NowPlayingSource.WEBSOCKET, true, end));
+    }
+
+    @Test
+    public void mayReplace_icyRightAfterTheEndOnceTheSocketIsSuspended() {
+        // WebSocket reported 60 s remaining, then was stopped for stream metadata only
+        NowPlayingSnapshot current = song(1, 60, 1000);
+        long end = 1000 + 60 * 1000;
+        assertFalse(NowPlayingSource.ICY.mayReplace(current, NowPlayingSource.WEBSOCKET, false, end - 1));
+        // The next StreamTitle comes a buffer's worth after the end, well inside the grace period
+        assertTrue(NowPlayingSource.ICY.mayReplace(current, NowPlayingSource.WEBSOCKET, false, end + 3_000));
+        assertFalse(NowPlayingSource.ICY.mayReplace(current, NowPlayingSource.WEBSOCKET, true, end + 3_000));
+    }
+
+    @Test
+    public void streamTitle_splitsArtistAndTitle() {
+        NowPlayingSnapshot snapshot = NowPlayingSnapshot.fromStreamTitle("ZUN - Bad Apple!! - remix", 5);
+        assertEquals("ZUN", snapshot.getArtist());
+        assertEquals("Bad Apple!! - remix", snapshot.getTitle());
+        assertNull(snapshot.getAlbum());
+        assertEquals(0, snapshot.getSongId());
+        assertEquals(5, snapshot.getReceivedAt());
+
+        NowPlayingSnapshot bare = NowPlayingSnapshot.fromStreamTitle(" Gensokyo Radio ", 5);
+        assertNull(bare.getArtist());
+        assertEquals("Gensokyo Radio", bare.getTitle());
+        assertNull(NowPlayingSnapshot.fromStreamTitle("  ", 5));
+    }
+
+    @Test
+    public void isSameSong_matchesIcyTitlesByText() {
+        NowPlayingSnapshot a = NowPlayingSnapshot.fromStreamTitle("ZUN - Bad Apple!!", 0);
+        assertTrue(a.isSameSong(NowPlayingSnapshot.fromStreamTitle("ZUN - Bad Apple!!", 10)));
+        assertFalse(a.isSameSong(NowPlayingSnapshot.fromStreamTitle("ZUN - Night of Nights", 10)));
+        // An ICY title never matches a song known by ID, so the richer snapshot replaces it
+        assertFalse(a.isSameSong(song(42, 60, 0)));
+        assertTrue(song(42, 60, 0).isSameSong(song(42, 30, 30)));
+    }
+}
@@ -0,0 +1,96 @@
+package net.hearnsoft.gensokyoradio.trd.model;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SongHistoryWriterTest {
+
+    private ScheduledExecutorService executor;
+    private final LinkedBlockingQueue<List<HistoryEntry>> batches = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static HistoryEntry entry(int songId) {
+        return new HistoryEntry(songId, "title", "artist", null, null, null, null, songId * 1000L);
+    }
+
+    private SongHistoryWriter writer(long flushDelayMs, int maxBatch) {
+        return new SongHistoryWriter(batch -> batches.add(new ArrayList<>(batch)), executor,
+                flushDelayMs, maxBatch);
+    }
+
+    @Test
+    public void enqueue_writesOneBatchAfterTheDelay() throws Exception {
+        SongHistoryWriter writer = writer(200, 10);
+        writer.enqueue(entry(1));
+        writer.enqueue(entry(2));
+        writer.enqueue(entry(3));
+        assertNull(batches.poll(100, TimeUnit.MILLISECONDS));
+        List<HistoryEntry> batch = batches.poll(2, TimeUnit.SECONDS);
+        assertNotNull(batch);
+        assertEquals(3, batch.size());
+        assertEquals(1, batch.get(0).getSongId());
+        assertEquals(3, batch.get(2).getSongId());
+        assertNull(batches.poll(400, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void enqueue_fullBatchFlushesRightAway() throws Exception {
+        SongHistoryWriter writer = writer(60 * 1000, 2);
+        writer.enqueue(entry(1));
+        writer.enqueue(entry(2));
+        List<HistoryEntry> batch = batches.poll(2, TimeUnit.SECONDS);
+        assertNotNull(batch);
+        assertEquals(2, batch.size());
+    }
+
+    @Test
+    public void flushNow_writesPendingEntries() throws Exception {
+        SongHistoryWriter writer = writer(60 * 1000, 10);
+        writer.enqueue(entry(1));
+        writer.flushNow();
+        assertEquals(1, batches.poll(2, TimeUnit.SECONDS).size());
+        // Nothing pending, a second flush writes nothing
+        writer.flushNow();
+        assertNull(batches.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void enqueue_afterFlushSchedulesAgain() throws Exception {
+        SongHistoryWriter writer = writer(100, 10);
+        writer.enqueue(entry(1));
+        assertEquals(1, batches.poll(2, TimeUnit.SECONDS).size());
+        writer.enqueue(entry(2));
+        List<HistoryEntry> batch = batches.poll(2, TimeUnit.SECONDS);
+        assertNotNull(batch);
+        assertEquals(2, batch.get(0).getSongId());
+    }
+
+    @Test
+    public void historyEntry_airTimeIsWhenTheSongStarted() {
+        NowPlayingSnapshot snapshot = new NowPlayingSnapshot(7, "t", "a", "al", "c", "y", null,
+                300, 100, 200, 50_000);
+        // 10 s after the snapshot arrived, the song had been playing for 100 s then
+        HistoryEntry entry = HistoryEntry.from(snapshot, 1_000_000, 60_000);
+        assertEquals(1_000_000 - 10_000 - 100_000, entry.getAiredAt());
+        assertEquals(7, entry.getSongId());
+    }
+}
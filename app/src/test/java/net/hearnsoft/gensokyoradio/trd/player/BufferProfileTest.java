@@ -0,0 +1,35 @@
+package net.hearnsoft.gensokyoradio.trd.player;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BufferProfileTest {
+
+    @Test
+    public void resolve_auto() {
+        assertEquals(BufferProfile.LOW_LATENCY, BufferProfile.AUTO.resolve("wifi"));
+        assertEquals(BufferProfile.RESILIENT, BufferProfile.AUTO.resolve("cellular"));
+        assertEquals(BufferProfile.BALANCED, BufferProfile.AUTO.resolve("none"));
+        assertEquals(BufferProfile.BALANCED, BufferProfile.BALANCED.resolve("cellular"));
+    }
+
+    @Test
+    public void fromName_fallsBackToAuto() {
+        assertEquals(BufferProfile.RESILIENT, BufferProfile.fromName("RESILIENT"));
+        assertEquals(BufferProfile.AUTO, BufferProfile.fromName("bogus"));
+        assertEquals(BufferProfile.AUTO, BufferProfile.fromName(null));
+    }
+
+    @Test
+    public void thresholds_satisfyLoadControlConstraints() {
+        for (BufferProfile profile : BufferProfile.values()) {
+            if (profile == BufferProfile.AUTO) {
+                continue;
+            }
+            assertTrue(profile.getBufferForPlaybackMs() <= profile.getMinBufferMs());
+            assertTrue(profile.getBufferForPlaybackAfterRebufferMs() <= profile.getMinBufferMs());
+            assertTrue(profile.getMinBufferMs() <= profile.getMaxBufferMs());
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package net.hearnsoft.gensokyoradio.trd.player;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+
+import static org.junit.Assert.*;
+
+public class EndpointProberTest {
+
+    private HttpServer fast;
+    private HttpServer slow;
+
+    @Before
+    public void setUp() throws IOException {
+        fast = startServer(0);
+        slow = startServer(300);
+    }
+
+    @After
+    public void tearDown() {
+        fast.stop(0);
+        slow.stop(0);
+    }
+
+    private static HttpServer startServer(long delayMs) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException ignored) {
+            }
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(new byte[1024]);
+            } catch (IOException ignored) {
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    private static String url(HttpServer server) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/1/";
+    }
+
+    @Test
+    public void probe_ranksFastestFirstAndUnreachableLast() throws Exception {
+        EndpointProber prober = new EndpointProber(new OkHttpClient());
+        String[] urls = {url(slow), "http://127.0.0.1:1/1/", url(fast)};
+        List<EndpointProber.Result> results = prober.probe(urls).get(10, TimeUnit.SECONDS);
+        assertEquals(3, results.size());
+        assertEquals(2, results.get(0).getIndex());
+        assertEquals(0, results.get(1).getIndex());
+        assertTrue(results.get(1).getTtfbMs() >= 300);
+        assertEquals(-1, results.get(0).getTlsMs());
+        assertFalse(results.get(2).isReachable());
+    }
+}
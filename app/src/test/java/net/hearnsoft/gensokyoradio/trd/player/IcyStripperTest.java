@@ -0,0 +1,39 @@
+package net.hearnsoft.gensokyoradio.trd.player;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.*;
+
+public class IcyStripperTest {
+
+    @Test
+    public void process_dropsMetadataAcrossReadBoundaries() {
+        // metaint 4: 4 audio bytes, length byte 1 (16 bytes of metadata), 4 audio bytes, empty block, 2 audio bytes
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(new byte[]{1, 2, 3, 4}, 0, 4);
+        stream.write(1);
+        for (int i = 0; i < 16; i++) {
+            stream.write('x');
+        }
+        stream.write(new byte[]{5, 6, 7, 8}, 0, 4);
+        stream.write(0);
+        stream.write(new byte[]{9, 10}, 0, 2);
+        byte[] data = stream.toByteArray();
+
+        IcyStripper stripper = new IcyStripper(4);
+        ByteArrayOutputStream audio = new ByteArrayOutputStream();
+        for (int offset = 0; offset < data.length; offset += 3) {
+            stripper.process(data, offset, Math.min(3, data.length - offset), audio::write);
+        }
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10}, audio.toByteArray());
+    }
+
+    @Test
+    public void process_passesThroughWithoutMetaInt() {
+        ByteArrayOutputStream audio = new ByteArrayOutputStream();
+        new IcyStripper(0).process(new byte[]{1, 2, 3}, 1, 2, audio::write);
+        assertArrayEquals(new byte[]{2, 3}, audio.toByteArray());
+    }
+}
@@ -0,0 +1,103 @@
+package net.hearnsoft.gensokyoradio.trd.player;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class PlaybackMetricsTest {
+
+    private final PlaybackMetrics metrics = new PlaybackMetrics();
+
+    @Test
+    public void timeToFirstAudio_andStalls() {
+        metrics.onPlayWhenReadyChanged(true, 1000);
+        metrics.onPlaybackStateChanged(true, false, 1000);
+        metrics.onPlaybackStateChanged(false, true, 1600);
+        metrics.onIsPlayingChanged(true, 1700);
+        assertEquals(1, metrics.getPlaybackStarts());
+        assertEquals(700, metrics.getTimeToFirstAudioP50Ms());
+        // Initial buffering is not a stall, this one is
+        metrics.onPlaybackStateChanged(true, false, 5000);
+        metrics.onPlaybackStateChanged(false, true, 6500);
+        assertEquals(1, metrics.getRebufferCount());
+        assertEquals(1500, metrics.getTotalStallMs());
+        // Buffering while paused is not a stall either
+        metrics.onPlayWhenReadyChanged(false, 7000);
+        metrics.onPlaybackStateChanged(true, false, 7100);
+        assertEquals(1, metrics.getRebufferCount());
+    }
+
+    @Test
+    public void histogram_percentiles() {
+        PlaybackMetrics.Histogram histogram = new PlaybackMetrics.Histogram(10, 100, 1000);
+        for (int i = 0; i < 9; i++) {
+            histogram.record(5);
+        }
+        histogram.record(5000);
+        assertEquals(10, histogram.getPercentile(50));
+        assertEquals(10, histogram.getPercentile(90));
+        assertEquals(5000, histogram.getPercentile(100));
+        assertEquals(5000, histogram.getMax());
+        assertEquals(504, histogram.getMean());
+    }
+
+    @Test
+    public void throughput_sampledPeriodicallyFromTheMeter() {
+        ThroughputMeter meter = new ThroughputMeter();
+        // As the service's sampling runnable does: the first interval only starts the clock
+        metrics.onThroughputSample(meter.getTotalBytes(), meter.sample(0));
+        assertEquals(0, metrics.getBitrateP50Kbps());
+        for (int i = 1; i <= 4; i++) {
+            // One never-ending transfer, 80 KB every 5 s is 128 kbps
+            meter.addBytes(80_000);
+            metrics.onThroughputSample(meter.getTotalBytes(), meter.sample(i * 5_000L));
+        }
+        assertEquals(320_000, metrics.getBytesLoaded());
+        assertEquals(128, metrics.getBitrateP50Kbps());
+        // A skipped sample still keeps the byte count current
+        meter.addBytes(1_000);
+        metrics.onThroughputSample(meter.getTotalBytes(), -1);
+        assertEquals(321_000, metrics.getBytesLoaded());
+    }
+
+    @Test
+    public void resumeLatency() {
+        metrics.onResumeLatency(180);
+        metrics.onResumeLatency(900);
+        metrics.onResumeLatency(300);
+        assertEquals(500, metrics.getResumeLatencyP50Ms());
+    }
+
+    @Test
+    public void recoveries() {
+        metrics.onRecovered(1500);
+        metrics.onRecovered(6000);
+        assertEquals(2, metrics.getRecoveryCount());
+        assertEquals(7500, metrics.getTotalRecoveryMs());
+        assertEquals(6000, metrics.getRecoveryMaxMs());
+    }
+
+    @Test
+    public void writeJson() throws Exception {
+        metrics.onThroughputSample(16_000, 128_000);
+        metrics.onDecoderInitialized(42);
+        metrics.onPlayerError();
+        metrics.onResumeLatency(300);
+        metrics.onRecovered(2500);
+        StringWriter out = new StringWriter();
+        metrics.writeJson(out);
+        JsonObject json = JsonParser.parseString(out.toString()).getAsJsonObject();
+        assertEquals(16_000, json.get("bytesLoaded").getAsLong());
+        assertEquals(1, json.get("playerErrors").getAsLong());
+        assertEquals(1, json.getAsJsonObject("bitrateKbps").get("count").getAsLong());
+        assertEquals(10, json.getAsJsonObject("bitrateKbps").getAsJsonArray("counts").size());
+        assertEquals(1, json.getAsJsonObject("resumeLatencyMs").get("count").getAsLong());
+        assertEquals(2500, json.get("totalRecoveryMs").getAsLong());
+        assertEquals(1, json.getAsJsonObject("recoveryMs").get("count").getAsLong());
+    }
+}
@@ -0,0 +1,60 @@
+package net.hearnsoft.gensokyoradio.trd.player;
+
+import androidx.media3.common.PlaybackException;
+
+import net.hearnsoft.gensokyoradio.trd.utils.Backoff;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PlaybackRecoveryTest {
+
+    private final PlaybackRecovery recovery = new PlaybackRecovery(new Backoff(1000, 30_000, new Random(1)));
+
+    @Test
+    public void classify() {
+        assertEquals(PlaybackRecovery.Action.RETRY,
+                PlaybackRecovery.classify(PlaybackException.ERROR_CODE_IO_NETWORK_CONNECTION_FAILED));
+        assertEquals(PlaybackRecovery.Action.RETRY,
+                PlaybackRecovery.classify(PlaybackException.ERROR_CODE_PARSING_CONTAINER_MALFORMED));
+        assertEquals(PlaybackRecovery.Action.RETRY,
+                PlaybackRecovery.classify(PlaybackException.ERROR_CODE_AUDIO_TRACK_WRITE_FAILED));
+        assertEquals(PlaybackRecovery.Action.SWITCH_MIRROR,
+                PlaybackRecovery.classify(PlaybackException.ERROR_CODE_IO_BAD_HTTP_STATUS));
+        assertEquals(PlaybackRecovery.Action.GIVE_UP,
+                PlaybackRecovery.classify(PlaybackException.ERROR_CODE_DECODING_FORMAT_UNSUPPORTED));
+        assertEquals(PlaybackRecovery.Action.GIVE_UP,
+                PlaybackRecovery.classify(PlaybackException.ERROR_CODE_DRM_UNSPECIFIED));
+    }
+
+    @Test
+    public void offlineFailures_retryWithoutCounting() {
+        for (int i = 0; i < 50; i++) {
+            assertEquals(PlaybackRecovery.Action.RETRY,
+                    recovery.onError(PlaybackException.ERROR_CODE_IO_BAD_HTTP_STATUS, false, 1000));
+        }
+        assertTrue(recovery.isRecovering());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(PlaybackRecovery.Action.RETRY,
+                    recovery.onError(PlaybackException.ERROR_CODE_IO_NETWORK_CONNECTION_TIMEOUT, true, 1000));
+        }
+        assertEquals(PlaybackRecovery.Action.GIVE_UP,
+                recovery.onError(PlaybackException.ERROR_CODE_IO_NETWORK_CONNECTION_TIMEOUT, true, 1000));
+        assertFalse(recovery.isRecovering());
+    }
+
+    @Test
+    public void onRecovered_reportsDurationFromFirstError() {
+        assertEquals(-1, recovery.onRecovered(500));
+        recovery.onError(PlaybackException.ERROR_CODE_IO_NETWORK_CONNECTION_FAILED, true, 1000);
+        long first = recovery.nextRetryDelayMs();
+        recovery.onError(PlaybackException.ERROR_CODE_IO_NETWORK_CONNECTION_FAILED, true, 3000);
+        assertTrue(recovery.nextRetryDelayMs() >= first / 2);
+        assertEquals(4000, recovery.onRecovered(5000));
+        assertFalse(recovery.isRecovering());
+        assertTrue(recovery.nextRetryDelayMs() <= 1000);
+    }
+}
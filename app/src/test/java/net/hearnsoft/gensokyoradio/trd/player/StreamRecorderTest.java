@@ -0,0 +1,103 @@
+package net.hearnsoft.gensokyoradio.trd.player;
+
+import net.hearnsoft.gensokyoradio.trd.model.NowPlayingSnapshot;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class StreamRecorderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static NowPlayingSnapshot song(int id, String title) {
+        return new NowPlayingSnapshot(id, title, "Artist", "Album", "Circle", "2007", "", 300, 0, 300, 0);
+    }
+
+    private static byte[] bytes(int from, int count) {
+        byte[] data = new byte[count];
+        for (int i = 0; i < count; i++) {
+            data[i] = (byte) (from + i);
+        }
+        return data;
+    }
+
+    @Test
+    public void songChange_cutsAfterTheBurst() throws Exception {
+        List<File> files = new CopyOnWriteArrayList<>();
+        CountDownLatch finished = new CountDownLatch(2);
+        StreamRecorder recorder = new StreamRecorder(folder.getRoot(), file -> {
+            files.add(file);
+            finished.countDown();
+        });
+        NowPlayingSnapshot first = song(1, "First");
+        recorder.start(first, 100);
+        recorder.onStreamOpened();
+        // 300 bytes in the first second at 100 B/s: 200 bytes of burst
+        recorder.write(bytes(0, 300), 0, 300);
+        recorder.onSongChanged(song(2, "Second"), 100);
+        recorder.write(bytes(300, 150), 0, 150);
+        recorder.write(bytes(450, 150), 0, 150);
+        recorder.stop();
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+
+        byte[] firstTag = Id3TagWriter.build(first);
+        byte[] firstFile = Files.readAllBytes(files.get(0).toPath());
+        assertEquals(firstTag.length + 500, firstFile.length);
+        assertEquals((byte) 499, firstFile[firstFile.length - 1]);
+        byte[] secondFile = Files.readAllBytes(files.get(1).toPath());
+        assertEquals((byte) 500, secondFile[secondFile.length - 100]);
+        assertTrue(files.get(1).getName().endsWith("Artist - Second.mp3"));
+        assertEquals(0, recorder.getDroppedBytes());
+    }
+
+    @Test
+    public void start_afterDiskError_dropsAbortedBytes() throws Exception {
+        // A plain file where the directory should be, so the first session can't create its file
+        File directory = folder.newFile("recordings");
+        List<File> files = new CopyOnWriteArrayList<>();
+        StreamRecorder recorder = new StreamRecorder(directory, files::add);
+        recorder.start(null, 100);
+        // Left in the partial buffer when the writer gives up
+        recorder.write(bytes(0, 10), 0, 10);
+        awaitTrue(() -> !recorder.isRecording());
+
+        assertTrue(directory.delete());
+        recorder.start(null, 100);
+        assertTrue(recorder.isRecording());
+        recorder.write(bytes(100, 20), 0, 20);
+        recorder.stop();
+        awaitTrue(() -> !files.isEmpty());
+        byte[] data = Files.readAllBytes(files.get(0).toPath());
+        assertEquals(20, data.length);
+        assertEquals((byte) 100, data[0]);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void id3Tag_hasSyncsafeSize() {
+        byte[] tag = Id3TagWriter.build(song(1, "東方"));
+        assertEquals('I', tag[0]);
+        assertEquals(3, tag[3]);
+        int size = (tag[6] << 21) | (tag[7] << 14) | (tag[8] << 7) | tag[9];
+        assertEquals(tag.length - 10, size);
+    }
+}
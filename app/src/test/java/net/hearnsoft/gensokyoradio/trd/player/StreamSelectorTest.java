@@ -0,0 +1,81 @@
+package net.hearnsoft.gensokyoradio.trd.player;
+
+import net.hearnsoft.gensokyoradio.trd.beans.misc.StreamLevel;
+import net.hearnsoft.gensokyoradio.trd.beans.misc.Streams;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StreamSelectorTest {
+
+    private StreamSelector selector;
+
+    @Before
+    public void setUp() {
+        selector = new StreamSelector(new String[]{"https://a/", "https://b/"});
+        Streams streams = new Streams();
+        streams.setLv1(level(128));
+        streams.setLv2(level(64));
+        streams.setLv3(level(256));
+        selector.setLevels(streams);
+    }
+
+    private static StreamLevel level(int bitrate) {
+        StreamLevel level = new StreamLevel();
+        level.setBitRate(bitrate);
+        return level;
+    }
+
+    @Test
+    public void repeatedRebuffers_switchDown() {
+        long now = 100_000;
+        selector.onRebuffer(now);
+        assertFalse(selector.evaluate(now));
+        selector.onRebuffer(now + 5_000);
+        assertTrue(selector.evaluate(now + 5_000));
+        assertEquals(2, selector.getLevel());
+        assertEquals("https://a/2/", selector.getCurrentUrl());
+        // Nothing lower than 64 kbps, and switches are rate limited anyway
+        selector.onRebuffer(now + 6_000);
+        selector.onRebuffer(now + 7_000);
+        assertFalse(selector.evaluate(now + 7_000));
+    }
+
+    @Test
+    public void sustainedShortfall_switchDown() {
+        long now = 100_000;
+        selector.onBandwidthSample(90_000, now);
+        assertFalse(selector.evaluate(now + 5_000));
+        selector.onBandwidthSample(90_000, now + 10_000);
+        assertTrue(selector.evaluate(now + 10_000));
+        assertEquals(2, selector.getLevel());
+    }
+
+    @Test
+    public void stablePeriod_switchUpOneStep() {
+        long now = 100_000;
+        selector.onBandwidthSample(400_000, now);
+        assertFalse(selector.evaluate(now + 60_000));
+        selector.onRebuffer(now + 60_000);
+        selector.onBandwidthSample(400_000, now + 61_000);
+        assertFalse(selector.evaluate(now + 61_000 + 4 * 60_000));
+        assertTrue(selector.evaluate(now + 61_000 + 5 * 60_000));
+        assertEquals(3, selector.getLevel());
+    }
+
+    @Test
+    public void repeatedLoadErrors_switchMirror() {
+        selector.onLoadError();
+        selector.onLoadError();
+        assertFalse(selector.evaluate(1_000));
+        selector.onLoadError();
+        assertTrue(selector.evaluate(1_000));
+        assertEquals(1, selector.getMirror());
+        assertEquals("https://b/1/", selector.getCurrentUrl());
+        selector.onPlaybackReady();
+        selector.onLoadError();
+        assertFalse(selector.evaluate(2_000));
+    }
+}
@@ -0,0 +1,65 @@
+package net.hearnsoft.gensokyoradio.trd.player;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+public class ThroughputMeterTest {
+
+    @Test
+    public void sample_reportsBitsPerSecondSinceLastSample() {
+        ThroughputMeter meter = new ThroughputMeter();
+        assertEquals(-1, meter.sample(10_000));
+        meter.addBytes(40_000);
+        meter.addBytes(40_000);
+        assertEquals(128_000, meter.sample(15_000));
+        // Nothing arrived in the next interval
+        assertEquals(0, meter.sample(20_000));
+    }
+
+    @Test
+    public void sample_ignoresTooShortInterval() {
+        ThroughputMeter meter = new ThroughputMeter();
+        meter.sample(10_000);
+        meter.addBytes(1_000);
+        assertEquals(-1, meter.sample(10_000 + ThroughputMeter.MIN_INTERVAL_MS - 1));
+        // The bytes stay in the running interval
+        assertEquals(8_000, meter.sample(11_000));
+    }
+
+    @Test
+    public void reset_dropsBurst() {
+        ThroughputMeter meter = new ThroughputMeter();
+        meter.addBytes(1_000_000);
+        meter.reset();
+        assertEquals(-1, meter.sample(10_000));
+        assertEquals(0, meter.sample(12_000));
+    }
+
+    @Test
+    public void totalBytes_survivesSamplingAndReset() {
+        ThroughputMeter meter = new ThroughputMeter();
+        meter.addBytes(1_000);
+        meter.sample(0);
+        meter.addBytes(2_000);
+        meter.reset();
+        meter.addBytes(-1);
+        assertEquals(3_000, meter.getTotalBytes());
+    }
+
+    @Test
+    public void count_addsBytesRead() throws Exception {
+        ThroughputMeter meter = new ThroughputMeter();
+        meter.sample(0);
+        try (InputStream in = meter.count(new ByteArrayInputStream(new byte[1_000]))) {
+            assertTrue(in.read() >= 0);
+            while (in.read(new byte[300]) != -1) {
+                // drain
+            }
+        }
+        assertEquals(8_000, meter.sample(1_000));
+    }
+}
@@ -0,0 +1,111 @@
+package net.hearnsoft.gensokyoradio.trd.player;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+
+import static org.junit.Assert.*;
+
+public class TimeShiftBufferTest {
+
+    private static final int CAPACITY = 64 * 1024;
+
+    private HttpServer server;
+    private TimeShiftBuffer buffer;
+
+    @Before
+    public void setUp() throws IOException {
+        // Endless stand-in for the radio stream, byte n of a connection is n % 251.
+        // About 100 KB/s, a few times a real stream, so a reader lags well within the ring
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/1/", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            byte[] chunk = new byte[1024];
+            long position = 0;
+            try (OutputStream out = exchange.getResponseBody()) {
+                while (true) {
+                    for (int i = 0; i < chunk.length; i++) {
+                        chunk[i] = (byte) ((position + i) % 251);
+                    }
+                    out.write(chunk);
+                    position += chunk.length;
+                    Thread.sleep(10);
+                }
+            } catch (IOException | InterruptedException ignored) {
+            }
+        });
+        server.start();
+        buffer = new TimeShiftBuffer(File.createTempFile("timeshift", ".buf"), CAPACITY);
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/1/";
+        buffer.start(() -> new URL(url).openConnection().getInputStream());
+    }
+
+    @After
+    public void tearDown() {
+        buffer.close();
+        server.stop(0);
+    }
+
+    private void awaitWritePosition(long position) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (buffer.getWritePosition() < position) {
+            assertTrue("stream stalled", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static void assertPattern(TimeShiftBuffer.Cursor cursor, int length) throws Exception {
+        byte[] data = new byte[length];
+        long start = cursor.getPosition();
+        int read = 0;
+        while (read < length) {
+            int count = cursor.read(data, read, length - read, 5_000);
+            assertTrue(count > 0);
+            read += count;
+        }
+        for (int i = 0; i < length; i++) {
+            if (data[i] != (byte) ((start + i) % 251)) {
+                fail("mismatch at " + (start + i));
+            }
+        }
+    }
+
+    @Test
+    public void read_followsLiveEdge() throws Exception {
+        awaitWritePosition(1);
+        TimeShiftBuffer.Cursor cursor = buffer.openCursor(buffer.getWritePosition());
+        assertPattern(cursor, 3 * CAPACITY / 4);
+        assertPattern(cursor, CAPACITY / 2);
+    }
+
+    @Test
+    public void rewind_readsPastBytesUntilEvicted() throws Exception {
+        awaitWritePosition(3L * CAPACITY);
+        long live = buffer.getWritePosition();
+        assertTrue(buffer.getOldestPosition() >= live - CAPACITY);
+        assertPattern(buffer.openCursor(live - 1000), 1000);
+        try {
+            buffer.openCursor(0).read(new byte[16], 0, 16, 1_000);
+            fail("position 0 should be evicted");
+        } catch (TimeShiftBuffer.EvictedException expected) {
+        }
+    }
+
+    @Test
+    public void close_endsReaders() throws Exception {
+        awaitWritePosition(1);
+        TimeShiftBuffer.Cursor cursor = buffer.openCursor(buffer.getWritePosition() + CAPACITY);
+        assertEquals(0, cursor.read(new byte[16], 0, 16, 10));
+        buffer.close();
+        assertEquals(-1, cursor.read(new byte[16], 0, 16, 1_000));
+    }
+}
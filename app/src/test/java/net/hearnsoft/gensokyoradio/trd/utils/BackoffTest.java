@@ -0,0 +1,35 @@
+package net.hearnsoft.gensokyoradio.trd.utils;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BackoffTest {
+
+    @Test
+    public void nextDelay_growsAndIsCapped() {
+        Backoff backoff = new Backoff(1000, 60000, new Random(42));
+        long previousCap = 0;
+        for (int i = 0; i < 12; i++) {
+            long cap = Math.min(60000, 1000L << i);
+            long delay = backoff.nextDelayMs();
+            assertTrue("delay " + delay + " below " + cap / 2, delay >= cap / 2);
+            assertTrue("delay " + delay + " above " + cap, delay <= cap);
+            assertTrue(cap >= previousCap);
+            previousCap = cap;
+        }
+        assertEquals(12, backoff.getAttempt());
+    }
+
+    @Test
+    public void reset_restartsLadder() {
+        Backoff backoff = new Backoff(1000, 60000, new Random(7));
+        for (int i = 0; i < 8; i++) {
+            backoff.nextDelayMs();
+        }
+        backoff.reset();
+        assertTrue(backoff.nextDelayMs() <= 1000);
+    }
+}
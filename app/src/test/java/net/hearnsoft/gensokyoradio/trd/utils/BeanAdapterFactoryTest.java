@@ -0,0 +1,49 @@
+package net.hearnsoft.gensokyoradio.trd.utils;
+
+import net.hearnsoft.gensokyoradio.trd.beans.SongDataBean;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BeanAdapterFactoryTest {
+
+    private static final String NOW_PLAYING_JSON = "{"
+            + "\"SERVERINFO\":{\"LASTUPDATE\":1697500000,\"SERVERS\":4,\"STATUS\":\"RUNNING\","
+            + "\"LISTENERS\":321,\"STREAMS\":{\"lv1\":{\"BITRATE\":128,\"LISTENERS\":200},"
+            + "\"lv2\":{\"BITRATE\":64,\"LISTENERS\":21},\"lv3\":{\"BITRATE\":256,\"LISTENERS\":100}},"
+            + "\"MODE\":\"RADIO\"},"
+            + "\"SONGINFO\":{\"TITLE\":\"Night of Nights\",\"ARTIST\":null,\"ALBUM\":\"Flowering Night\","
+            + "\"YEAR\":\"2006\",\"CIRCLE\":\"COOL&CREATE\"},"
+            + "\"SONGTIMES\":{\"DURATION\":\"245\",\"PLAYED\":40,\"REMAINING\":205,"
+            + "\"SONGSTART\":1697499960,\"SONGEND\":1697500205},"
+            + "\"SONGDATA\":{\"SONGID\":9876,\"ALBUMID\":12,\"RATING\":\"4.5/5\",\"TIMESRATED\":\"\"},"
+            + "\"MISC\":{\"CIRCLELINK\":\"\",\"ALBUMART\":\"a.jpg\",\"CIRCLEART\":null,"
+            + "\"OFFSET\":\"0\",\"OFFSETTIME\":0,\"EXTRA\":[1,2,3]}}";
+
+    @Test
+    public void read_songDataBean() {
+        SongDataBean bean = GsonUtils.getGson().fromJson(NOW_PLAYING_JSON, SongDataBean.class);
+        assertEquals(321, bean.getServerInfo().getListeners());
+        assertEquals(256, bean.getServerInfo().getStreams().getLv3().getBitRate());
+        assertNull(bean.getServerInfo().getStreams().getLv4());
+        assertEquals("Night of Nights", bean.getSongInfo().getTitle());
+        assertEquals("", bean.getSongInfo().getArtist());
+        assertEquals(245, bean.getSongTimes().getDuration());
+        assertEquals(1697500205, bean.getSongTimes().getSongEnd());
+        assertEquals(9876, bean.getSongData().getSongID());
+        assertEquals(0, bean.getSongData().getTimeSrated());
+        assertEquals("", bean.getMisc().getCircleArt());
+    }
+
+    @Test
+    public void write_roundTrip() {
+        SongDataBean bean = GsonUtils.getGson().fromJson(NOW_PLAYING_JSON, SongDataBean.class);
+        String json = GsonUtils.getGson().toJson(bean);
+        SongDataBean copy = GsonUtils.getGson().fromJson(json, SongDataBean.class);
+        assertEquals(bean.getSongData().getSongID(), copy.getSongData().getSongID());
+        assertEquals(bean.getSongInfo().getAlbum(), copy.getSongInfo().getAlbum());
+        assertEquals(bean.getServerInfo().getStreams().getLv2().getListeners(),
+                copy.getServerInfo().getStreams().getLv2().getListeners());
+    }
+}
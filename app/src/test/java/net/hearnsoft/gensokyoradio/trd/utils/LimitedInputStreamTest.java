@@ -0,0 +1,49 @@
+package net.hearnsoft.gensokyoradio.trd.utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+public class LimitedInputStreamTest {
+
+    private static InputStream limited(int size, long limit) {
+        return new LimitedInputStream(new ByteArrayInputStream(new byte[size]), limit);
+    }
+
+    @Test
+    public void read_withinLimitReachesEnd() throws IOException {
+        InputStream in = limited(100, 100);
+        assertEquals(100, in.read(new byte[200]));
+        assertEquals(-1, in.read());
+    }
+
+    @Test(expected = IOException.class)
+    public void read_beyondLimitFails() throws IOException {
+        InputStream in = limited(101, 100);
+        byte[] buffer = new byte[64];
+        while (in.read(buffer) != -1) {
+            // drain
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void readSingleByte_beyondLimitFails() throws IOException {
+        InputStream in = limited(3, 2);
+        in.read();
+        in.read();
+        in.read();
+    }
+
+    @Test
+    public void reset_rewindsTheCount() throws IOException {
+        InputStream in = limited(10, 10);
+        in.mark(10);
+        assertEquals(10, in.read(new byte[10]));
+        in.reset();
+        assertEquals(10, in.read(new byte[10]));
+    }
+}
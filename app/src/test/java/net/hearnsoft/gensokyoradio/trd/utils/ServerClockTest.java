@@ -0,0 +1,53 @@
+package net.hearnsoft.gensokyoradio.trd.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ServerClockTest {
+
+    @Test
+    public void onDateHeader_intersectsSamples() {
+        ServerClock clock = new ServerClock();
+        assertFalse(clock.isSynced());
+
+        // True offset 1_000_000_250: server reads 1_000_010_250 at elapsed 10_000
+        // Request sent at 9_900, answered at 10_100, Date truncated to 1_000_010_000
+        clock.onDateHeader(1_000_010_000L, 9_900, 10_100);
+        assertTrue(clock.isSynced());
+        assertEquals(600, clock.getUncertaintyMs());
+
+        // Server reads 1_000_020_950 at elapsed 20_700, truncated to 1_000_020_000
+        clock.onDateHeader(1_000_020_000L, 20_650, 20_750);
+        long offset = clock.getOffsetMs();
+        assertTrue(Math.abs(offset - 1_000_000_250L) <= clock.getUncertaintyMs());
+        assertTrue(clock.getUncertaintyMs() < 600);
+        assertEquals(1_000_030_000L - offset, clock.toElapsed(1_000_030_000L));
+    }
+
+    @Test
+    public void onDateHeader_restartsAfterClockStep() {
+        ServerClock clock = new ServerClock();
+        clock.onDateHeader(1_000_000_000L, 0, 100);
+        // Server clock stepped an hour ahead
+        clock.onDateHeader(1_003_610_000L, 10_000, 10_100);
+        assertEquals(1_003_600_000L, clock.getOffsetMs(), 1000);
+    }
+
+    @Test
+    public void onServerTimeAtLeast_onlyRaisesLowerBound() {
+        ServerClock clock = new ServerClock();
+        clock.onServerTimeAtLeast(5_000_000L, 1_000);
+        assertFalse(clock.isSynced());
+        assertEquals(4_999_000L, clock.getOffsetMs());
+
+        clock.onDateHeader(5_000_000L, 900, 1_100);
+        long before = clock.getUncertaintyMs();
+        // Older than the known interval, no change
+        clock.onServerTimeAtLeast(4_000_000L, 1_000);
+        assertEquals(before, clock.getUncertaintyMs());
+        // Tightens the lower bound
+        clock.onServerTimeAtLeast(5_000_500L, 1_100);
+        assertTrue(clock.getUncertaintyMs() < before);
+    }
+}
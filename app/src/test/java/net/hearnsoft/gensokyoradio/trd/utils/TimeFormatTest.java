@@ -0,0 +1,23 @@
+package net.hearnsoft.gensokyoradio.trd.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TimeFormatTest {
+
+    @Test
+    public void format_padsMinutesAndSeconds() {
+        assertEquals("00:00", TimeFormat.format(0));
+        assertEquals("00:09", TimeFormat.format(9));
+        assertEquals("03:25", TimeFormat.format(205));
+        assertEquals("59:59", TimeFormat.format(3599));
+        assertEquals("61:01", TimeFormat.format(3661));
+        assertEquals("00:00", TimeFormat.format(-5));
+    }
+
+    @Test
+    public void format_reusesTableEntries() {
+        assertSame(TimeFormat.format(125), TimeFormat.format(125));
+    }
+}
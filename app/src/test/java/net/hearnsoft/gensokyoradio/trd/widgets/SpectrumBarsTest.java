@@ -0,0 +1,71 @@
+package net.hearnsoft.gensokyoradio.trd.widgets;
+
+import net.hearnsoft.gensokyoradio.trd.audio.PcmRingBuffer;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class SpectrumBarsTest {
+
+    private static final long FRAME_NANOS = 16_000_000L;
+
+    private static void writeSine(PcmRingBuffer ring, float hz, int samples) {
+        ByteBuffer buffer = ByteBuffer.allocate(samples * 4).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < samples; i++) {
+            buffer.putFloat((float) Math.sin(2 * Math.PI * hz * i / ring.getSampleRate()));
+        }
+        buffer.flip();
+        ring.writeFloat(buffer, 1);
+    }
+
+    private static float lowestBarTop(SpectrumBars bars) {
+        float top = Float.MAX_VALUE;
+        float[] points = bars.getPoints();
+        for (int i = 0; i < SpectrumBars.BAR_COUNT; i++) {
+            top = Math.min(top, points[i * 4 + 1]);
+        }
+        return top;
+    }
+
+    @Test
+    public void step_barsRiseWithAudioAndFallInSilence() {
+        PcmRingBuffer ring = new PcmRingBuffer(32 * 1024);
+        ring.setSampleRate(44100);
+        SpectrumBars bars = new SpectrumBars();
+        bars.setSize(320, 320);
+        long now = 1_000_000_000L;
+
+        assertFalse(bars.step(ring, now));
+
+        writeSine(ring, 1000, 16 * 1024);
+        for (int i = 0; i < 20; i++) {
+            now += FRAME_NANOS;
+            bars.step(ring, now);
+            // Keep the position moving like a playing stream would
+            writeSine(ring, 1000, 512);
+        }
+        assertTrue(bars.isAudible(now));
+        assertTrue(lowestBarTop(bars) < 40);
+
+        // No new audio: bars drop after the silence timeout and eventually settle
+        for (int i = 0; i < 200; i++) {
+            now += FRAME_NANOS;
+            bars.step(ring, now);
+        }
+        assertFalse(bars.isAudible(now));
+        assertEquals(320, lowestBarTop(bars), 0);
+        assertFalse(bars.step(ring, now + FRAME_NANOS));
+    }
+
+    @Test
+    public void step_withoutSourceKeepsBarsDown() {
+        SpectrumBars bars = new SpectrumBars();
+        bars.setSize(320, 200);
+        assertFalse(bars.step(null, 1_000_000_000L));
+        assertEquals(200, lowestBarTop(bars), 0);
+    }
+}
@@ -0,0 +1,61 @@
+package net.hearnsoft.gensokyoradio.trd.widgets;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class VisualizerSchedulerTest {
+
+    @Test
+    public void getFrameIntervalNanos_snapsToVsync() {
+        VisualizerScheduler scheduler = new VisualizerScheduler();
+        scheduler.setRefreshRate(120f);
+        // Capped at 60 fps, every second vsync
+        assertEquals(2 * scheduler.getVsyncNanos(), scheduler.getFrameIntervalNanos());
+
+        scheduler.setRefreshRate(60f);
+        assertEquals(scheduler.getVsyncNanos(), scheduler.getFrameIntervalNanos());
+        assertEquals(0, scheduler.getNextFrameDelayMs());
+    }
+
+    @Test
+    public void getTargetRate_takesTheStrictestLimit() {
+        VisualizerScheduler scheduler = new VisualizerScheduler();
+        scheduler.setRefreshRate(90f);
+        assertEquals(60f, scheduler.getTargetRate(), 0);
+
+        scheduler.setThermalStatus(VisualizerScheduler.THERMAL_STATUS_MODERATE);
+        assertEquals(30f, scheduler.getTargetRate(), 0);
+
+        scheduler.setPowerSave(true);
+        assertEquals(20f, scheduler.getTargetRate(), 0);
+
+        scheduler.setFocused(false);
+        assertEquals(10f, scheduler.getTargetRate(), 0);
+
+        scheduler.setThermalStatus(VisualizerScheduler.THERMAL_STATUS_CRITICAL);
+        assertEquals(5f, scheduler.getTargetRate(), 0);
+    }
+
+    @Test
+    public void onFrameRendered_countsVsyncsWithoutAFrame() {
+        VisualizerScheduler scheduler = new VisualizerScheduler();
+        scheduler.setRefreshRate(60f);
+        scheduler.setPowerSave(true);
+        long vsync = scheduler.getVsyncNanos();
+        long start = 1_000_000_000L;
+
+        assertTrue(scheduler.isDue(start));
+        scheduler.onFrameRendered(start);
+        assertFalse(scheduler.isDue(start + vsync));
+        assertTrue(scheduler.isDue(start + 3 * vsync));
+        scheduler.onFrameRendered(start + 3 * vsync);
+
+        assertEquals(2, scheduler.getRenderedFrames());
+        assertEquals(2, scheduler.getSkippedFrames());
+
+        scheduler.reset();
+        scheduler.onFrameRendered(start + 100 * vsync);
+        assertEquals(2, scheduler.getSkippedFrames());
+    }
+}
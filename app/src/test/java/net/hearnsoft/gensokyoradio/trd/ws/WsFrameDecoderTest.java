@@ -0,0 +1,47 @@
+package net.hearnsoft.gensokyoradio.trd.ws;
+
+import net.hearnsoft.gensokyoradio.trd.beans.NowPlayingBean;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class WsFrameDecoderTest {
+
+    private final WsFrameDecoder decoder = new WsFrameDecoder();
+
+    @Test
+    public void decode_welcome() {
+        WsFrameDecoder.Frame frame = decoder.decode("{\"message\":\"welcome\",\"id\":4242}");
+        assertEquals(WsFrameDecoder.Type.WELCOME, frame.getType());
+        assertEquals(4242, frame.getClientBeans().getId());
+    }
+
+    @Test
+    public void decode_ping() {
+        assertEquals(WsFrameDecoder.Type.PING, decoder.decode("{\"message\":\"ping\"}").getType());
+    }
+
+    @Test
+    public void decode_nowPlaying() {
+        WsFrameDecoder.Frame frame = decoder.decode("{\"songid\":123,\"title\":\"Bad Apple!!\","
+                + "\"artist\":\"nomico\",\"album\":null,\"circle\":\"Alstroemeria Records\","
+                + "\"duration\":319,\"albumart\":\"https://example.com/a.jpg\",\"year\":\"2007\","
+                + "\"played\":12,\"remaining\":307,\"unknown\":{\"nested\":[1,2]}}");
+        assertEquals(WsFrameDecoder.Type.NOW_PLAYING, frame.getType());
+        NowPlayingBean bean = frame.getNowPlayingBean();
+        assertEquals(123, bean.getSongId());
+        assertEquals("Bad Apple!!", bean.getTitle());
+        assertEquals("", bean.getAlbum());
+        assertEquals(319, bean.getDuration());
+        assertEquals(307, bean.getRemaining());
+    }
+
+    @Test
+    public void decode_errorAndInvalid() {
+        assertEquals(WsFrameDecoder.Type.ERROR, decoder.decode("Error: too many connections").getType());
+        assertEquals(WsFrameDecoder.Type.INVALID, decoder.decode("hello").getType());
+        assertEquals(WsFrameDecoder.Type.INVALID, decoder.decode("{\"songid\":").getType());
+        assertEquals(WsFrameDecoder.Type.INVALID, decoder.decode(null).getType());
+    }
+}